@@ -8,6 +8,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.xiaowu.behappy.basket.feign.factory.CartFeignFallbackFactory;
 import org.xiaowu.behappy.basket.vo.ShopCartItemVo;
 import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.common.feign.annotation.Hedged;
 
 import java.util.List;
 
@@ -29,6 +30,7 @@ public interface CartFeign {
      * @param userId
      * @return org.xiaowu.behappy.common.core.util.Response<java.util.List < org.xiaowu.behappy.basket.vo.ShopCartItemVo>>
      */
+    @Hedged
     @GetMapping(BASKET_URL_PREFIX + "/feign/v1/cart")
     Response<List<ShopCartItemVo>> userCartItems(@RequestParam("userId") Long userId);
 
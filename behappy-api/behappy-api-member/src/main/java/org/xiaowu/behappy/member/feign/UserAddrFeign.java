@@ -4,6 +4,7 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.common.feign.annotation.Hedged;
 import org.xiaowu.behappy.member.feign.factory.UserAddrFeignFallbackFactory;
 import org.xiaowu.behappy.member.vo.UserAddressDetailVo;
 
@@ -26,6 +27,7 @@ public interface UserAddrFeign {
      * @param addrId
      * @return org.xiaowu.behappy.common.core.util.Response<org.xiaowu.behappy.member.vo.UserAddressDetailVo>
      */
+    @Hedged
     @GetMapping(MEMBER_URL_PREFIX + "/feign/v1/user-addr")
     Response<UserAddressDetailVo> getUserAddrByUserIdAndAddrId(@RequestParam("userId") Long userId,
                                                                @RequestParam("addrId") Long addrId);
@@ -12,7 +12,8 @@ import lombok.Getter;
 public enum BizCode {
     GOODS_CAN_NOT_IDENTIFY(15001, "订单包含无法识别的商品"),
     NOT_CHOOSE_GOODS(15002, "没有选择商品"),
-    ORDER_HAS_BEEN_OVERDUE(15003, "订单已过期，请重新下单");
+    ORDER_HAS_BEEN_OVERDUE(15003, "订单已过期，请重新下单"),
+    ORDER_REFUND_FAILED(15004, "订单退款失败");
 
     private final int code;
 
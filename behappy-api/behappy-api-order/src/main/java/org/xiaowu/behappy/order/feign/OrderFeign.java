@@ -2,10 +2,15 @@ package org.xiaowu.behappy.order.feign;
 
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.xiaowu.behappy.common.core.util.Response;
 import org.xiaowu.behappy.order.feign.factory.OrderFeignFallbackFactory;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.xiaowu.behappy.common.core.constant.ServiceConstants.ORDER_SERVICE;
 import static org.xiaowu.behappy.common.core.constant.ServiceConstants.ORDER_URL_PREFIX;
 
@@ -26,4 +31,14 @@ public interface OrderFeign {
      */
     @GetMapping(ORDER_URL_PREFIX + "/feign/v1/order/order-status")
     Response<Integer> getOrderStatus(@RequestParam("orderNum") Long orderNum);
+
+    /**
+     * 批量查询订单状态
+     * @apiNote 批量查询订单状态, 不存在的订单不返回
+     * @author xiaowu
+     * @param orderNums
+     * @return org.xiaowu.behappy.common.core.util.Response<java.util.Map < java.lang.Long, java.lang.Integer>>
+     */
+    @PostMapping(ORDER_URL_PREFIX + "/feign/v1/order/order-statuses")
+    Response<Map<Long, Integer>> getOrderStatuses(@RequestBody List<Long> orderNums);
 }
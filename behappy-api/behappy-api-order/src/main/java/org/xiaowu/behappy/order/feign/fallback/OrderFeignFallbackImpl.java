@@ -6,6 +6,9 @@ import org.springframework.stereotype.Component;
 import org.xiaowu.behappy.common.core.util.Response;
 import org.xiaowu.behappy.order.feign.OrderFeign;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author xiaowu
  */
@@ -21,4 +24,10 @@ public class OrderFeignFallbackImpl implements OrderFeign {
         log.error("OrderFeignFallbackImpl - getOrderStatus: {}", orderNum);
         return Response.failed(cause);
     }
+
+    @Override
+    public Response<Map<Long, Integer>> getOrderStatuses(List<Long> orderNums) {
+        log.error("OrderFeignFallbackImpl - getOrderStatuses: {}", orderNums);
+        return Response.failed(cause);
+    }
 }
\ No newline at end of file
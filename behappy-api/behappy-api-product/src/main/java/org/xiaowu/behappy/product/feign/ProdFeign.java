@@ -4,6 +4,7 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.common.feign.annotation.Hedged;
 import org.xiaowu.behappy.product.feign.factory.ProdFeignFallbackFactory;
 import org.xiaowu.behappy.product.vo.ShopProdVo;
 
@@ -26,6 +27,7 @@ public interface ProdFeign {
      * @param prodIds
      * @return org.xiaowu.behappy.common.core.util.Response<java.util.List < org.xiaowu.behappy.product.vo.ShopProdVo>>
      */
+    @Hedged
     @PostMapping(PRODUCT_URL_PREFIX + "/feign/v1/prod/shop-cart")
     Response<List<ShopProdVo>> shopProdVoList(@RequestBody List<Long> prodIds);
 }
@@ -0,0 +1,124 @@
+package org.xiaowu.behappy.product.loader;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * 合并请求的批量加载器(DataLoader)
+ * 时间窗口内所有调用方的key合并为一批(同一批次内去重),窗口到期或达到批量上限时调用一次批量加载,
+ * 结果按key分发给各调用方的future;批量加载异常时本批次所有future异常完成
+ * @param <K> key
+ * @param <V> value,未查到的key返回null
+ * @author xiaowu
+ */
+@Slf4j
+public class BatchLoader<K, V> {
+
+    private final String name;
+
+    private final Function<List<K>, Map<K, V>> batchFunction;
+
+    private final long windowMillis;
+
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Executor dispatcher;
+
+    /**
+     * 当前正在收集的批次
+     */
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+
+    public BatchLoader(String name, Function<List<K>, Map<K, V>> batchFunction, long windowMillis, int maxBatchSize,
+                       ScheduledExecutorService scheduler, Executor dispatcher) {
+        this.name = name;
+        this.batchFunction = batchFunction;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.dispatcher = dispatcher;
+    }
+
+    public CompletableFuture<V> load(K key) {
+        Map<K, CompletableFuture<V>> full = null;
+        CompletableFuture<V> future;
+        synchronized (this) {
+            future = pending.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(key, future);
+            if (pending.size() == 1) {
+                // 批次的第一个key,窗口到期后发送
+                Map<K, CompletableFuture<V>> batch = pending;
+                scheduler.schedule(() -> flush(batch), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            if (pending.size() >= maxBatchSize) {
+                full = pending;
+                pending = new LinkedHashMap<>();
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    /**
+     * 批量加载,阻塞等待结果
+     * @param keys
+     * @return 只包含查到的key
+     */
+    public Map<K, V> loadMany(Collection<K> keys) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        for (K key : keys) {
+            futures.computeIfAbsent(key, this::load);
+        }
+        Map<K, V> values = new LinkedHashMap<>(futures.size());
+        futures.forEach((key, future) -> {
+            V value = future.join();
+            if (value != null) {
+                values.put(key, value);
+            }
+        });
+        return values;
+    }
+
+    /**
+     * 窗口到期,批次未因达到上限提前发送时发送
+     */
+    private void flush(Map<K, CompletableFuture<V>> batch) {
+        synchronized (this) {
+            if (pending != batch) {
+                return;
+            }
+            pending = new LinkedHashMap<>();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Map<K, CompletableFuture<V>> batch) {
+        try {
+            dispatcher.execute(() -> complete(batch));
+        } catch (RejectedExecutionException e) {
+            complete(batch);
+        }
+    }
+
+    private void complete(Map<K, CompletableFuture<V>> batch) {
+        try {
+            Map<K, V> values = batchFunction.apply(new ArrayList<>(batch.keySet()));
+            log.debug("BatchLoader - {}: {} keys", name, batch.size());
+            batch.forEach((key, future) -> future.complete(values == null ? null : values.get(key)));
+        } catch (Throwable e) {
+            log.error("BatchLoader - {}: {}", name, e.getMessage());
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.xiaowu.behappy.product.loader;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 带版本的进程内缓存
+ * 每个id记录收到的最新变更版本,缓存项保存加载开始时看到的版本:
+ * 1. 加载期间收到变更,加载结果不写入缓存
+ * 2. 变更版本不大于缓存项版本(重复或乱序的旧消息),不失效缓存项
+ * @author xiaowu
+ */
+public class NearCache<V> {
+
+    private final Cache<Long, Entry<V>> entries;
+
+    /**
+     * id -> 已知的最新变更版本,保留时间长于缓存项,避免版本先于缓存项过期
+     */
+    private final Cache<Long, Long> versions;
+
+    public NearCache(long maximumSize, Duration expireAfterWrite) {
+        this.entries = Caffeine.newBuilder().
+                maximumSize(maximumSize).
+                expireAfterWrite(expireAfterWrite).
+                build();
+        this.versions = Caffeine.newBuilder().
+                maximumSize(maximumSize * 4).
+                expireAfterWrite(expireAfterWrite.multipliedBy(2)).
+                build();
+    }
+
+    public V get(Long id) {
+        Entry<V> entry = entries.getIfPresent(id);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * 加载前调用,记录加载开始时的版本
+     * @param ids
+     * @return id -> 版本
+     */
+    public Map<Long, Long> versions(Collection<Long> ids) {
+        Map<Long, Long> snapshot = new HashMap<>(ids.size());
+        ids.forEach(id -> snapshot.put(id, version(id)));
+        return snapshot;
+    }
+
+    public long version(Long id) {
+        Long version = versions.getIfPresent(id);
+        return version == null ? 0L : version;
+    }
+
+    /**
+     * 写入加载结果,加载期间版本有变化时放弃
+     * @param id
+     * @param value
+     * @param version 加载开始时的版本
+     */
+    public void put(Long id, V value, long version) {
+        entries.asMap().compute(id, (key, current) -> {
+            if (version(key) != version) {
+                return current;
+            }
+            if (current != null && current.version > version) {
+                return current;
+            }
+            return new Entry<>(value, version);
+        });
+    }
+
+    /**
+     * 先记录版本再失效缓存项,与{@link #put}在同一个key上串行,加载结果不会在失效之后写回旧数据
+     * @param ids
+     * @param version 变更版本
+     */
+    public void invalidate(Collection<Long> ids, long version) {
+        for (Long id : ids) {
+            versions.asMap().merge(id, version, Math::max);
+            entries.asMap().computeIfPresent(id, (key, current) -> current.version >= version ? current : null);
+        }
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    @AllArgsConstructor
+    private static class Entry<V> {
+
+        private final V value;
+
+        private final long version;
+    }
+}
@@ -0,0 +1,164 @@
+package org.xiaowu.behappy.product.loader;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.springframework.beans.factory.DisposableBean;
+import org.xiaowu.behappy.common.core.util.ResponseConvert;
+import org.xiaowu.behappy.product.feign.ProdFeign;
+import org.xiaowu.behappy.product.feign.SkuFeign;
+import org.xiaowu.behappy.product.to.ProductChangedTo;
+import org.xiaowu.behappy.product.vo.ShopProdVo;
+import org.xiaowu.behappy.product.vo.ShopSkuVo;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 商品、sku信息批量加载
+ * 并发的单个或少量id查询合并为一次{@link ProdFeign#shopProdVoList}、{@link SkuFeign#shopSkuVoList}调用
+ * 开启近端缓存时先查本地缓存,缓存的对象在调用方之间共享,不要修改
+ * @author xiaowu
+ */
+public class ProductBatchLoader implements DisposableBean {
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService dispatcher;
+
+    private final BatchLoader<Long, ShopProdVo> prodLoader;
+
+    private final BatchLoader<Long, ShopSkuVo> skuLoader;
+
+    /**
+     * 未开启近端缓存时为null
+     */
+    private final NearCache<ShopProdVo> prodNearCache;
+
+    private final NearCache<ShopSkuVo> skuNearCache;
+
+    public ProductBatchLoader(ProdFeign prodFeign, SkuFeign skuFeign, ResponseConvert responseConvert,
+                              ProductBatchLoaderProperties productBatchLoaderProperties) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThreadFactoryBuilder.create().setNamePrefix("product-batch-loader-timer-").setDaemon(true).build());
+        this.dispatcher = ExecutorBuilder.create().
+                setCorePoolSize(productBatchLoaderProperties.getDispatchThreads()).
+                setMaxPoolSize(productBatchLoaderProperties.getDispatchThreads()).
+                setWorkQueue(new LinkedBlockingQueue<>()).
+                setThreadFactory(ThreadFactoryBuilder.create().setNamePrefix("product-batch-loader-").setDaemon(true).build()).
+                build();
+        this.prodLoader = new BatchLoader<>("prod", prodIds -> toMap(responseConvert.convert(prodFeign.shopProdVoList(prodIds),
+                new TypeReference<List<ShopProdVo>>() {
+                }), ShopProdVo::getProdId), productBatchLoaderProperties.getWindowMillis(), productBatchLoaderProperties.getMaxBatchSize(),
+                scheduler, dispatcher);
+        this.skuLoader = new BatchLoader<>("sku", skuIds -> toMap(responseConvert.convert(skuFeign.shopSkuVoList(skuIds),
+                new TypeReference<List<ShopSkuVo>>() {
+                }), ShopSkuVo::getSkuId), productBatchLoaderProperties.getWindowMillis(), productBatchLoaderProperties.getMaxBatchSize(),
+                scheduler, dispatcher);
+        ProductBatchLoaderProperties.NearCacheProperties nearCache = productBatchLoaderProperties.getNearCache();
+        this.prodNearCache = nearCache.isEnabled() ? new NearCache<>(nearCache.getMaximumSize(), nearCache.getExpireAfterWrite()) : null;
+        this.skuNearCache = nearCache.isEnabled() ? new NearCache<>(nearCache.getMaximumSize(), nearCache.getExpireAfterWrite()) : null;
+    }
+
+    private static <T> Map<Long, T> toMap(List<T> values, Function<T, Long> idGetter) {
+        if (CollUtil.isEmpty(values)) {
+            return Collections.emptyMap();
+        }
+        return values.stream().collect(Collectors.toMap(idGetter, Function.identity(), (first, second) -> first));
+    }
+
+    private static <V> CompletableFuture<V> load(Long id, NearCache<V> nearCache, BatchLoader<Long, V> loader) {
+        if (nearCache == null) {
+            return loader.load(id);
+        }
+        V cached = nearCache.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long version = nearCache.version(id);
+        return loader.load(id).thenApply(value -> {
+            if (value != null) {
+                nearCache.put(id, value, version);
+            }
+            return value;
+        });
+    }
+
+    private static <V> Map<Long, V> loadMany(Collection<Long> ids, NearCache<V> nearCache, BatchLoader<Long, V> loader) {
+        if (nearCache == null) {
+            return loader.loadMany(ids);
+        }
+        Map<Long, V> values = new LinkedHashMap<>(ids.size());
+        List<Long> missIds = new ArrayList<>();
+        for (Long id : ids) {
+            V cached = nearCache.get(id);
+            if (cached != null) {
+                values.put(id, cached);
+            } else {
+                missIds.add(id);
+            }
+        }
+        if (missIds.isEmpty()) {
+            return values;
+        }
+        Map<Long, Long> versions = nearCache.versions(missIds);
+        loader.loadMany(missIds).forEach((id, value) -> {
+            nearCache.put(id, value, versions.get(id));
+            values.put(id, value);
+        });
+        return values;
+    }
+
+    public CompletableFuture<ShopProdVo> loadProd(Long prodId) {
+        return load(prodId, prodNearCache, prodLoader);
+    }
+
+    public CompletableFuture<ShopSkuVo> loadSku(Long skuId) {
+        return load(skuId, skuNearCache, skuLoader);
+    }
+
+    /**
+     * @param prodIds
+     * @return prodId -> 商品,不包含未查到的商品
+     */
+    public Map<Long, ShopProdVo> prods(Collection<Long> prodIds) {
+        return loadMany(prodIds, prodNearCache, prodLoader);
+    }
+
+    /**
+     * @param skuIds
+     * @return skuId -> sku,不包含未查到的sku
+     */
+    public Map<Long, ShopSkuVo> skus(Collection<Long> skuIds) {
+        return loadMany(skuIds, skuNearCache, skuLoader);
+    }
+
+    /**
+     * 收到商品变更消息后失效近端缓存
+     * @param productChangedTo
+     */
+    public void invalidate(ProductChangedTo productChangedTo) {
+        if (prodNearCache == null) {
+            return;
+        }
+        if (productChangedTo.getVersion() == null) {
+            prodNearCache.invalidateAll();
+            skuNearCache.invalidateAll();
+            return;
+        }
+        if (CollUtil.isNotEmpty(productChangedTo.getProdIds())) {
+            prodNearCache.invalidate(productChangedTo.getProdIds(), productChangedTo.getVersion());
+        }
+        if (CollUtil.isNotEmpty(productChangedTo.getSkuIds())) {
+            skuNearCache.invalidate(productChangedTo.getSkuIds(), productChangedTo.getVersion());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        dispatcher.shutdown();
+    }
+}
@@ -0,0 +1,45 @@
+package org.xiaowu.behappy.product.loader;
+
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xiaowu.behappy.common.core.util.ResponseConvert;
+import org.xiaowu.behappy.product.feign.ProdFeign;
+import org.xiaowu.behappy.product.feign.SkuFeign;
+
+/**
+ * 商品、sku批量加载配置,只在启用了{@link ProdFeign}、{@link SkuFeign}的服务中生效
+ * @author xiaowu
+ */
+@ConditionalOnBean({ProdFeign.class, SkuFeign.class})
+@EnableConfigurationProperties(ProductBatchLoaderProperties.class)
+public class ProductBatchLoaderConfig {
+
+    @Bean
+    public ProductBatchLoader productBatchLoader(ProdFeign prodFeign, SkuFeign skuFeign, ResponseConvert responseConvert,
+                                                 ProductBatchLoaderProperties productBatchLoaderProperties) {
+        return new ProductBatchLoader(prodFeign, skuFeign, responseConvert, productBatchLoaderProperties);
+    }
+
+    /**
+     * 开启近端缓存且引入了rabbitmq时,接收商品变更消息
+     */
+    @Configuration
+    @ConditionalOnClass(RabbitListener.class)
+    @ConditionalOnProperty(prefix = "product-batch-loader.near-cache", name = "enabled", havingValue = "true")
+    static class NearCacheInvalidationConfig {
+
+        @Bean
+        public ProductChangedListener productChangedListener(ProductBatchLoader productBatchLoader,
+                                                             ApplicationEventPublisher applicationEventPublisher,
+                                                             MessageConverter messageConverter) {
+            return new ProductChangedListener(productBatchLoader, applicationEventPublisher, messageConverter);
+        }
+    }
+}
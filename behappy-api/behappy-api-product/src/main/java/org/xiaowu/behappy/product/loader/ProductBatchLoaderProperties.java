@@ -0,0 +1,54 @@
+package org.xiaowu.behappy.product.loader;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 商品、sku批量加载配置
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "product-batch-loader")
+public class ProductBatchLoaderProperties {
+
+    /**
+     * 合并窗口,单位：毫秒
+     */
+    private long windowMillis = 2;
+
+    /**
+     * 每批最多的key数量,达到后立即发送
+     */
+    private int maxBatchSize = 100;
+
+    /**
+     * 发送批量请求的线程数
+     */
+    private int dispatchThreads = 8;
+
+    /**
+     * 商品、sku近端缓存
+     */
+    private NearCacheProperties nearCache = new NearCacheProperties();
+
+    @Data
+    public static class NearCacheProperties {
+
+        /**
+         * 是否开启,开启后由商品变更消息失效,需要服务引入behappy-common-rmq
+         */
+        private boolean enabled = false;
+
+        /**
+         * 商品、sku各自的最大缓存数量
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 写入后过期时间,兜底丢失的变更消息
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(5);
+    }
+}
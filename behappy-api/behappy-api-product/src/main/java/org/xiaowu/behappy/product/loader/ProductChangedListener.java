@@ -0,0 +1,67 @@
+package org.xiaowu.behappy.product.loader;
+
+import com.rabbitmq.client.Channel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.context.ApplicationEventPublisher;
+import org.xiaowu.behappy.product.to.ProductChangedTo;
+
+import java.io.IOException;
+
+/**
+ * 接收商品变更广播,失效近端缓存
+ * 每个实例声明自己的临时队列(非持久、独占、断开后自动删除)绑定到广播交换机,
+ * 处理后再以spring事件转发,服务内其他商品缓存可通过@EventListener(ProductChangedTo)一并失效
+ * 无法反序列化或类型不符的消息直接丢弃;处理失败时重新投递一次,仍失败则丢弃并清空近端缓存,避免毒消息无限重试
+ * @author xiaowu
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ProductChangedListener {
+
+    private final ProductBatchLoader productBatchLoader;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final MessageConverter messageConverter;
+
+    @RabbitListener(bindings = @QueueBinding(value = @Queue,
+            exchange = @Exchange(value = ProductChangedTo.EXCHANGE, type = ExchangeTypes.FANOUT)))
+    public void handleProductChanged(Message message, Channel channel) throws IOException {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        Object payload;
+        try {
+            payload = messageConverter.fromMessage(message);
+        } catch (Exception e) {
+            log.error("ProductChangedListener - 消息无法解析, 丢弃: {}", e.getMessage());
+            channel.basicReject(deliveryTag, false);
+            return;
+        }
+        if (!(payload instanceof ProductChangedTo)) {
+            log.error("ProductChangedListener - 未知的消息类型, 丢弃: {}", payload == null ? null : payload.getClass().getName());
+            channel.basicReject(deliveryTag, false);
+            return;
+        }
+        ProductChangedTo productChangedTo = (ProductChangedTo) payload;
+        try {
+            productBatchLoader.invalidate(productChangedTo);
+            applicationEventPublisher.publishEvent(productChangedTo);
+            channel.basicAck(deliveryTag, false);
+        } catch (Exception e) {
+            boolean redelivered = message.getMessageProperties().isRedelivered();
+            log.error("ProductChangedListener - handleProductChanged: {}, redelivered: {}", e.getMessage(), redelivered);
+            if (redelivered) {
+                // 没有版本号时清空全部近端缓存
+                productBatchLoader.invalidate(new ProductChangedTo());
+            }
+            channel.basicReject(deliveryTag, !redelivered);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.xiaowu.behappy.product.to;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * mq发送,商品、sku新增/修改/删除后通知各服务失效本地的商品缓存
+ * @author xiaowu
+ */
+@Data
+public class ProductChangedTo implements Serializable {
+
+    private static final long serialVersionUID = -3196215478416328601L;
+
+    /**
+     * 商品变更广播交换机(fanout),每个服务实例绑定自己的临时队列
+     */
+    public static final String EXCHANGE = "product-changed-exchange";
+
+    /**
+     * prod_id
+     */
+    private List<Long> prodIds;
+
+    /**
+     * sku_id
+     */
+    private List<Long> skuIds;
+
+    /**
+     * 变更版本(雪花id,随时间递增),重复或乱序到达的旧消息不会覆盖更新后加载的数据
+     */
+    private Long version;
+
+}
@@ -0,0 +1,40 @@
+package org.xiaowu.behappy.product.vo;
+
+import lombok.Data;
+
+/**
+ * 商品搜索索引全量重建任务
+ * @author xiaowu
+ */
+@Data
+public class ReindexTaskVo {
+
+    public static final String RUNNING = "RUNNING";
+
+    public static final String SUCCESS = "SUCCESS";
+
+    public static final String FAILED = "FAILED";
+
+    public static final String SKIPPED = "SKIPPED";
+
+    /**
+     * 任务id
+     */
+    private String taskId;
+
+    /**
+     * 状态: RUNNING-重建中 SUCCESS-完成 FAILED-失败 SKIPPED-已有实例在重建
+     */
+    private String status;
+
+    /**
+     * 导入的商品数量
+     */
+    private Long total;
+
+    /**
+     * 失败原因
+     */
+    private String message;
+
+}
@@ -0,0 +1,23 @@
+package org.xiaowu.behappy.ware.to;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * mq接收,订单服务批量关闭订单后释放库存
+ * 只包含本次实际由待支付改为关闭的订单
+ * @author xiaowu
+ */
+@Data
+public class OrderCloseTo implements Serializable {
+
+    private static final long serialVersionUID = 2604793371824410253L;
+
+    /**
+     * order_sn
+     */
+    private List<Long> orderSns;
+
+}
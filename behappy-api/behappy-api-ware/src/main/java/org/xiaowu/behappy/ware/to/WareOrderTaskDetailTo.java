@@ -42,4 +42,9 @@ public class WareOrderTaskDetailTo implements Serializable {
      */
     private Integer lockStatus;
 
+    /**
+     * 锁定的库存分桶
+     */
+    private Integer bucket;
+
 }
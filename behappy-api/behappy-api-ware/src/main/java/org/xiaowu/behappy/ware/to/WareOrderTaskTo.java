@@ -0,0 +1,22 @@
+package org.xiaowu.behappy.ware.to;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * mq接收,按订单释放库存
+ * 一个订单锁定的所有sku只发送一条消息
+ * @author xiaowu
+ */
+@Data
+public class WareOrderTaskTo implements Serializable {
+
+    private static final long serialVersionUID = -3182276485172840117L;
+
+    /**
+     * order_sn
+     */
+    private Long orderSn;
+
+}
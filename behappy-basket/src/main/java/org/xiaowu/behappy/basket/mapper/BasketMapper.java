@@ -1,6 +1,8 @@
 package org.xiaowu.behappy.basket.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 import org.xiaowu.behappy.basket.entity.BasketEntity;
 
 /**
@@ -9,4 +11,15 @@ import org.xiaowu.behappy.basket.entity.BasketEntity;
  * @apiNote
  */
 public interface BasketMapper extends BaseMapper<BasketEntity> {
+
+    /**
+     * 增减购物车商品数量,更新后数量小于等于0时不更新
+     * @param userId
+     * @param basketId
+     * @param delta
+     * @return 更新行数
+     */
+    @Update("update bh_c_basket set basket_count = basket_count + #{delta} " +
+            "where basket_id = #{basketId} and user_id = #{userId} and basket_count + #{delta} > 0")
+    int incrBasketCount(@Param("userId") Long userId, @Param("basketId") Long basketId, @Param("delta") Integer delta);
 }
@@ -7,7 +7,6 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -18,11 +17,8 @@ import org.xiaowu.behappy.basket.mapper.BasketMapper;
 import org.xiaowu.behappy.basket.vo.ShopCartAmountVo;
 import org.xiaowu.behappy.basket.vo.ShopCartItemVo;
 import org.xiaowu.behappy.common.core.exception.BeHappyException;
-import org.xiaowu.behappy.common.core.util.Response;
-import org.xiaowu.behappy.common.core.util.ResponseConvert;
-import org.xiaowu.behappy.common.redis.util.CacheManagerUtil;
-import org.xiaowu.behappy.product.feign.ProdFeign;
-import org.xiaowu.behappy.product.feign.SkuFeign;
+import org.xiaowu.behappy.common.core.executor.BulkheadExecutors;
+import org.xiaowu.behappy.product.loader.ProductBatchLoader;
 import org.xiaowu.behappy.product.vo.ShopProdVo;
 import org.xiaowu.behappy.product.vo.ShopSkuVo;
 
@@ -31,12 +27,11 @@ import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static org.xiaowu.behappy.basket.enums.BizCode.FAILED_ADD_CART;
-import static org.xiaowu.behappy.common.redis.constant.CacheConstant.BASKET_CART_CACHE;
+import static org.xiaowu.behappy.common.core.executor.BulkheadExecutors.PRODUCT;
 import static org.xiaowu.behappy.product.enums.BizCode.GOODS_FROM_THE_SHELVES;
 
 /**
@@ -49,61 +44,45 @@ import static org.xiaowu.behappy.product.enums.BizCode.GOODS_FROM_THE_SHELVES;
 @AllArgsConstructor
 public class BasketService extends ServiceImpl<BasketMapper, BasketEntity> implements IService<BasketEntity> {
 
-    private final ProdFeign prodFeign;
+    private final CartStoreService cartStoreService;
 
-    private final SkuFeign skuFeign;
+    private final ProductSnapshotService productSnapshotService;
 
-    private final ThreadPoolExecutor executor;
+    private final ProductBatchLoader productBatchLoader;
 
-    private final ResponseConvert responseConvert;
+    private final BulkheadExecutors bulkheadExecutors;
 
     /**
      * 获取购物车
+     * 购物车条目从redis hash读取,展示信息从商品快照补充
      */
     @SneakyThrows
     public List<ShopCartItemVo> getCartOps(Long userId) {
         log.debug("\n用户 [" + userId + "] 正在操作购物车");
-        List<ShopCartItemVo> shopCartItemVos = CacheManagerUtil.getCache(BASKET_CART_CACHE, String.valueOf(userId));
-        if (CollUtil.isNotEmpty(shopCartItemVos)) {
-            return shopCartItemVos;
-        }
-        shopCartItemVos = new ArrayList<>();
-        // 异步编排
         // 1. 查询购物车信息
-        CompletableFuture<List<BasketEntity>> basketFuture = CompletableFuture.supplyAsync(() -> {
-            LambdaQueryWrapper<BasketEntity> queryWrapper = Wrappers.<BasketEntity>lambdaQuery().
-                    eq(BasketEntity::getUserId, userId);
-            List<BasketEntity> basketEntities = baseMapper.selectList(queryWrapper);
-            return basketEntities;
-        }, executor);
+        List<BasketEntity> basketEntities = cartStoreService.items(userId);
+        if (CollUtil.isEmpty(basketEntities)) {
+            return new ArrayList<>();
+        }
         // 2. 查询product
-        CompletableFuture<List<ShopProdVo>> shopProdVosFuture = basketFuture.thenApplyAsync(basketEntities -> {
+        CompletableFuture<Map<Long, ShopProdVo>> shopProdVosFuture = CompletableFuture.supplyAsync(() -> {
             List<Long> productIds = basketEntities.stream().map(BasketEntity::getProdId).collect(Collectors.toList());
-            Response<List<ShopProdVo>> prodResponse = prodFeign.shopProdVoList(productIds);
-            List<ShopProdVo> shopProdVos = responseConvert.convert(prodResponse, new TypeReference<List<ShopProdVo>>() {
-            });
-            return shopProdVos;
-        }, executor);
+            return productSnapshotService.prods(productIds);
+        }, bulkheadExecutors.get(PRODUCT));
         // 3. 查询sku
-        CompletableFuture<List<ShopSkuVo>> shopSkuVosFuture = basketFuture.thenApplyAsync(basketEntities -> {
+        CompletableFuture<Map<Long, ShopSkuVo>> shopSkuVosFuture = CompletableFuture.supplyAsync(() -> {
             List<Long> skuIds = basketEntities.stream().map(BasketEntity::getSkuId).collect(Collectors.toList());
-            Response<List<ShopSkuVo>> skuResponse = skuFeign.shopSkuVoList(skuIds);
-            List<ShopSkuVo> shopSkuVos = responseConvert.convert(skuResponse, new TypeReference<List<ShopSkuVo>>() {
-            });
-            return shopSkuVos;
-        }, executor);
+            return productSnapshotService.skus(skuIds);
+        }, bulkheadExecutors.get(PRODUCT));
         // 4. 等待异步完成,组装信息
         CompletableFuture.allOf(shopProdVosFuture, shopSkuVosFuture).get();
 
-        List<BasketEntity> basketEntities = basketFuture.get();
-        List<ShopSkuVo> shopSkuVos = shopSkuVosFuture.get();
-        List<ShopProdVo> shopProdVos = shopProdVosFuture.get();
-        Map<Long, List<ShopSkuVo>> skuVoMap = shopSkuVos.stream().collect(Collectors.groupingBy(ShopSkuVo::getSkuId));
-        Map<Long, List<ShopProdVo>> prodVoMap = shopProdVos.stream().collect(Collectors.groupingBy(ShopProdVo::getProdId));
+        Map<Long, ShopSkuVo> skuVoMap = shopSkuVosFuture.get();
+        Map<Long, ShopProdVo> prodVoMap = shopProdVosFuture.get();
+        List<ShopCartItemVo> shopCartItemVos = new ArrayList<>(basketEntities.size());
         for (BasketEntity basketEntity : basketEntities) {
             ShopCartItemVo shopCartItemVo = new ShopCartItemVo();
-            Optional.ofNullable(skuVoMap.get(basketEntity.getSkuId())).ifPresent(skuVos -> {
-                ShopSkuVo shopSkuVo = skuVos.get(0);
+            Optional.ofNullable(skuVoMap.get(basketEntity.getSkuId())).ifPresent(shopSkuVo -> {
                 shopCartItemVo.setSkuName(shopSkuVo.getSkuName());
                 shopCartItemVo.setProdName(shopSkuVo.getProdName());
                 shopCartItemVo.setPrice(shopSkuVo.getPrice());
@@ -111,8 +90,7 @@ public class BasketService extends ServiceImpl<BasketMapper, BasketEntity> imple
                 shopCartItemVo.setSkuId(shopSkuVo.getSkuId());
                 shopCartItemVo.setProperties(shopSkuVo.getProperties());
             });
-            Optional.ofNullable(prodVoMap.get(basketEntity.getProdId())).ifPresent(prodVos -> {
-                ShopProdVo shopProdVo = prodVos.get(0);
+            Optional.ofNullable(prodVoMap.get(basketEntity.getProdId())).ifPresent(shopProdVo -> {
                 shopCartItemVo.setBrief(shopProdVo.getBrief());
                 if (StrUtil.isEmpty(shopCartItemVo.getPic())) {
                     shopCartItemVo.setPic(shopProdVo.getPic());
@@ -125,31 +103,38 @@ public class BasketService extends ServiceImpl<BasketMapper, BasketEntity> imple
             shopCartItemVo.setProductTotalAmount(NumberUtil.mul(shopCartItemVo.getProdCount(), shopCartItemVo.getPrice()));
             shopCartItemVos.add(shopCartItemVo);
         }
-        shopCartItemVos.sort(Comparator.comparing(ShopCartItemVo::getBasketId).reversed());
-        CacheManagerUtil.putCache(BASKET_CART_CACHE, userId.toString(), shopCartItemVos);
         return shopCartItemVos;
     }
 
     /**
-     * 先删库,再更新缓存
+     * 先删库,再删除redis中对应的field
      * @param userId
      * @param basketIds
      */
     public void deleteShopCartItemsByBasketIds(Long userId, List<Long> basketIds) {
+        if (CollUtil.isEmpty(basketIds)) {
+            return;
+        }
         LambdaQueryWrapper<BasketEntity> queryWrapper = Wrappers.<BasketEntity>lambdaQuery().
                 eq(BasketEntity::getUserId, userId).
                 in(BasketEntity::getBasketId, basketIds);
         baseMapper.delete(queryWrapper);
-        CacheManagerUtil.evictCache(BASKET_CART_CACHE, String.valueOf(userId));
+        cartStoreService.remove(userId, basketIds);
     }
 
     /**
-     * 先删库,再更新缓存
-     * @param basketEntity
+     * 先更新库,再增减redis中的数量
+     * @param userId
+     * @param basketId
+     * @param delta
+     * @return 更新后数量小于等于0时不更新,返回false
      */
-    public void updateShopCartItem(BasketEntity basketEntity) {
-        baseMapper.updateById(basketEntity);
-        CacheManagerUtil.evictCache(BASKET_CART_CACHE, basketEntity.getUserId().toString());
+    public boolean incrShopCartItem(Long userId, Long basketId, Integer delta) {
+        if (baseMapper.incrBasketCount(userId, basketId, delta) == 0) {
+            return false;
+        }
+        cartStoreService.incr(userId, basketId, delta);
+        return true;
     }
 
     public void addShopCartItem(ModifyShopCartDto modifyShopCartDto, Long userId) {
@@ -160,74 +145,44 @@ public class BasketService extends ServiceImpl<BasketMapper, BasketEntity> imple
         basketEntity.setUserId(userId);
         basketEntity.setSkuId(modifyShopCartDto.getSkuId());
         baseMapper.insert(basketEntity);
-        CacheManagerUtil.evictCache(BASKET_CART_CACHE, String.valueOf(userId));
+        cartStoreService.put(basketEntity);
     }
 
     @SneakyThrows
     public void modifyCartItem(ModifyShopCartDto modifyShopCartDto, Long userId) {
-        List<ShopCartItemVo> cartOps = this.getCartOps(userId);
         // 1. 检查商品状态
         checkProdAnSkuStatus(modifyShopCartDto);
         // 2.判断是添加还是更改
-        Optional<ShopCartItemVo> cartItemVoOptional = cartOps.stream().
-                filter(shopCartItemVo -> shopCartItemVo.getSkuId().
-                        equals(modifyShopCartDto.getSkuId())).
-                findFirst();
-        cartItemVoOptional.ifPresentOrElse(shopCartItemVo -> {
-            // 更新
-            BasketEntity basketEntity = new BasketEntity();
-            basketEntity.setUserId(userId);
-            basketEntity.setBasketCount(modifyShopCartDto.getCount() + shopCartItemVo.getProdCount());
-            basketEntity.setBasketId(shopCartItemVo.getBasketId());
-            // 防止购物车变成负数
-            if (basketEntity.getBasketCount() <= 0) {
-                deleteShopCartItemsByBasketIds(userId, Collections.singletonList(basketEntity.getBasketId()));
-                throw new BeHappyException(FAILED_ADD_CART.getCode(), FAILED_ADD_CART.getMsg());
-            }
-            updateShopCartItem(basketEntity);
-        }, () -> {
+        Long basketId = cartStoreService.findBasketId(userId, modifyShopCartDto.getSkuId());
+        if (basketId == null) {
             // 新增
             addShopCartItem(modifyShopCartDto, userId);
-        });
+            return;
+        }
+        // 更新, 防止购物车变成负数
+        if (!incrShopCartItem(userId, basketId, modifyShopCartDto.getCount())) {
+            deleteShopCartItemsByBasketIds(userId, Collections.singletonList(basketId));
+            throw new BeHappyException(FAILED_ADD_CART.getCode(), FAILED_ADD_CART.getMsg());
+        }
     }
 
     private void checkProdAnSkuStatus(ModifyShopCartDto modifyShopCartDto) throws InterruptedException, ExecutionException {
-        // 1. 查询product
-        CompletableFuture<ShopProdVo> shopProdVosFuture = CompletableFuture.supplyAsync(() -> {
-            Response<List<ShopProdVo>> prodResponse = prodFeign.shopProdVoList(Collections.singletonList(modifyShopCartDto.getProdId()));
-            List<ShopProdVo> shopProdVos = responseConvert.convert(prodResponse, new TypeReference<List<ShopProdVo>>() {
-            });
-            if (CollUtil.isNotEmpty(shopProdVos)) {
-                return shopProdVos.get(0);
-            }
-            return new ShopProdVo();
-        }, executor);
-        // 2. 查询sku
-        CompletableFuture<ShopSkuVo> shopSkuVosFuture = CompletableFuture.supplyAsync(() -> {
-            Response<List<ShopSkuVo>> skuResponse = skuFeign.shopSkuVoList(Collections.singletonList(modifyShopCartDto.getSkuId()));
-            List<ShopSkuVo> shopSkuVos = responseConvert.convert(skuResponse, new TypeReference<List<ShopSkuVo>>() {
-            });
-            if (CollUtil.isNotEmpty(shopSkuVos)) {
-                return shopSkuVos.get(0);
-            }
-            return new ShopSkuVo();
-        }, executor);
-        // 3. 等待异步完成,组装信息
+        // 与其他请求合并批量查询product、sku
+        CompletableFuture<ShopProdVo> shopProdVosFuture = productBatchLoader.loadProd(modifyShopCartDto.getProdId());
+        CompletableFuture<ShopSkuVo> shopSkuVosFuture = productBatchLoader.loadSku(modifyShopCartDto.getSkuId());
         CompletableFuture.allOf(shopProdVosFuture, shopSkuVosFuture).get();
 
         // 当商品状态不正常时，不能添加到购物车
-        if (shopProdVosFuture.get().getStatus() != 1 || shopSkuVosFuture.get().getStatus() != 1) {
+        ShopProdVo shopProdVo = shopProdVosFuture.get();
+        ShopSkuVo shopSkuVo = shopSkuVosFuture.get();
+        if (shopProdVo == null || shopSkuVo == null || shopProdVo.getStatus() != 1 || shopSkuVo.getStatus() != 1) {
             throw new BeHappyException(GOODS_FROM_THE_SHELVES.getCode(), GOODS_FROM_THE_SHELVES.getMsg());
         }
     }
 
     public Integer prodCount(Long userId) {
-        List<ShopCartItemVo> cartOps = getCartOps(userId);
-        if (CollUtil.isEmpty(cartOps)) {
-            return 0;
-        }
-        return cartOps.stream().
-                mapToInt(ShopCartItemVo::getProdCount).
+        return cartStoreService.items(userId).stream().
+                mapToInt(BasketEntity::getBasketCount).
                 reduce(0, Integer::sum);
     }
 
@@ -0,0 +1,184 @@
+package org.xiaowu.behappy.basket.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+import org.xiaowu.behappy.basket.entity.BasketEntity;
+import org.xiaowu.behappy.basket.mapper.BasketMapper;
+import org.xiaowu.behappy.common.redis.cache.SingleFlightLoader;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.xiaowu.behappy.common.redis.constant.CacheConstant.BASKET_CART_DURATION;
+
+/**
+ * 购物车redis存储
+ * 每个用户一个hash,field:
+ * i:{basketId} -> prodId:skuId, c:{basketId} -> 数量, s:{skuId} -> basketId, loaded -> 已加载, v -> 版本号
+ * 数据库为准,变更先写数据库再同步修改对应的field(write-through),不再整体重建购物车,同步失败时整体失效;
+ * 商品名称、价格、图片等展示信息在读取时由{@link ProductSnapshotService}补充
+ * @author xiaowu
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CartStoreService {
+
+    private static final String CART_KEY = "BEHAPPY-BASKET:CART:";
+
+    private static final String LOADED = "loaded";
+
+    private static final String VERSION = "v";
+
+    private static final String ITEM_PREFIX = "i:";
+
+    private static final String COUNT_PREFIX = "c:";
+
+    private static final String SKU_PREFIX = "s:";
+
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/cart_load.lua");
+
+    private static final DefaultRedisScript<Long> MUTATE_SCRIPT = script("lua/cart_mutate.lua");
+
+    private static final DefaultRedisScript<Long> INVALIDATE_SCRIPT = script("lua/cart_invalidate.lua");
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final BasketMapper basketMapper;
+
+    private final SingleFlightLoader singleFlightLoader;
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        redisScript.setResultType(Long.class);
+        return redisScript;
+    }
+
+    /**
+     * 获取购物车中的商品,未加载时从数据库加载
+     * @param userId
+     * @return basketId倒序
+     */
+    public List<BasketEntity> items(Long userId) {
+        Map<Object, Object> cart = stringRedisTemplate.opsForHash().entries(cartKey(userId));
+        if (!cart.containsKey(LOADED)) {
+            // 并发未命中只加载一次
+            return singleFlightLoader.load(cartKey(userId), () -> load(userId, (String) cart.get(VERSION)));
+        }
+        List<BasketEntity> basketEntities = new ArrayList<>();
+        cart.forEach((field, value) -> {
+            String name = (String) field;
+            if (!name.startsWith(ITEM_PREFIX)) {
+                return;
+            }
+            String basketId = name.substring(ITEM_PREFIX.length());
+            String count = (String) cart.get(COUNT_PREFIX + basketId);
+            if (count == null) {
+                return;
+            }
+            String[] prodSku = ((String) value).split(":");
+            BasketEntity basketEntity = new BasketEntity();
+            basketEntity.setBasketId(Long.valueOf(basketId));
+            basketEntity.setProdId(Long.valueOf(prodSku[0]));
+            basketEntity.setSkuId(Long.valueOf(prodSku[1]));
+            basketEntity.setUserId(userId);
+            basketEntity.setBasketCount(Integer.valueOf(count));
+            basketEntities.add(basketEntity);
+        });
+        basketEntities.sort(Comparator.comparing(BasketEntity::getBasketId).reversed());
+        return basketEntities;
+    }
+
+    /**
+     * 查询sku在购物车中的basketId
+     * @param userId
+     * @param skuId
+     * @return 不在购物车中返回null
+     */
+    public Long findBasketId(Long userId, Long skuId) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(cartKey(userId), Arrays.asList(LOADED, SKU_PREFIX + skuId));
+        if (values.get(0) != null) {
+            return values.get(1) == null ? null : Long.valueOf((String) values.get(1));
+        }
+        return items(userId).stream().
+                filter(basketEntity -> Objects.equals(basketEntity.getSkuId(), skuId)).
+                map(BasketEntity::getBasketId).
+                findFirst().
+                orElse(null);
+    }
+
+    public void put(BasketEntity basketEntity) {
+        mutate(basketEntity.getUserId(), "put", String.valueOf(basketEntity.getBasketId()), String.valueOf(basketEntity.getProdId()),
+                String.valueOf(basketEntity.getSkuId()), String.valueOf(basketEntity.getBasketCount()));
+    }
+
+    public void incr(Long userId, Long basketId, Integer delta) {
+        mutate(userId, "incr", String.valueOf(basketId), String.valueOf(delta));
+    }
+
+    public void remove(Long userId, Collection<Long> basketIds) {
+        List<String> args = basketIds.stream().map(String::valueOf).collect(Collectors.toList());
+        args.add(0, "del");
+        mutate(userId, args.toArray(new String[0]));
+    }
+
+    /**
+     * 数据库已提交后同步修改redis,失败时使购物车失效,下次读取从数据库重新加载,失效也失败时抛出异常
+     */
+    private void mutate(Long userId, String... args) {
+        Object[] scriptArgs = new Object[args.length + 1];
+        scriptArgs[0] = String.valueOf(BASKET_CART_DURATION.getSeconds());
+        System.arraycopy(args, 0, scriptArgs, 1, args.length);
+        try {
+            stringRedisTemplate.execute(MUTATE_SCRIPT, Collections.singletonList(cartKey(userId)), scriptArgs);
+        } catch (RuntimeException e) {
+            log.warn("CartStoreService - 用户 {} 购物车同步失败,使购物车失效: {}", userId, e.getMessage());
+            try {
+                stringRedisTemplate.execute(INVALIDATE_SCRIPT, Collections.singletonList(cartKey(userId)),
+                        String.valueOf(BASKET_CART_DURATION.getSeconds()));
+            } catch (RuntimeException invalidateException) {
+                e.addSuppressed(invalidateException);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 从数据库加载,加载期间购物车有变更时不写入redis
+     * @param userId
+     * @param version 读取数据库前的版本号
+     * @return
+     */
+    private List<BasketEntity> load(Long userId, String version) {
+        LambdaQueryWrapper<BasketEntity> queryWrapper = Wrappers.<BasketEntity>lambdaQuery().
+                eq(BasketEntity::getUserId, userId).
+                orderByDesc(BasketEntity::getBasketId);
+        List<BasketEntity> basketEntities = basketMapper.selectList(queryWrapper);
+        List<String> args = new ArrayList<>(basketEntities.size() * 6 + 2);
+        args.add(version == null ? "" : version);
+        args.add(String.valueOf(BASKET_CART_DURATION.getSeconds()));
+        for (BasketEntity basketEntity : basketEntities) {
+            String basketId = String.valueOf(basketEntity.getBasketId());
+            args.add(ITEM_PREFIX + basketId);
+            args.add(basketEntity.getProdId() + ":" + basketEntity.getSkuId());
+            args.add(COUNT_PREFIX + basketId);
+            args.add(String.valueOf(basketEntity.getBasketCount()));
+            args.add(SKU_PREFIX + basketEntity.getSkuId());
+            args.add(basketId);
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, Collections.singletonList(cartKey(userId)), args.toArray());
+        return basketEntities;
+    }
+
+    private String cartKey(Long userId) {
+        return CART_KEY + userId;
+    }
+}
@@ -0,0 +1,111 @@
+package org.xiaowu.behappy.basket.service;
+
+import cn.hutool.core.collection.CollUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.xiaowu.behappy.product.loader.ProductBatchLoader;
+import org.xiaowu.behappy.product.loader.ProductChangedListener;
+import org.xiaowu.behappy.product.to.ProductChangedTo;
+import org.xiaowu.behappy.product.vo.ShopProdVo;
+import org.xiaowu.behappy.product.vo.ShopSkuVo;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 购物车展示用的商品快照缓存
+ * 批量读取(mget),未命中的通过{@link ProductBatchLoader}批量加载后回写,短ttl保证价格等信息最终一致
+ * 收到商品变更消息({@link ProductChangedListener}转发)后删除对应快照
+ * @author xiaowu
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductSnapshotService {
+
+    private static final String SKU_SNAPSHOT_KEY = "BEHAPPY-BASKET:SNAPSHOT:SKU:";
+
+    private static final String PROD_SNAPSHOT_KEY = "BEHAPPY-BASKET:SNAPSHOT:PROD:";
+
+    private static final Duration SNAPSHOT_DURATION = Duration.ofMinutes(10);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final ProductBatchLoader productBatchLoader;
+
+    public Map<Long, ShopSkuVo> skus(Collection<Long> skuIds) {
+        return snapshots(SKU_SNAPSHOT_KEY, skuIds, ShopSkuVo.class, ShopSkuVo::getSkuId,
+                missIds -> new ArrayList<>(productBatchLoader.skus(missIds).values()));
+    }
+
+    public Map<Long, ShopProdVo> prods(Collection<Long> prodIds) {
+        return snapshots(PROD_SNAPSHOT_KEY, prodIds, ShopProdVo.class, ShopProdVo::getProdId,
+                missIds -> new ArrayList<>(productBatchLoader.prods(missIds).values()));
+    }
+
+    @EventListener
+    public void onProductChanged(ProductChangedTo productChangedTo) {
+        List<String> keys = new ArrayList<>();
+        if (CollUtil.isNotEmpty(productChangedTo.getSkuIds())) {
+            productChangedTo.getSkuIds().forEach(skuId -> keys.add(SKU_SNAPSHOT_KEY + skuId));
+        }
+        if (CollUtil.isNotEmpty(productChangedTo.getProdIds())) {
+            productChangedTo.getProdIds().forEach(prodId -> keys.add(PROD_SNAPSHOT_KEY + prodId));
+        }
+        if (!keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+    }
+
+    @SneakyThrows
+    private <T> Map<Long, T> snapshots(String keyPrefix, Collection<Long> ids, Class<T> type,
+                                       Function<T, Long> idGetter, Function<List<Long>, List<T>> loader) {
+        if (CollUtil.isEmpty(ids)) {
+            return Collections.emptyMap();
+        }
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<String> keys = new ArrayList<>(distinctIds.size());
+        distinctIds.forEach(id -> keys.add(keyPrefix + id));
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        Map<Long, T> snapshots = new HashMap<>(distinctIds.size());
+        List<Long> missIds = new ArrayList<>();
+        for (int i = 0; i < distinctIds.size(); i++) {
+            String value = values == null ? null : values.get(i);
+            if (value == null) {
+                missIds.add(distinctIds.get(i));
+            } else {
+                snapshots.put(distinctIds.get(i), objectMapper.readValue(value, type));
+            }
+        }
+        if (missIds.isEmpty()) {
+            return snapshots;
+        }
+        List<T> loaded = loader.apply(missIds);
+        if (CollUtil.isEmpty(loaded)) {
+            return snapshots;
+        }
+        Map<String, String> writes = new HashMap<>(loaded.size());
+        for (T snapshot : loaded) {
+            snapshots.put(idGetter.apply(snapshot), snapshot);
+            writes.put(keyPrefix + idGetter.apply(snapshot), objectMapper.writeValueAsString(snapshot));
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> redisOperations = (RedisOperations<String, String>) operations;
+                writes.forEach((key, value) -> redisOperations.opsForValue().set(key, value, SNAPSHOT_DURATION));
+                return null;
+            }
+        });
+        return snapshots;
+    }
+}
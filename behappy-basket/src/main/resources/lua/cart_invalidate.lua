@@ -0,0 +1,10 @@
+-- 购物车失效,同步修改失败时调用,下次读取从数据库重新加载
+-- 删除全部field,只保留递增后的版本号,使加载中的旧数据放弃写入
+-- KEYS[1] 购物车hash
+-- ARGV[1] 过期时间,单位：秒
+local cart = KEYS[1]
+local version = tonumber(redis.call('HGET', cart, 'v') or '0') + 1
+redis.call('DEL', cart)
+redis.call('HSET', cart, 'v', version)
+redis.call('EXPIRE', cart, ARGV[1])
+return 1
@@ -0,0 +1,16 @@
+-- 从数据库加载购物车到redis
+-- 加载期间购物车有变更(版本号变化)时放弃写入,下次读取重新加载
+-- KEYS[1] 购物车hash
+-- ARGV[1] 读取数据库前的版本号,不存在时为空串
+-- ARGV[2] 过期时间,单位：秒
+-- ARGV[3...] field, value 交替
+local version = redis.call('HGET', KEYS[1], 'v')
+if (version or '') ~= ARGV[1] then
+    return 0
+end
+redis.call('HSET', KEYS[1], 'loaded', '1')
+for i = 3, #ARGV, 2 do
+    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+return 1
@@ -0,0 +1,32 @@
+-- 购物车变更,数据库写入成功后调用
+-- 每次变更都递增版本号,购物车已加载时同步修改对应的field,未加载时由下次读取从数据库加载
+-- KEYS[1] 购物车hash
+-- ARGV[1] 过期时间,单位：秒
+-- ARGV[2] 操作: put / incr / del
+-- put:  ARGV[3] basketId, ARGV[4] prodId, ARGV[5] skuId, ARGV[6] 数量
+-- incr: ARGV[3] basketId, ARGV[4] 增量
+-- del:  ARGV[3...] basketId
+local cart = KEYS[1]
+redis.call('HINCRBY', cart, 'v', 1)
+if redis.call('HEXISTS', cart, 'loaded') == 1 then
+    local op = ARGV[2]
+    if op == 'put' then
+        redis.call('HSET', cart, 'i:' .. ARGV[3], ARGV[4] .. ':' .. ARGV[5])
+        redis.call('HSET', cart, 'c:' .. ARGV[3], ARGV[6])
+        redis.call('HSET', cart, 's:' .. ARGV[5], ARGV[3])
+    elseif op == 'incr' then
+        if redis.call('HEXISTS', cart, 'c:' .. ARGV[3]) == 1 then
+            redis.call('HINCRBY', cart, 'c:' .. ARGV[3], ARGV[4])
+        end
+    elseif op == 'del' then
+        for i = 3, #ARGV do
+            local item = redis.call('HGET', cart, 'i:' .. ARGV[i])
+            if item then
+                local skuId = string.match(item, ':(%d+)$')
+                redis.call('HDEL', cart, 'i:' .. ARGV[i], 'c:' .. ARGV[i], 's:' .. skuId)
+            end
+        end
+    end
+end
+redis.call('EXPIRE', cart, ARGV[1])
+return 1
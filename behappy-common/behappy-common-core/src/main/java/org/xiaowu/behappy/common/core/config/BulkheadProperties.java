@@ -0,0 +1,52 @@
+package org.xiaowu.behappy.common.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按下游服务隔离的线程池配置
+ * 未配置的下游使用默认值
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "bulkhead")
+public class BulkheadProperties {
+
+    /**
+     * 下游名称 -> 线程池配置,如product、ware、member、cart
+     */
+    private Map<String, Pool> executors = new LinkedHashMap<>();
+
+    @Data
+    public static class Pool {
+
+        /**
+         * 核心线程数
+         */
+        private int coreSize = 8;
+
+        /**
+         * 最大线程数
+         */
+        private int maxSize = 32;
+
+        /**
+         * 队列长度,队列较短,线程和队列都满时直接拒绝,下游变慢时快速失败
+         */
+        private int queueCapacity = 64;
+
+        /**
+         * 非核心线程空闲时间
+         */
+        private Duration keepAlive = Duration.ofSeconds(30);
+
+        /**
+         * 虚拟线程模式下对下游的最大并发数,不再使用线程数和队列
+         */
+        private int maxConcurrency = 256;
+    }
+}
@@ -0,0 +1,18 @@
+package org.xiaowu.behappy.common.core.config;
+
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.xiaowu.behappy.common.core.executor.VirtualThreads;
+
+/**
+ * 运行时支持虚拟线程且开启了virtual-threads.enabled(默认关闭,见{@link VirtualThreadProperties#isEnabled()})
+ * @author xiaowu
+ */
+public class OnVirtualThreadsCondition implements Condition {
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        return context.getEnvironment().getProperty("virtual-threads.enabled", Boolean.class, false) && VirtualThreads.isSupported();
+    }
+}
@@ -1,35 +1,26 @@
 package org.xiaowu.behappy.common.core.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Primary;
-
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import org.xiaowu.behappy.common.core.executor.BulkheadExecutors;
 
 /**
+ * 异步调用下游服务的线程池,按下游服务隔离,替代原来所有调用共用的线程池
+ * JDK 21及以上开启virtual-threads.enabled时使用虚拟线程,按并发数隔离
  * @author 小五
  */
 @Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties({BulkheadProperties.class, VirtualThreadProperties.class})
 public class ThreadConfig {
 
-    private static final Integer CORE_SIZE = 20;
-    private static final Integer MAX_SIZE = 200;
-    private static final Integer KEEP_ALIVE_TIME = 10;
-
-    @Primary
     @Bean
-    public ThreadPoolExecutor threadPoolExecutor() {
-        return new ThreadPoolExecutor(
-                CORE_SIZE,
-                MAX_SIZE,
-                KEEP_ALIVE_TIME,
-                TimeUnit.SECONDS,
-                new ArrayBlockingQueue<>(100000),
-                Executors.defaultThreadFactory(),
-                new ThreadPoolExecutor.AbortPolicy()
-        );
+    public BulkheadExecutors bulkheadExecutors(BulkheadProperties bulkheadProperties, VirtualThreadProperties virtualThreadProperties,
+                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BulkheadExecutors(bulkheadProperties, meterRegistry.getIfAvailable(SimpleMeterRegistry::new),
+                virtualThreadProperties.isActive());
     }
-}
\ No newline at end of file
+}
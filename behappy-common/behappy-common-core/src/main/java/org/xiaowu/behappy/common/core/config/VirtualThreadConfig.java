@@ -0,0 +1,43 @@
+package org.xiaowu.behappy.common.core.config;
+
+import org.apache.catalina.startup.Tomcat;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.xiaowu.behappy.common.core.executor.VirtualThreads;
+
+/**
+ * JDK 21及以上开启virtual-threads.enabled时使用虚拟线程
+ * 1. tomcat请求处理
+ * 2. @Async等使用applicationTaskExecutor的异步任务
+ * 下游调用的线程池见{@link ThreadConfig}
+ * @author xiaowu
+ */
+@Configuration(proxyBeanMethods = false)
+@Conditional(OnVirtualThreadsCondition.class)
+@AutoConfigureBefore(TaskExecutionAutoConfiguration.class)
+public class VirtualThreadConfig {
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(VirtualThreads.newThreadPerTaskExecutor("task-"));
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(Tomcat.class)
+    static class TomcatVirtualThreadConfig {
+
+        @Bean
+        public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+            return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor("tomcat-handler-"));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.xiaowu.behappy.common.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.xiaowu.behappy.common.core.executor.VirtualThreads;
+
+/**
+ * 虚拟线程配置
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "virtual-threads")
+public class VirtualThreadProperties {
+
+    /**
+     * 运行在JDK 21及以上时是否使用虚拟线程(下游调用、tomcat请求处理、@Async),低版本JDK忽略,默认关闭
+     * 注意: 虚拟线程在synchronized中阻塞时会占住载体线程(pinning),mysql-connector 8.0、OkHttp 3
+     * 的IO都在synchronized中,载体线程(默认等于CPU核数)被占满后所有虚拟线程都无法调度;
+     * 升级到不在synchronized中阻塞的驱动/客户端,并用-Djdk.tracePinnedThreads=short压测确认后再开启
+     */
+    private boolean enabled = false;
+
+    public boolean isActive() {
+        return enabled && VirtualThreads.isSupported();
+    }
+}
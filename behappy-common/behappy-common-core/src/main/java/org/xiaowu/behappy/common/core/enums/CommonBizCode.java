@@ -35,6 +35,7 @@ public enum CommonBizCode {
     PARAM_FLOW_EXCEPTION(10004, "热点控制!"),
     SYSTEM_BLOCK_EXCEPTION(10004, "系统保护!"),
     AUTHORITY_EXCEPTION(10004, "授权保护!"),
+    EXECUTOR_REJECTED(10005, "服务繁忙,请稍后重试!"),
     UNAUTHORIZED(10401, "未认证或者认证已过期!"),
     FORBIDDEN(10403, "Without authorization, access is prohibited！");
 
@@ -9,6 +9,10 @@ import org.xiaowu.behappy.common.core.exception.BeHappyException;
 import org.xiaowu.behappy.common.core.exception.DeniedException;
 import org.xiaowu.behappy.common.core.util.Response;
 
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.xiaowu.behappy.common.core.enums.CommonBizCode.EXECUTOR_REJECTED;
+
 /**
  * @author 小五
  */
@@ -35,6 +39,18 @@ public class DefaultExceptionHandlerConfig {
         return Response.failed(e);
     }
 
+    /**
+     * 下游线程池已满,快速失败
+     *
+     * @param e
+     * @return
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public Response rejectedExecutionExceptionHandler(RejectedExecutionException e) {
+        log.error("DefaultExceptionHandlerConfig - rejectedExecutionExceptionHandler: {}", e.getMessage());
+        return Response.failed(EXECUTOR_REJECTED.getCode(), EXECUTOR_REJECTED.getMsg());
+    }
+
     @ExceptionHandler(Exception.class)
     public Response exceptionHandler(Exception e) {
         log.error("DefaultExceptionHandlerConfig - exceptionHandler: {}", e.getLocalizedMessage());
@@ -0,0 +1,80 @@
+package org.xiaowu.behappy.common.core.executor;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.xiaowu.behappy.common.core.config.BulkheadProperties;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个下游服务的线程池
+ * 1. 有界短队列,线程和队列都满时抛出{@link RejectedExecutionException},调用方快速失败
+ * 2. 任务在提交线程的请求属性(Sa-Token登录用户)和MDC下执行
+ * 3. 指标: executor.queue.wait(排队时间)、executor.saturation((活跃线程 + 排队任务) / (最大线程 + 队列长度))、
+ * executor.active、executor.queued、executor.rejected,以name区分
+ * @author xiaowu
+ */
+public class BulkheadExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+
+    private final int queueCapacity;
+
+    private final Timer queueWait;
+
+    public BulkheadExecutor(String name, BulkheadProperties.Pool pool, MeterRegistry meterRegistry) {
+        super(pool.getCoreSize(), pool.getMaxSize(), pool.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(pool.getQueueCapacity()),
+                ThreadFactoryBuilder.create().setNamePrefix("bulkhead-" + name + "-").build(),
+                new RejectHandler(name, Counter.builder("executor.rejected").tag("name", name).register(meterRegistry)));
+        this.name = name;
+        this.queueCapacity = pool.getQueueCapacity();
+        this.queueWait = Timer.builder("executor.queue.wait").tag("name", name).register(meterRegistry);
+        Gauge.builder("executor.active", this, ThreadPoolExecutor::getActiveCount).tag("name", name).register(meterRegistry);
+        Gauge.builder("executor.queued", this, executor -> executor.getQueue().size()).tag("name", name).register(meterRegistry);
+        Gauge.builder("executor.saturation", this, BulkheadExecutor::saturation).tag("name", name).register(meterRegistry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Runnable task = ContextSnapshot.capture().wrap(command);
+        long submitted = System.nanoTime();
+        super.execute(() -> {
+            queueWait.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+            task.run();
+        });
+    }
+
+    private double saturation() {
+        return (double) (getActiveCount() + getQueue().size()) / (getMaximumPoolSize() + queueCapacity);
+    }
+
+    private static class RejectHandler implements RejectedExecutionHandler {
+
+        private final String name;
+
+        private final Counter rejected;
+
+        private RejectHandler(String name, Counter rejected) {
+            this.name = name;
+            this.rejected = rejected;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.increment();
+            throw new RejectedExecutionException("线程池 " + name + " 已满");
+        }
+    }
+}
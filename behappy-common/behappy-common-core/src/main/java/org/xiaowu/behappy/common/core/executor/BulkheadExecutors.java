@@ -0,0 +1,66 @@
+package org.xiaowu.behappy.common.core.executor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.xiaowu.behappy.common.core.config.BulkheadProperties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 按下游服务隔离的线程池,一个下游变慢只会占满自己的线程池
+ * 首次获取时按配置创建,未配置的使用默认值
+ * 虚拟线程模式下使用{@link VirtualBulkheadExecutor},按并发数隔离
+ * @author xiaowu
+ */
+public class BulkheadExecutors implements DisposableBean {
+
+    public static final String PRODUCT = "product";
+
+    public static final String WARE = "ware";
+
+    public static final String MEMBER = "member";
+
+    public static final String CART = "cart";
+
+    private final BulkheadProperties bulkheadProperties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean virtual;
+
+    private final Map<String, Executor> executors = new ConcurrentHashMap<>();
+
+    public BulkheadExecutors(BulkheadProperties bulkheadProperties, MeterRegistry meterRegistry) {
+        this(bulkheadProperties, meterRegistry, false);
+    }
+
+    public BulkheadExecutors(BulkheadProperties bulkheadProperties, MeterRegistry meterRegistry, boolean virtual) {
+        this.bulkheadProperties = bulkheadProperties;
+        this.meterRegistry = meterRegistry;
+        this.virtual = virtual;
+    }
+
+    public Executor get(String name) {
+        return executors.computeIfAbsent(name, key -> {
+            BulkheadProperties.Pool pool = bulkheadProperties.getExecutors().getOrDefault(key, new BulkheadProperties.Pool());
+            return virtual ? new VirtualBulkheadExecutor(key, pool, meterRegistry) : new BulkheadExecutor(key, pool, meterRegistry);
+        });
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    @Override
+    public void destroy() {
+        executors.values().forEach(executor -> {
+            if (executor instanceof VirtualBulkheadExecutor) {
+                ((VirtualBulkheadExecutor) executor).shutdown();
+            } else {
+                ((BulkheadExecutor) executor).shutdown();
+            }
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package org.xiaowu.behappy.common.core.executor;
+
+import org.slf4j.MDC;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Map;
+
+/**
+ * 提交任务时的线程上下文
+ * 1. 请求属性: Sa-Token从当前请求读取token,异步线程中才能获取登录用户
+ * 2. MDC: 日志中的链路信息
+ * 调用方需要在请求结束前等待任务完成
+ * @author xiaowu
+ */
+public final class ContextSnapshot {
+
+    private final RequestAttributes requestAttributes;
+
+    private final Map<String, String> mdc;
+
+    private ContextSnapshot(RequestAttributes requestAttributes, Map<String, String> mdc) {
+        this.requestAttributes = requestAttributes;
+        this.mdc = mdc;
+    }
+
+    public static ContextSnapshot capture() {
+        return new ContextSnapshot(RequestContextHolder.getRequestAttributes(), MDC.getCopyOfContextMap());
+    }
+
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            RequestAttributes previousAttributes = RequestContextHolder.getRequestAttributes();
+            Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+            apply(requestAttributes, mdc);
+            try {
+                task.run();
+            } finally {
+                apply(previousAttributes, previousMdc);
+            }
+        };
+    }
+
+    private static void apply(RequestAttributes requestAttributes, Map<String, String> mdc) {
+        if (requestAttributes == null) {
+            RequestContextHolder.resetRequestAttributes();
+        } else {
+            RequestContextHolder.setRequestAttributes(requestAttributes);
+        }
+        if (mdc == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(mdc);
+        }
+    }
+}
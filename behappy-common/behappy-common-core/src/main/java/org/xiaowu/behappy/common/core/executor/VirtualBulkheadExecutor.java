@@ -0,0 +1,81 @@
+package org.xiaowu.behappy.common.core.executor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.xiaowu.behappy.common.core.config.BulkheadProperties;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 虚拟线程模式下单个下游服务的执行器
+ * 每个任务一个虚拟线程,不再受线程数限制,只用信号量限制对下游的并发数(maxConcurrency),超过时直接拒绝
+ * 指标与{@link BulkheadExecutor}一致: executor.queue.wait、executor.saturation、executor.active、executor.rejected
+ * @author xiaowu
+ */
+public class VirtualBulkheadExecutor implements Executor {
+
+    private final String name;
+
+    private final int maxConcurrency;
+
+    private final Semaphore permits;
+
+    private final ExecutorService delegate;
+
+    private final Timer queueWait;
+
+    private final Counter rejected;
+
+    public VirtualBulkheadExecutor(String name, BulkheadProperties.Pool pool, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrency = pool.getMaxConcurrency();
+        this.permits = new Semaphore(maxConcurrency);
+        this.delegate = VirtualThreads.newThreadPerTaskExecutor("bulkhead-" + name + "-");
+        this.queueWait = Timer.builder("executor.queue.wait").tag("name", name).register(meterRegistry);
+        this.rejected = Counter.builder("executor.rejected").tag("name", name).register(meterRegistry);
+        Gauge.builder("executor.active", this, VirtualBulkheadExecutor::active).tag("name", name).register(meterRegistry);
+        Gauge.builder("executor.saturation", this, executor -> (double) executor.active() / executor.maxConcurrency).
+                tag("name", name).register(meterRegistry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("执行器 " + name + " 并发已满");
+        }
+        Runnable task = ContextSnapshot.capture().wrap(command);
+        long submitted = System.nanoTime();
+        try {
+            delegate.execute(() -> {
+                queueWait.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    private int active() {
+        return maxConcurrency - permits.availablePermits();
+    }
+}
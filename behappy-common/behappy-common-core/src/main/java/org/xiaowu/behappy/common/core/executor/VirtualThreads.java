@@ -0,0 +1,92 @@
+package org.xiaowu.behappy.common.core.executor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程
+ * 项目按JDK 11编译,JDK 21及以上运行时通过反射创建虚拟线程,低版本{@link #isSupported()}返回false
+ * @author xiaowu
+ */
+@Slf4j
+public final class VirtualThreads {
+
+    private static final int MIN_FEATURE_VERSION = 21;
+
+    private static final Method OF_VIRTUAL;
+
+    private static final Method NAME;
+
+    private static final Method FACTORY;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        if (Runtime.version().feature() >= MIN_FEATURE_VERSION) {
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builderClass.getMethod("name", String.class, long.class);
+                factory = builderClass.getMethod("factory");
+                newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            } catch (ReflectiveOperationException e) {
+                log.warn("VirtualThreads - 当前运行时不支持虚拟线程: {}", e.getMessage());
+                ofVirtual = null;
+            }
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param namePrefix 线程名前缀,后接从0开始的序号
+     * @return 创建虚拟线程的ThreadFactory
+     */
+    public static ThreadFactory threadFactory(String namePrefix) {
+        assertSupported();
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("创建虚拟线程ThreadFactory失败", e);
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程,不限制并发
+     * @param namePrefix 线程名前缀
+     * @return
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory threadFactory = threadFactory(namePrefix);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("创建虚拟线程Executor失败", e);
+        }
+    }
+
+    private static void assertSupported() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("虚拟线程需要JDK " + MIN_FEATURE_VERSION + "及以上");
+        }
+    }
+}
@@ -11,6 +11,9 @@ import org.xiaowu.behappy.common.core.exception.BeHappyException;
 import static org.xiaowu.behappy.common.core.enums.CommonBizCode.JSON_SERIALIZATION_ERROR;
 
 /**
+ * 远程调用结果转换
+ * feign使用behappy-common-feign的解码器时data已经是目标类型({@link TypedResponse}),直接返回;
+ * 其他情况(如sentinel降级返回的Response、返回值声明为原始Response)序列化后按目标类型重新解析
  * @author 小五
  */
 @Slf4j
@@ -29,9 +32,14 @@ public class ResponseConvert {
         }
     }
 
+    @SuppressWarnings("unchecked")
     public <T> T convert(Response response, TypeReference<T> type) {
         try {
             ResponseConvert.assertResponse(response);
+            if (response instanceof TypedResponse
+                    && ((TypedResponse<?>) response).getDataType().equals(objectMapper.getTypeFactory().constructType(type))) {
+                return (T) response.getData();
+            }
             return objectMapper.readValue(objectMapper.writeValueAsString(response.getData()), type);
         } catch (JsonProcessingException e) {
             log.error("Response转换：序列化错误");
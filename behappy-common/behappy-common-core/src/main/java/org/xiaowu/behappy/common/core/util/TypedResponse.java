@@ -0,0 +1,26 @@
+package org.xiaowu.behappy.common.core.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JavaType;
+
+/**
+ * feign解码时已按方法返回值的泛型反序列化了data的响应
+ * {@link ResponseConvert}转换为相同类型时直接返回data,不再序列化后重新解析
+ * @author xiaowu
+ */
+public class TypedResponse<T> extends Response<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonIgnore
+    private final transient JavaType dataType;
+
+    public TypedResponse(JavaType dataType) {
+        this.dataType = dataType;
+    }
+
+    @JsonIgnore
+    public JavaType getDataType() {
+        return dataType;
+    }
+}
@@ -0,0 +1,113 @@
+package org.xiaowu.behappy.common.core.executor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xiaowu.behappy.common.core.config.BulkheadProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下游调用扇出压测: 平台线程池(BulkheadExecutor) 与 虚拟线程(VirtualBulkheadExecutor)
+ * 模拟购物车/确认订单: 每个请求并行发起fanOut个阻塞调用(sleep模拟feign io),等待全部返回
+ * 结果中completed的吞吐(ops/s)除以启动时输出的cpu核数即为每核吞吐,rejected为线程池/并发数已满被拒绝的请求
+ * 两种模式的并发上限相同(压测线程数*fanOut),都不会拒绝,只比较线程模型本身的开销
+ * 运行: 执行main方法,JDK 21以下只运行platform
+ * @author xiaowu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(FanOutLoadBenchmark.THREADS)
+@Fork(1)
+public class FanOutLoadBenchmark {
+
+    /**
+     * 压测线程数,与@Threads一致
+     */
+    static final int THREADS = 400;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    @Param({"2"})
+    private int fanOut;
+
+    @Param({"20"})
+    private long ioMillis;
+
+    private BulkheadExecutors bulkheadExecutors;
+
+    private Executor executor;
+
+    @Setup
+    public void setup() {
+        System.out.printf("%ncpu: %d, mode: %s%n", Runtime.getRuntime().availableProcessors(), mode);
+        BulkheadProperties bulkheadProperties = new BulkheadProperties();
+        // 同时在途的调用数最多为 压测线程数*fanOut,平台线程数与虚拟线程并发数都按此配置
+        int concurrency = THREADS * fanOut;
+        BulkheadProperties.Pool pool = new BulkheadProperties.Pool();
+        pool.setCoreSize(concurrency);
+        pool.setMaxSize(concurrency);
+        pool.setQueueCapacity(concurrency);
+        pool.setMaxConcurrency(concurrency);
+        bulkheadProperties.getExecutors().put(BulkheadExecutors.PRODUCT, pool);
+        bulkheadExecutors = new BulkheadExecutors(bulkheadProperties, new SimpleMeterRegistry(), "virtual".equals(mode));
+        executor = bulkheadExecutors.get(BulkheadExecutors.PRODUCT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        bulkheadExecutors.destroy();
+    }
+
+    @Benchmark
+    public void fanOut(Counters counters) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(fanOut);
+        try {
+            for (int i = 0; i < fanOut; i++) {
+                futures.add(CompletableFuture.runAsync(this::blockingCall, executor));
+            }
+        } catch (RejectedExecutionException e) {
+            counters.rejected++;
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        if (futures.size() == fanOut) {
+            counters.completed++;
+        }
+    }
+
+    private void blockingCall() {
+        try {
+            Thread.sleep(ioMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long completed;
+
+        public long rejected;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String[] modes = VirtualThreads.isSupported() ? new String[]{"platform", "virtual"} : new String[]{"platform"};
+        new Runner(new OptionsBuilder().
+                include(FanOutLoadBenchmark.class.getSimpleName()).
+                param("mode", modes).
+                build()).run();
+    }
+}
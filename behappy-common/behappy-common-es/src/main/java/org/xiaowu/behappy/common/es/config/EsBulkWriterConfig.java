@@ -0,0 +1,25 @@
+package org.xiaowu.behappy.common.es.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.xiaowu.behappy.common.es.writer.EsBulkWriter;
+
+/**
+ * elasticsearch异步批量写入配置
+ * @author xiaowu
+ */
+@EnableConfigurationProperties(EsBulkWriterProperties.class)
+public class EsBulkWriterConfig {
+
+    @Bean
+    public EsBulkWriter esBulkWriter(RestHighLevelClient restHighLevelClient, ObjectMapper objectMapper,
+                                     EsBulkWriterProperties esBulkWriterProperties, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new EsBulkWriter(restHighLevelClient, objectMapper, esBulkWriterProperties,
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+}
@@ -0,0 +1,48 @@
+package org.xiaowu.behappy.common.es.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * elasticsearch异步批量写入配置
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "es-bulk-writer")
+public class EsBulkWriterProperties {
+
+    /**
+     * 同时发送中的bulk请求数,0为同步发送
+     */
+    private int concurrentRequests = 2;
+
+    /**
+     * 每个bulk的最大请求数,达到后立即发送
+     */
+    private int bulkActions = 1000;
+
+    /**
+     * 每个bulk的最大字节数,达到后立即发送,单位：MB
+     */
+    private long bulkSizeMb = 5;
+
+    /**
+     * 未达到数量或大小时的发送间隔,单位：毫秒
+     */
+    private long flushIntervalMillis = 1000;
+
+    /**
+     * 被拒绝(429)的请求首次重试等待时间,之后指数退避,单位：毫秒
+     */
+    private long retryInitialMillis = 100;
+
+    /**
+     * 被拒绝的请求最大重试次数
+     */
+    private int maxRetries = 5;
+
+    /**
+     * 关闭时等待未完成bulk的时间,单位：毫秒
+     */
+    private long closeTimeoutMillis = 30000;
+}
@@ -13,6 +13,7 @@ import org.elasticsearch.client.indices.GetIndexRequest;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.reindex.BulkByScrollResponse;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.search.Scroll;
@@ -20,9 +21,12 @@ import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author xiaowu
@@ -31,8 +35,11 @@ public class EsUtils {
 
     private static final RestHighLevelClient restHighLevelClient;
 
+    private static final ObjectMapper objectMapper;
+
     static {
         restHighLevelClient = SpringUtil.getBean("restHighLevelClient");
+        objectMapper = SpringUtil.getBean("objectMapper");
     }
 
     /**
@@ -69,18 +76,17 @@ public class EsUtils {
 
     /**
      * 批量新增文档
+     * 同步发送一个bulk,大量或持续写入使用{@link org.xiaowu.behappy.common.es.writer.EsBulkWriter}
      *
      * @param indexName
      * @param list
      */
     public static boolean addData(String indexName, List list) throws Exception {
-        ObjectMapper objectMapper = SpringUtil.getBean("objectMapper");
         if (CollUtil.isNotEmpty(list)) {
             BulkRequest bulkRequest = new BulkRequest();
             for (Object calculateMetaData : list) {
                 IndexRequest indexRequest = new IndexRequest(indexName);
-                String s = objectMapper.writeValueAsString(calculateMetaData);
-                indexRequest.source(s, XContentType.JSON);
+                indexRequest.source(EsUtils.objectMapper.writeValueAsBytes(calculateMetaData), XContentType.JSON);
                 bulkRequest.add(indexRequest);
             }
             BulkResponse bulkResponse = EsUtils.restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
@@ -98,7 +104,7 @@ public class EsUtils {
 
     /**
      * 通用查询方法(无size,默认10000)带排除字段
-     * 复杂查询
+     * 复杂查询,大结果集使用{@link #stream}
      *
      * @param indexName
      * @param includes
@@ -185,6 +191,7 @@ public class EsUtils {
 
     /**
      * 多条件查询--深分页,一次返回匹配条件的全部数据
+     * 全部结果都在内存中,大结果集使用{@link #stream}
      *
      * @param boolQuery 构建多条件查询
      * @return
@@ -222,4 +229,46 @@ public class EsUtils {
         return result;
     }
 
+    /**
+     * 流式查询,按tiebreaker升序,search_after + point in time 逐页拉取
+     * 消费完一页才请求下一页,内存占用与结果总数无关,需要在try-with-resources中使用或遍历完
+     *
+     * @param indexName
+     * @param queryBuilder
+     * @param type       命中的_source反序列化的类型
+     * @param tiebreaker 唯一字段,如id
+     * @param pageSize   每页数量
+     * @param includes   服务端_source过滤
+     * @param excludes
+     * @return
+     */
+    public static <T> Stream<T> stream(String indexName,
+                                       QueryBuilder queryBuilder,
+                                       Class<T> type,
+                                       String tiebreaker,
+                                       int pageSize,
+                                       String[] includes,
+                                       String[] excludes) {
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder().
+                query(queryBuilder).
+                fetchSource(includes, excludes).
+                sort(tiebreaker, SortOrder.ASC);
+        return stream(indexName, sourceBuilder, type, pageSize);
+    }
+
+    /**
+     * 流式查询,自定义排序,最后一个排序字段需要唯一
+     *
+     * @param indexName
+     * @param sourceBuilder 查询条件、排序、_source过滤,size由pageSize决定
+     * @param type
+     * @param pageSize
+     * @return
+     */
+    public static <T> Stream<T> stream(String indexName, SearchSourceBuilder sourceBuilder, Class<T> type, int pageSize) {
+        SearchAfterIterator<T> iterator = new SearchAfterIterator<>(EsUtils.restHighLevelClient.getLowLevelClient(), EsUtils.objectMapper,
+                indexName, sourceBuilder, type, pageSize, "1m");
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false).
+                onClose(iterator::close);
+    }
 }
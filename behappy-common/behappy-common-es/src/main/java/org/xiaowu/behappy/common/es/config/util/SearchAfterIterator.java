@@ -0,0 +1,160 @@
+package org.xiaowu.behappy.common.es.config.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * search_after + point in time 逐页拉取的迭代器
+ * 当前页消费完才请求下一页,内存中最多只有一页数据;_source过滤在服务端完成,命中直接反序列化为目标类型
+ * 打开point in time失败(如未安装x-pack)时退化为直接对索引search_after,期间写入的数据可能被看到
+ * 遍历结束或出错时自动关闭point in time,提前结束需要调用{@link #close()}
+ * PIT接口通过low level client调用,不依赖high level client的版本
+ * @author xiaowu
+ */
+@Slf4j
+public class SearchAfterIterator<T> implements Iterator<T>, Closeable {
+
+    private final RestClient restClient;
+
+    private final ObjectMapper objectMapper;
+
+    private final String indexName;
+
+    private final SearchSourceBuilder sourceBuilder;
+
+    private final Class<T> type;
+
+    private final int pageSize;
+
+    private final String keepAlive;
+
+    private String pitId;
+
+    private Object[] searchAfter;
+
+    private Iterator<T> page = Collections.emptyIterator();
+
+    private boolean exhausted;
+
+    /**
+     * @param restClient
+     * @param objectMapper
+     * @param indexName
+     * @param sourceBuilder 查询条件、排序(最后一个排序字段需要唯一)、_source过滤
+     * @param type 命中的_source反序列化的类型
+     * @param pageSize 每页数量
+     * @param keepAlive point in time保持时间,需要大于处理一页数据的时间,如 1m
+     */
+    public SearchAfterIterator(RestClient restClient, ObjectMapper objectMapper, String indexName, SearchSourceBuilder sourceBuilder,
+                               Class<T> type, int pageSize, String keepAlive) {
+        this.restClient = restClient;
+        this.objectMapper = objectMapper;
+        this.indexName = indexName;
+        this.sourceBuilder = sourceBuilder.size(pageSize).trackTotalHits(false);
+        this.type = type;
+        this.pageSize = pageSize;
+        this.keepAlive = keepAlive;
+        this.pitId = openPit();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext() && !exhausted) {
+            try {
+                fetch();
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    private void fetch() throws IOException {
+        if (searchAfter != null) {
+            sourceBuilder.searchAfter(searchAfter);
+        }
+        ObjectNode body = (ObjectNode) objectMapper.readTree(sourceBuilder.toString());
+        Request request;
+        if (pitId != null) {
+            // 使用point in time时不能指定索引
+            body.putObject("pit").put("id", pitId).put("keep_alive", keepAlive);
+            request = new Request("POST", "/_search");
+        } else {
+            request = new Request("POST", "/" + indexName + "/_search");
+        }
+        request.setJsonEntity(body.toString());
+        JsonNode response = read(restClient.performRequest(request));
+        if (pitId != null) {
+            pitId = response.path("pit_id").asText(pitId);
+        }
+        JsonNode hits = response.path("hits").path("hits");
+        List<T> values = new ArrayList<>(hits.size());
+        JsonNode lastSort = null;
+        for (JsonNode hit : hits) {
+            values.add(objectMapper.treeToValue(hit.path("_source"), type));
+            lastSort = hit.path("sort");
+        }
+        if (hits.size() < pageSize) {
+            close();
+        }
+        if (lastSort != null) {
+            searchAfter = objectMapper.treeToValue(lastSort, Object[].class);
+        }
+        page = values.iterator();
+    }
+
+    private String openPit() {
+        try {
+            Request request = new Request("POST", "/" + indexName + "/_pit");
+            request.addParameter("keep_alive", keepAlive);
+            return read(restClient.performRequest(request)).path("id").asText(null);
+        } catch (IOException e) {
+            log.warn("SearchAfterIterator - 打开point in time失败,直接查询索引 {}: {}", indexName, e.getMessage());
+            return null;
+        }
+    }
+
+    private JsonNode read(Response response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return objectMapper.readTree(content);
+        }
+    }
+
+    @Override
+    public void close() {
+        exhausted = true;
+        if (pitId == null) {
+            return;
+        }
+        try {
+            Request request = new Request("DELETE", "/_pit");
+            request.setJsonEntity(objectMapper.createObjectNode().put("id", pitId).toString());
+            restClient.performRequest(request);
+        } catch (IOException e) {
+            log.warn("SearchAfterIterator - 关闭point in time失败,等待过期: {}", e.getMessage());
+        } finally {
+            pitId = null;
+        }
+    }
+}
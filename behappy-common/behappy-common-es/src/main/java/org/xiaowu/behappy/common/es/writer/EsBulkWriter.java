@@ -0,0 +1,220 @@
+package org.xiaowu.behappy.common.es.writer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.*;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+import org.xiaowu.behappy.common.es.config.EsBulkWriterProperties;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * elasticsearch异步批量写入
+ * 基于{@link BulkProcessor}: 按请求数、字节数、时间间隔触发发送,多个bulk并发发送,
+ * 被拒绝(429)的请求按指数退避重试;文档直接序列化为字节,不经过中间字符串
+ * 每个请求返回一个future,bulk完成后按该请求的结果完成,需要确认写入结果时等待future即可
+ * 指标:
+ * es.bulk.pending 已提交未完成的请求数
+ * es.bulk.latency bulk耗时
+ * es.bulk.items   完成的请求数,按结果(success/failure/rejected)区分
+ * @author xiaowu
+ */
+@Slf4j
+public class EsBulkWriter implements DisposableBean {
+
+    private final BulkProcessor bulkProcessor;
+
+    private final ObjectMapper objectMapper;
+
+    private final EsBulkWriterProperties esBulkWriterProperties;
+
+    private final AtomicLong pending = new AtomicLong();
+
+    /**
+     * executionId -> 发送开始时间
+     */
+    private final Map<Long, Long> startTimes = new ConcurrentHashMap<>();
+
+    /**
+     * 已提交未完成的请求 -> 结果,请求没有重写equals,按实例区分
+     */
+    private final Map<DocWriteRequest<?>, CompletableFuture<Void>> results = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final Timer latencyTimer;
+
+    private final Counter successCounter;
+
+    private final Counter failureCounter;
+
+    private final Counter rejectedCounter;
+
+    public EsBulkWriter(RestHighLevelClient restHighLevelClient, ObjectMapper objectMapper,
+                        EsBulkWriterProperties esBulkWriterProperties, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.esBulkWriterProperties = esBulkWriterProperties;
+        this.latencyTimer = Timer.builder("es.bulk.latency").register(meterRegistry);
+        this.successCounter = Counter.builder("es.bulk.items").tag("result", "success").register(meterRegistry);
+        this.failureCounter = Counter.builder("es.bulk.items").tag("result", "failure").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("es.bulk.items").tag("result", "rejected").register(meterRegistry);
+        Gauge.builder("es.bulk.pending", pending, AtomicLong::get).register(meterRegistry);
+        this.bulkProcessor = BulkProcessor.builder(
+                (request, listener) -> restHighLevelClient.bulkAsync(request, RequestOptions.DEFAULT, listener), new Listener()).
+                setConcurrentRequests(esBulkWriterProperties.getConcurrentRequests()).
+                setBulkActions(esBulkWriterProperties.getBulkActions()).
+                setBulkSize(new ByteSizeValue(esBulkWriterProperties.getBulkSizeMb(), ByteSizeUnit.MB)).
+                setFlushInterval(TimeValue.timeValueMillis(esBulkWriterProperties.getFlushIntervalMillis())).
+                setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(esBulkWriterProperties.getRetryInitialMillis()),
+                        esBulkWriterProperties.getMaxRetries())).
+                build();
+    }
+
+    /**
+     * 写入(覆盖)文档
+     * @param indexName
+     * @param id
+     * @param document 使用json序列化
+     * @return 写入结果
+     */
+    @SneakyThrows
+    public CompletableFuture<Void> index(String indexName, String id, Object document) {
+        return add(new IndexRequest(indexName).id(id).source(objectMapper.writeValueAsBytes(document), XContentType.JSON));
+    }
+
+    public CompletableFuture<Void> delete(String indexName, String id) {
+        return add(new DeleteRequest(indexName, id));
+    }
+
+    /**
+     * 提交请求,并发发送的bulk数已满时阻塞
+     * @param request 需要指定文档id,按id匹配bulk结果
+     * @return 写入结果,失败时为{@link IllegalStateException}
+     */
+    public CompletableFuture<Void> add(DocWriteRequest<?> request) {
+        Assert.notNull(request.id(), "EsBulkWriter需要指定文档id");
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        results.put(request, result);
+        pending.incrementAndGet();
+        try {
+            bulkProcessor.add(request);
+        } catch (RuntimeException e) {
+            results.remove(request);
+            pending.decrementAndGet();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * 立即发送已缓冲的请求,不等待结果
+     */
+    public void flush() {
+        bulkProcessor.flush();
+    }
+
+    public long pending() {
+        return pending.get();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (!bulkProcessor.awaitClose(esBulkWriterProperties.getCloseTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("EsBulkWriter - 关闭超时,未完成的请求: {}", pending.get());
+        }
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            startTimes.put(executionId, System.nanoTime());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            finish(executionId, request);
+            long failures = 0;
+            long rejected = 0;
+            // 被拒绝的请求重试后,结果中成功的在前、重试的在后,与请求的顺序不一致,按 文档id + 操作类型 匹配;
+            // 写入别名时结果中是实际索引名,不参与匹配,同一个文档写多个索引时有一个失败即全部视为失败
+            Map<String, String> failureMessages = new HashMap<>();
+            for (BulkItemResponse item : response.getItems()) {
+                if (!item.isFailed()) {
+                    continue;
+                }
+                failureMessages.putIfAbsent(key(item.getId(), item.getOpType()), item.getFailureMessage());
+                if (item.status() == RestStatus.TOO_MANY_REQUESTS) {
+                    rejected++;
+                } else {
+                    failures++;
+                }
+            }
+            for (DocWriteRequest<?> docWriteRequest : request.requests()) {
+                CompletableFuture<Void> result = results.remove(docWriteRequest);
+                if (result == null) {
+                    continue;
+                }
+                String failureMessage = failureMessages.get(key(docWriteRequest.id(), docWriteRequest.opType()));
+                if (failureMessage == null) {
+                    result.complete(null);
+                } else {
+                    result.completeExceptionally(new IllegalStateException(failureMessage));
+                }
+            }
+            successCounter.increment(request.numberOfActions() - failures - rejected);
+            failureCounter.increment(failures);
+            rejectedCounter.increment(rejected);
+            if (response.hasFailures()) {
+                log.warn("EsBulkWriter - bulk {} 部分失败, 失败: {}, 重试后仍被拒绝: {}, {}", executionId, failures, rejected,
+                        response.buildFailureMessage());
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            finish(executionId, request);
+            failureCounter.increment(request.numberOfActions());
+            for (DocWriteRequest<?> docWriteRequest : request.requests()) {
+                CompletableFuture<Void> result = results.remove(docWriteRequest);
+                if (result != null) {
+                    result.completeExceptionally(new IllegalStateException(failure.getMessage(), failure));
+                }
+            }
+            log.error("EsBulkWriter - bulk {} 发送失败, 请求数: {}: {}", executionId, request.numberOfActions(), failure.getMessage());
+        }
+
+        private String key(String id, DocWriteRequest.OpType opType) {
+            return opType + ":" + id;
+        }
+
+        private void finish(long executionId, BulkRequest request) {
+            pending.addAndGet(-request.numberOfActions());
+            Long startTime = startTimes.remove(executionId);
+            if (startTime != null) {
+                latencyTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
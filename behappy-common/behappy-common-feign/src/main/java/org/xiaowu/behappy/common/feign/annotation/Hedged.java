@@ -0,0 +1,20 @@
+package org.xiaowu.behappy.common.feign.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 标记幂等的feign方法,开启feign-hedge.enabled后,
+ * 请求在该方法最近耗时的指定分位数内没有返回时,向负载均衡再发一次请求,使用先返回的结果
+ * 只能标记在重复调用没有副作用的查询方法上
+ * @author xiaowu
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Hedged {
+
+    /**
+     * 触发对冲请求的耗时分位数
+     */
+    double percentile() default 0.95;
+}
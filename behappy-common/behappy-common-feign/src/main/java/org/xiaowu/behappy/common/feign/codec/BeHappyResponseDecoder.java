@@ -0,0 +1,102 @@
+package org.xiaowu.behappy.common.feign.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import feign.FeignException;
+import feign.codec.DecodeException;
+import feign.codec.Decoder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.xiaowu.behappy.common.core.constant.CommonConstants;
+import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.common.core.util.TypedResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * 返回值为{@link Response}的feign方法,直接从响应流中按方法返回值的泛型解析
+ * 1. 边读边检查code,code不为成功时跳过data不做反序列化
+ * 2. 返回{@link TypedResponse},ResponseConvert转换时不再序列化后重新解析
+ * 3. 按响应的Content-Type选择json或smile
+ * 其他返回值、非json/smile响应交给默认解码器
+ * @author xiaowu
+ */
+public class BeHappyResponseDecoder implements Decoder {
+
+    private static final MediaType SMILE = MediaType.parseMediaType(BeHappySmileEncoder.SMILE_VALUE);
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectMapper smileMapper;
+
+    private final Decoder delegate;
+
+    public BeHappyResponseDecoder(ObjectMapper objectMapper, Decoder delegate) {
+        this(objectMapper, null, delegate);
+    }
+
+    public BeHappyResponseDecoder(ObjectMapper objectMapper, ObjectMapper smileMapper, Decoder delegate) {
+        this.objectMapper = objectMapper;
+        this.smileMapper = smileMapper;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object decode(feign.Response response, Type type) throws IOException, FeignException {
+        JavaType javaType = objectMapper.getTypeFactory().constructType(type);
+        ObjectMapper mapper = javaType.getRawClass() == Response.class && response.body() != null ? mapperFor(response) : null;
+        if (mapper == null) {
+            return delegate.decode(response, type);
+        }
+        // 原始类型Response的data为Object
+        JavaType dataType = javaType.containedTypeOrUnknown(0);
+        try (InputStream inputStream = response.body().asInputStream();
+             JsonParser parser = mapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new DecodeException(response.status(), "响应不是Response对象", response.request());
+            }
+            TypedResponse<Object> typedResponse = new TypedResponse<>(dataType);
+            boolean codeRead = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (fieldName) {
+                    case "code":
+                        typedResponse.setCode(parser.getIntValue());
+                        codeRead = true;
+                        break;
+                    case "msg":
+                        typedResponse.setMsg(token == JsonToken.VALUE_NULL ? null : parser.getText());
+                        break;
+                    case "data":
+                        if (token == JsonToken.VALUE_NULL || (codeRead && typedResponse.getCode() != CommonConstants.SUCCESS)) {
+                            parser.skipChildren();
+                        } else {
+                            typedResponse.setData(mapper.readValue(parser, dataType));
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return typedResponse;
+        }
+    }
+
+    private ObjectMapper mapperFor(feign.Response response) {
+        Collection<String> contentTypes = response.headers().get(HttpHeaders.CONTENT_TYPE);
+        if (contentTypes == null || contentTypes.isEmpty()) {
+            return objectMapper;
+        }
+        MediaType mediaType = MediaType.parseMediaType(contentTypes.iterator().next());
+        if (MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)) {
+            return objectMapper;
+        }
+        return smileMapper != null && SMILE.isCompatibleWith(mediaType) ? smileMapper : null;
+    }
+}
@@ -0,0 +1,43 @@
+package org.xiaowu.behappy.common.feign.codec;
+
+import feign.RequestTemplate;
+import feign.codec.EncodeException;
+import feign.codec.Encoder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * 请求体按smile编码
+ * 只处理未指定Content-Type或Content-Type为json的对象请求体,字符串、字节数组、表单等交给默认编码器
+ * @author xiaowu
+ */
+public class BeHappySmileEncoder implements Encoder {
+
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+
+    private final Encoder delegate;
+
+    public BeHappySmileEncoder(Encoder delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void encode(Object object, Type bodyType, RequestTemplate template) throws EncodeException {
+        if (object != null && !(object instanceof CharSequence) && !(object instanceof byte[]) && isJson(template)) {
+            template.removeHeader(HttpHeaders.CONTENT_TYPE);
+            template.header(HttpHeaders.CONTENT_TYPE, SMILE_VALUE);
+        }
+        delegate.encode(object, bodyType, template);
+    }
+
+    private boolean isJson(RequestTemplate template) {
+        Collection<String> contentTypes = template.headers().get(HttpHeaders.CONTENT_TYPE);
+        if (contentTypes == null || contentTypes.isEmpty()) {
+            return true;
+        }
+        return MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentTypes.iterator().next()));
+    }
+}
@@ -0,0 +1,38 @@
+package org.xiaowu.behappy.common.feign.config;
+
+import feign.Client;
+import feign.Feign;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xiaowu.behappy.common.feign.annotation.Hedged;
+import org.xiaowu.behappy.common.feign.hedge.HedgingClient;
+
+/**
+ * feign对冲请求,包装负载均衡的feign Client,只对标记{@link Hedged}的方法生效
+ * @author xiaowu
+ */
+@Configuration
+@ConditionalOnClass(Feign.class)
+@ConditionalOnProperty(prefix = "feign-hedge", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(FeignHedgeProperties.class)
+public class BeHappyHedgeConfig {
+
+    @Bean
+    public static BeanPostProcessor hedgingClientPostProcessor(ObjectProvider<FeignHedgeProperties> feignHedgeProperties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof Client && !(bean instanceof HedgingClient)) {
+                    return new HedgingClient((Client) bean, feignHedgeProperties.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package org.xiaowu.behappy.common.feign.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xiaowu.behappy.common.feign.loadbalancer.InstanceStatsRegistry;
+import org.xiaowu.behappy.common.feign.loadbalancer.LatencyAwareLoadBalancer;
+
+/**
+ * 所有服务默认使用{@link LatencyAwareLoadBalancer}
+ * 实例统计在应用上下文中共享,由okhttp拦截器记录
+ * @author xiaowu
+ */
+@Configuration
+@ConditionalOnClass(ReactorServiceInstanceLoadBalancer.class)
+@ConditionalOnProperty(prefix = "feign-lb", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(FeignLbProperties.class)
+@LoadBalancerClients(defaultConfiguration = LatencyAwareLoadBalancerClientConfig.class)
+public class BeHappyLoadBalancerConfig {
+
+    @Bean
+    public InstanceStatsRegistry instanceStatsRegistry(FeignLbProperties feignLbProperties) {
+        return new InstanceStatsRegistry(feignLbProperties);
+    }
+}
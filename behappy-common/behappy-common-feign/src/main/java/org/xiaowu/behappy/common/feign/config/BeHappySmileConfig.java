@@ -0,0 +1,29 @@
+package org.xiaowu.behappy.common.feign.config;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * smile消息转换器
+ * 使用应用的Jackson2ObjectMapperBuilder(包含spring.jackson配置和自定义模块)构建,
+ * 与json序列化结果一致,替换spring mvc默认的smile转换器,同时供feign编解码使用
+ * 排在json转换器之后,Accept为json或任意类型的调用方仍返回json
+ * @author xiaowu
+ */
+@Configuration
+@ConditionalOnClass(SmileFactory.class)
+@EnableConfigurationProperties(FeignSmileProperties.class)
+public class BeHappySmileConfig {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,50 @@
+package org.xiaowu.behappy.common.feign.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * feign对冲请求配置
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "feign-hedge")
+public class FeignHedgeProperties {
+
+    /**
+     * 是否开启对冲请求,默认关闭
+     */
+    private boolean enabled = false;
+
+    /**
+     * 对冲请求预算,占可对冲请求数的比例
+     */
+    private double budgetRatio = 0.1;
+
+    /**
+     * 预算最多累积的对冲次数,避免长时间空闲后集中对冲
+     */
+    private int maxBudget = 100;
+
+    /**
+     * 方法的耗时样本数达到该值才开始对冲
+     */
+    private int minSamples = 20;
+
+    /**
+     * 每个方法保留的最近耗时样本数
+     */
+    private int sampleSize = 256;
+
+    /**
+     * 对冲等待的最小时间
+     */
+    private Duration minDelay = Duration.ofMillis(5);
+
+    /**
+     * 执行请求的最大线程数,超过时不对冲,直接在调用线程执行
+     */
+    private int maxThreads = 64;
+}
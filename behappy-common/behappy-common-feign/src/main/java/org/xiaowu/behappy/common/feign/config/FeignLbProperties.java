@@ -0,0 +1,46 @@
+package org.xiaowu.behappy.common.feign.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * feign负载均衡配置
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "feign-lb")
+public class FeignLbProperties {
+
+    /**
+     * 是否按实例延迟选择(替换默认的轮询),默认开启
+     */
+    private boolean enabled = true;
+
+    /**
+     * 延迟EWMA的衰减时间,越小对延迟变化越敏感
+     * 长时间没有请求的实例延迟会逐渐衰减,重新获得流量
+     */
+    private Duration decayTime = Duration.ofSeconds(10);
+
+    /**
+     * 错误率统计窗口
+     */
+    private Duration errorWindow = Duration.ofSeconds(10);
+
+    /**
+     * 窗口内请求数达到该值才计算错误率
+     */
+    private int minRequests = 20;
+
+    /**
+     * 错误率(连接异常、5xx)达到该值时摘除实例
+     */
+    private double errorRateThreshold = 0.5;
+
+    /**
+     * 实例摘除时长,到期后重新参与选择
+     */
+    private Duration ejectDuration = Duration.ofSeconds(30);
+}
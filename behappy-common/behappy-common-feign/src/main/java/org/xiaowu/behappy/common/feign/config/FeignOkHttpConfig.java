@@ -1,14 +1,33 @@
 package org.xiaowu.behappy.common.feign.config;
 
 import com.alibaba.cloud.sentinel.feign.SentinelContractHolder;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import feign.*;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
+import feign.form.spring.SpringFormEncoder;
+import feign.optionals.OptionalDecoder;
 import okhttp3.ConnectionPool;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
 import org.springframework.cloud.openfeign.FeignAutoConfiguration;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.cloud.openfeign.support.SpringEncoder;
 import org.springframework.cloud.openfeign.support.SpringMvcContract;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.xiaowu.behappy.common.feign.codec.BeHappyResponseDecoder;
+import org.xiaowu.behappy.common.feign.codec.BeHappySmileEncoder;
+import org.xiaowu.behappy.common.feign.loadbalancer.InstanceStatsRegistry;
+import org.xiaowu.behappy.common.feign.loadbalancer.LoadBalancerStatsInterceptor;
 
 import java.util.concurrent.TimeUnit;
 
@@ -20,8 +39,11 @@ import java.util.concurrent.TimeUnit;
 @AutoConfigureBefore(FeignAutoConfiguration.class)
 public class FeignOkHttpConfig {
     @Bean
-    public okhttp3.OkHttpClient okHttpClient() {
-        return new okhttp3.OkHttpClient.Builder()
+    public okhttp3.OkHttpClient okHttpClient(ObjectProvider<InstanceStatsRegistry> instanceStatsRegistry) {
+        okhttp3.OkHttpClient.Builder builder = new okhttp3.OkHttpClient.Builder();
+        // 记录实例延迟、错误,供负载均衡选择实例
+        instanceStatsRegistry.ifAvailable(registry -> builder.addInterceptor(new LoadBalancerStatsInterceptor(registry)));
+        return builder
                 //设置连接超时
                 .connectTimeout(60, TimeUnit.SECONDS)
                 //设置读超时
@@ -42,6 +64,40 @@ public class FeignOkHttpConfig {
         return new SentinelContractHolder(new SpringMvcContract());
     }
 
+    /**
+     * 返回值为Response的方法直接按泛型解析,其他沿用默认解码器
+     */
+    @Bean
+    public Decoder feignDecoder(ObjectMapper objectMapper, ObjectFactory<HttpMessageConverters> messageConverters,
+                                ObjectProvider<MappingJackson2SmileHttpMessageConverter> smileConverter) {
+        MappingJackson2SmileHttpMessageConverter converter = smileConverter.getIfAvailable();
+        return new BeHappyResponseDecoder(objectMapper, converter == null ? null : converter.getObjectMapper(),
+                new OptionalDecoder(new ResponseEntityDecoder(new SpringDecoder(messageConverters))));
+    }
+
+    /**
+     * 开启smile后请求体按smile编码
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "feign-smile", name = "enabled", havingValue = "true")
+    public Encoder feignEncoder(ObjectFactory<HttpMessageConverters> messageConverters) {
+        return new BeHappySmileEncoder(new SpringEncoder(new SpringFormEncoder(), messageConverters));
+    }
+
+    /**
+     * 开启smile后优先接收smile,服务端不支持时返回json
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "feign-smile", name = "enabled", havingValue = "true")
+    public RequestInterceptor smileAcceptInterceptor() {
+        String accept = BeHappySmileEncoder.SMILE_VALUE + ", " + MediaType.APPLICATION_JSON_VALUE + ";q=0.9";
+        return template -> {
+            if (!template.headers().containsKey(HttpHeaders.ACCEPT)) {
+                template.header(HttpHeaders.ACCEPT, accept);
+            }
+        };
+    }
+
     @Bean
     public Logger.Level feignLoggerLevel() {
         return Logger.Level.BASIC;
@@ -52,9 +108,13 @@ public class FeignOkHttpConfig {
         return new Request.Options(10, TimeUnit.SECONDS, 60, TimeUnit.SECONDS, true);
     }
 
+    /**
+     * 不重试,避免非幂等请求(如锁库存)重复执行,幂等的查询由对冲请求处理慢实例
+     * @see org.xiaowu.behappy.common.feign.annotation.Hedged
+     */
     @Bean
     public Retryer feignRetry() {
-        return new Retryer.Default();
+        return Retryer.NEVER_RETRY;
     }
 
 }
\ No newline at end of file
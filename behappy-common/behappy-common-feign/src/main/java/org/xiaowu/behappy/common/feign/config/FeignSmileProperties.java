@@ -0,0 +1,20 @@
+package org.xiaowu.behappy.common.feign.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * feign调用使用smile二进制编码的配置
+ * 服务端始终支持smile,按请求的Accept/Content-Type协商,外部调用方不受影响
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "feign-smile")
+public class FeignSmileProperties {
+
+    /**
+     * 客户端是否使用smile,默认关闭
+     * 开启后请求体按smile编码,Accept中smile优先,未升级的服务端仍返回json
+     */
+    private boolean enabled = false;
+}
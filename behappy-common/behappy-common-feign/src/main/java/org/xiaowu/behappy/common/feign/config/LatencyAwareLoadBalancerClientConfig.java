@@ -0,0 +1,26 @@
+package org.xiaowu.behappy.common.feign.config;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.xiaowu.behappy.common.feign.loadbalancer.InstanceStatsRegistry;
+import org.xiaowu.behappy.common.feign.loadbalancer.LatencyAwareLoadBalancer;
+
+/**
+ * 每个服务的负载均衡子上下文配置,不能加@Configuration,避免被扫描到应用上下文
+ * @author xiaowu
+ */
+public class LatencyAwareLoadBalancerClientConfig {
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> reactorServiceInstanceLoadBalancer(Environment environment,
+                                                                                   LoadBalancerClientFactory loadBalancerClientFactory,
+                                                                                   InstanceStatsRegistry instanceStatsRegistry) {
+        String name = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new LatencyAwareLoadBalancer(loadBalancerClientFactory.getLazyProvider(name, ServiceInstanceListSupplier.class),
+                name, instanceStatsRegistry);
+    }
+}
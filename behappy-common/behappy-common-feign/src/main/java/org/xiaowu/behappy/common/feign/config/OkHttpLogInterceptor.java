@@ -2,6 +2,7 @@ package org.xiaowu.behappy.common.feign.config;
 
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -29,9 +30,12 @@ public class OkHttpLogInterceptor implements Interceptor {
         //因为response.body().string()之后，response中的流会被关闭，程序会报错，我们需要创建出一
         //个新的response给应用层处理
         ResponseBody responseBody = response.peekBody(1024 * 1024);
+        // smile为二进制,只输出长度
+        MediaType contentType = responseBody.contentType();
+        boolean smile = contentType != null && "x-jackson-smile".equals(contentType.subtype());
         log.info(String.format("接收响应: [%s] %n返回json:【%s】 %.1fms%n%s",
                 response.request().url(),
-                responseBody.string(),
+                smile ? "smile " + responseBody.contentLength() + " bytes" : responseBody.string(),
                 (t2 - t1) / 1e6d,
                 response.headers()));
         return response;
@@ -0,0 +1,40 @@
+package org.xiaowu.behappy.common.feign.hedge;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局对冲预算
+ * 每个可对冲的请求存入budgetRatio个令牌,每次对冲取出1个,对冲请求最多占可对冲请求的budgetRatio
+ * 下游整体变慢时所有请求都超过阈值,预算限制对冲带来的额外流量
+ * @author xiaowu
+ */
+public class HedgeBudget {
+
+    private static final long UNIT = 1000;
+
+    private final long deposit;
+
+    private final long max;
+
+    private final AtomicLong balance = new AtomicLong();
+
+    public HedgeBudget(double budgetRatio, int maxBudget) {
+        this.deposit = (long) (budgetRatio * UNIT);
+        this.max = maxBudget * UNIT;
+    }
+
+    public void deposit() {
+        balance.accumulateAndGet(deposit, (current, delta) -> Math.min(current + delta, max));
+    }
+
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - UNIT));
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+package org.xiaowu.behappy.common.feign.hedge;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import feign.Client;
+import feign.MethodMetadata;
+import feign.Request;
+import feign.Response;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.xiaowu.behappy.common.feign.annotation.Hedged;
+import org.xiaowu.behappy.common.feign.config.FeignHedgeProperties;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 对冲请求
+ * 标记{@link Hedged}的方法,请求在分位数耗时内没有返回(或已经失败)且预算充足时,再发一次请求,
+ * 两次请求都经过负载均衡,慢实例处理中的请求数和延迟更高,第二次请求大概率选到其他实例
+ * 先成功返回的结果生效,另一个请求中断,晚到的响应直接关闭
+ * @author xiaowu
+ */
+@Slf4j
+public class HedgingClient implements Client, DisposableBean {
+
+    private final Client delegate;
+
+    private final FeignHedgeProperties properties;
+
+    private final HedgeBudget budget;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 方法 -> 耗时统计,没有标记{@link Hedged}的方法为空
+     */
+    private final Map<Method, Optional<LatencyTracker>> trackers = new ConcurrentHashMap<>();
+
+    public HedgingClient(Client delegate, FeignHedgeProperties properties) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.budget = new HedgeBudget(properties.getBudgetRatio(), properties.getMaxBudget());
+        this.executor = new ThreadPoolExecutor(0, properties.getMaxThreads(), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                ThreadFactoryBuilder.create().setNamePrefix("feign-hedge-").setDaemon(true).build());
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        LatencyTracker tracker = tracker(request);
+        if (tracker == null) {
+            return delegate.execute(request, options);
+        }
+        budget.deposit();
+        Hedge hedge = new Hedge(request, options, tracker);
+        try {
+            return hedge.execute();
+        } catch (RejectedExecutionException e) {
+            // 线程用尽,不对冲
+            return delegate.execute(request, options);
+        }
+    }
+
+    private LatencyTracker tracker(Request request) {
+        MethodMetadata metadata = request.requestTemplate() == null ? null : request.requestTemplate().methodMetadata();
+        if (metadata == null || metadata.method() == null) {
+            return null;
+        }
+        return trackers.computeIfAbsent(metadata.method(), method -> {
+            Hedged hedged = AnnotatedElementUtils.findMergedAnnotation(method, Hedged.class);
+            return hedged == null ? Optional.empty() :
+                    Optional.of(new LatencyTracker(properties.getSampleSize(), hedged.percentile(), properties.getMinSamples()));
+        }).orElse(null);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 一次调用的所有请求
+     */
+    private class Hedge {
+
+        private final Request request;
+
+        private final Request.Options options;
+
+        private final LatencyTracker tracker;
+
+        /**
+         * 请求结果: Response或异常
+         */
+        private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private final List<Future<?>> attempts = new ArrayList<>(2);
+
+        private Hedge(Request request, Request.Options options, LatencyTracker tracker) {
+            this.request = request;
+            this.options = options;
+            this.tracker = tracker;
+        }
+
+        private Response execute() throws IOException {
+            submit();
+            try {
+                Object result = results.poll(delay(), TimeUnit.NANOSECONDS);
+                if (result instanceof Response) {
+                    return (Response) result;
+                }
+                // 超过分位数耗时或第一次请求已失败
+                boolean hedged = trySubmitHedge();
+                if (result == null) {
+                    result = results.take();
+                    if (result instanceof Response) {
+                        return (Response) result;
+                    }
+                }
+                if (hedged) {
+                    Object second = results.take();
+                    if (second instanceof Response) {
+                        return (Response) second;
+                    }
+                }
+                throw (IOException) result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("对冲请求被中断", e);
+            } finally {
+                settled.set(true);
+                attempts.forEach(attempt -> attempt.cancel(true));
+            }
+        }
+
+        private long delay() {
+            long threshold = tracker.thresholdNanos();
+            // 样本不足时不对冲,只等待第一次请求
+            return threshold < 0 ? Long.MAX_VALUE : Math.max(threshold, properties.getMinDelay().toNanos());
+        }
+
+        private boolean trySubmitHedge() {
+            if (tracker.thresholdNanos() < 0 || !budget.tryWithdraw()) {
+                return false;
+            }
+            try {
+                submit();
+                log.debug("HedgingClient - 对冲请求: {}", request.url());
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        private void submit() {
+            attempts.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    Response response = delegate.execute(request, options);
+                    if (settled.compareAndSet(false, true)) {
+                        tracker.record(System.nanoTime() - start);
+                        results.add(response);
+                    } else {
+                        response.close();
+                    }
+                } catch (IOException e) {
+                    results.add(e);
+                } catch (RuntimeException e) {
+                    results.add(new IOException(e));
+                }
+            }));
+        }
+    }
+}
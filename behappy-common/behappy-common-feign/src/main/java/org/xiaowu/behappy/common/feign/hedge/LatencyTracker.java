@@ -0,0 +1,51 @@
+package org.xiaowu.behappy.common.feign.hedge;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个方法最近的耗时样本,环形数组保存,每记录一定次数重新计算一次分位数
+ * @author xiaowu
+ */
+public class LatencyTracker {
+
+    private static final int REFRESH_INTERVAL = 32;
+
+    private final long[] samples;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final double percentile;
+
+    private final int minSamples;
+
+    /**
+     * 分位数耗时,样本不足时为-1
+     */
+    private volatile long thresholdNanos = -1;
+
+    public LatencyTracker(int sampleSize, double percentile, int minSamples) {
+        this.samples = new long[sampleSize];
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+    }
+
+    public void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples[(int) (n % samples.length)] = nanos;
+        if (n + 1 >= minSamples && ((n + 1) % REFRESH_INTERVAL == 0 || thresholdNanos < 0)) {
+            refresh(Math.min(n + 1, samples.length));
+        }
+    }
+
+    public long thresholdNanos() {
+        return thresholdNanos;
+    }
+
+    private void refresh(long size) {
+        long[] sorted = Arrays.copyOf(samples, (int) size);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        thresholdNanos = sorted[Math.max(index, 0)];
+    }
+}
@@ -0,0 +1,90 @@
+package org.xiaowu.behappy.common.feign.loadbalancer;
+
+import org.xiaowu.behappy.common.feign.config.FeignLbProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个实例的调用统计
+ * 1. 延迟使用peak EWMA: 超过当前值的延迟立即生效,低于当前值的按时间衰减平滑,读取时也按距上次更新的时间衰减
+ * 2. 处理中的请求数
+ * 3. 固定窗口内的错误率,超过阈值摘除一段时间
+ * @author xiaowu
+ */
+public class InstanceStats {
+
+    private final FeignLbProperties properties;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private double ewmaNanos;
+
+    private long lastUpdate = System.nanoTime();
+
+    private long windowStart = System.nanoTime();
+
+    private int requests;
+
+    private int failures;
+
+    private volatile long ejectedUntil = System.nanoTime();
+
+    public InstanceStats(FeignLbProperties properties) {
+        this.properties = properties;
+    }
+
+    public void start() {
+        inflight.incrementAndGet();
+    }
+
+    /**
+     * 请求结束
+     * @param rttNanos 请求耗时
+     * @param failed 是否连接异常或5xx
+     */
+    public void finish(long rttNanos, boolean failed) {
+        inflight.decrementAndGet();
+        long now = System.nanoTime();
+        synchronized (this) {
+            double weight = weight(now);
+            ewmaNanos = rttNanos > ewmaNanos ? rttNanos : ewmaNanos * weight + rttNanos * (1 - weight);
+            lastUpdate = now;
+            if (now - windowStart > properties.getErrorWindow().toNanos()) {
+                windowStart = now;
+                requests = 0;
+                failures = 0;
+            }
+            requests++;
+            if (failed) {
+                failures++;
+            }
+            if (requests >= properties.getMinRequests() && failures >= requests * properties.getErrorRateThreshold()) {
+                ejectedUntil = now + properties.getEjectDuration().toNanos();
+                windowStart = now;
+                requests = 0;
+                failures = 0;
+            }
+        }
+    }
+
+    /**
+     * 选择实例的代价: 延迟 * (处理中请求数 + 1)
+     * 还没有延迟数据的实例只按处理中请求数计算,保证新实例能收到请求
+     */
+    public double cost() {
+        double latency;
+        synchronized (this) {
+            latency = ewmaNanos * weight(System.nanoTime());
+        }
+        int pending = inflight.get();
+        return latency == 0 ? pending : latency * (pending + 1);
+    }
+
+    public boolean isEjected() {
+        return ejectedUntil - System.nanoTime() > 0;
+    }
+
+    private double weight(long now) {
+        return Math.exp(-(double) Math.max(now - lastUpdate, 0) / properties.getDecayTime().toNanos());
+    }
+}
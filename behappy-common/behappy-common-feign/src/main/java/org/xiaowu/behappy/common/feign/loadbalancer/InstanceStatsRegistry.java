@@ -0,0 +1,26 @@
+package org.xiaowu.behappy.common.feign.loadbalancer;
+
+import org.xiaowu.behappy.common.feign.config.FeignLbProperties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实例调用统计,按host:port区分
+ * 由{@link LoadBalancerStatsInterceptor}在okhttp中记录,{@link LatencyAwareLoadBalancer}选择实例时读取
+ * @author xiaowu
+ */
+public class InstanceStatsRegistry {
+
+    private final FeignLbProperties properties;
+
+    private final Map<String, InstanceStats> stats = new ConcurrentHashMap<>();
+
+    public InstanceStatsRegistry(FeignLbProperties properties) {
+        this.properties = properties;
+    }
+
+    public InstanceStats get(String host, int port) {
+        return stats.computeIfAbsent(host + ":" + port, key -> new InstanceStats(properties));
+    }
+}
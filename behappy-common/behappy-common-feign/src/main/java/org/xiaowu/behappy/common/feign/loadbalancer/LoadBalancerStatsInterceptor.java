@@ -0,0 +1,37 @@
+package org.xiaowu.behappy.common.feign.loadbalancer;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * 记录每个实例的请求耗时、处理中请求数和失败(连接异常、5xx)
+ * feign负载均衡后请求地址已替换为实例的host:port
+ * @author xiaowu
+ */
+public class LoadBalancerStatsInterceptor implements Interceptor {
+
+    private final InstanceStatsRegistry registry;
+
+    public LoadBalancerStatsInterceptor(InstanceStatsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        HttpUrl url = chain.request().url();
+        InstanceStats stats = registry.get(url.host(), url.port());
+        stats.start();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Response response = chain.proceed(chain.request());
+            failed = response.code() >= 500;
+            return response;
+        } finally {
+            stats.finish(System.nanoTime() - start, failed);
+        }
+    }
+}
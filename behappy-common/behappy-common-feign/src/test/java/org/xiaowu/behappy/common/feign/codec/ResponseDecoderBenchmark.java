@@ -0,0 +1,97 @@
+package org.xiaowu.behappy.common.feign.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import feign.Request;
+import feign.RequestTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.common.core.util.ResponseConvert;
+import org.xiaowu.behappy.common.feign.codec.ShopSkuSamples.SkuSample;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * feign响应解码基准测试: 原有路径(按泛型解析Response后ResponseConvert再序列化、解析一次) 与 {@link BeHappyResponseDecoder}
+ * 运行: 执行main方法,或 mvn test-compile 后使用jmh运行
+ * @author xiaowu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseDecoderBenchmark {
+
+    private static final TypeReference<List<SkuSample>> DATA_TYPE = new TypeReference<List<SkuSample>>() {
+    };
+
+    private static final TypeReference<Response<List<SkuSample>>> RESPONSE_TYPE = new TypeReference<Response<List<SkuSample>>>() {
+    };
+
+    @Param({"10", "100"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+
+    private ResponseConvert responseConvert;
+
+    private BeHappyResponseDecoder decoder;
+
+    private JavaType responseType;
+
+    private byte[] body;
+
+    private Request request;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = new ObjectMapper();
+        responseConvert = new ResponseConvert(objectMapper);
+        decoder = new BeHappyResponseDecoder(objectMapper, (response, type) -> {
+            throw new UnsupportedOperationException();
+        });
+        responseType = objectMapper.getTypeFactory().constructType(RESPONSE_TYPE);
+        List<SkuSample> skus = ShopSkuSamples.create(size);
+        body = objectMapper.writeValueAsBytes(Response.ok(skus));
+        request = Request.create(Request.HttpMethod.POST, "http://behappy-product/feign/v1/sku/shop-cart",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8, new RequestTemplate());
+    }
+
+    private feign.Response response() {
+        return feign.Response.builder().
+                status(200).
+                request(request).
+                headers(Collections.singletonMap("Content-Type", Collections.singletonList("application/json"))).
+                body(body).
+                build();
+    }
+
+    @Benchmark
+    public List<SkuSample> legacy() throws IOException {
+        Response<List<SkuSample>> response = objectMapper.readValue(response().body().asInputStream(), responseType);
+        return responseConvert.convert(response, DATA_TYPE);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<SkuSample> typed() throws IOException {
+        Type type = responseType;
+        Response<List<SkuSample>> response = (Response<List<SkuSample>>) decoder.decode(response(), type);
+        return responseConvert.convert(response, DATA_TYPE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResponseDecoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,54 @@
+package org.xiaowu.behappy.common.feign.codec;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试数据,字段与购物车加载的ShopSkuVo一致
+ * @author xiaowu
+ */
+public final class ShopSkuSamples {
+
+    private ShopSkuSamples() {
+    }
+
+    public static List<SkuSample> create(int size) {
+        List<SkuSample> skus = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SkuSample sku = new SkuSample();
+            sku.setSkuId(1000L + i);
+            sku.setPic("https://img.behappy.org/sku/" + i + ".jpg");
+            sku.setPrice(new BigDecimal("199.00"));
+            sku.setOriPrice(new BigDecimal("259.00"));
+            sku.setProperties("颜色:黑色;内存:8G");
+            sku.setProdName("商品" + i);
+            sku.setSkuName("商品" + i + " 黑色 8G");
+            sku.setStatus(1);
+            skus.add(sku);
+        }
+        return skus;
+    }
+
+    @Data
+    public static class SkuSample {
+
+        private Long skuId;
+
+        private String pic;
+
+        private BigDecimal price;
+
+        private BigDecimal oriPrice;
+
+        private String properties;
+
+        private String prodName;
+
+        private String skuName;
+
+        private Integer status;
+    }
+}
@@ -0,0 +1,108 @@
+package org.xiaowu.behappy.common.feign.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import feign.Request;
+import feign.RequestTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.common.feign.codec.ShopSkuSamples.SkuSample;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * feign编解码基准测试: json与smile分别编码、解码购物车sku列表(Response&lt;List&lt;ShopSkuVo&gt;&gt;)
+ * 启动时输出两种编码的报文大小
+ * 运行: 执行main方法,或 mvn test-compile 后使用jmh运行
+ * @author xiaowu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmileCodecBenchmark {
+
+    private static final TypeReference<Response<List<SkuSample>>> RESPONSE_TYPE = new TypeReference<Response<List<SkuSample>>>() {
+    };
+
+    @Param({"20", "200"})
+    private int size;
+
+    private ObjectMapper jsonMapper;
+
+    private ObjectMapper smileMapper;
+
+    private BeHappyResponseDecoder decoder;
+
+    private JavaType responseType;
+
+    private Response<List<SkuSample>> data;
+
+    private byte[] jsonBody;
+
+    private byte[] smileBody;
+
+    private Request request;
+
+    @Setup
+    public void setup() throws IOException {
+        jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+        smileMapper = Jackson2ObjectMapperBuilder.json().factory(new SmileFactory()).build();
+        decoder = new BeHappyResponseDecoder(jsonMapper, smileMapper, (response, type) -> {
+            throw new UnsupportedOperationException();
+        });
+        responseType = jsonMapper.getTypeFactory().constructType(RESPONSE_TYPE);
+        data = Response.ok(ShopSkuSamples.create(size));
+        jsonBody = jsonMapper.writeValueAsBytes(data);
+        smileBody = smileMapper.writeValueAsBytes(data);
+        System.out.printf("%n%d skus: json %d bytes, smile %d bytes%n", size, jsonBody.length, smileBody.length);
+        request = Request.create(Request.HttpMethod.POST, "http://behappy-product/feign/v1/sku/shop-cart",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8, new RequestTemplate());
+    }
+
+    private feign.Response response(String contentType, byte[] body) {
+        return feign.Response.builder().
+                status(200).
+                request(request).
+                headers(Collections.singletonMap("Content-Type", Collections.singletonList(contentType))).
+                body(body).
+                build();
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws IOException {
+        return jsonMapper.writeValueAsBytes(data);
+    }
+
+    @Benchmark
+    public byte[] smileEncode() throws IOException {
+        return smileMapper.writeValueAsBytes(data);
+    }
+
+    @Benchmark
+    public Object jsonDecode() throws IOException {
+        return decoder.decode(response(MediaType.APPLICATION_JSON_VALUE, jsonBody), responseType);
+    }
+
+    @Benchmark
+    public Object smileDecode() throws IOException {
+        return decoder.decode(response(BeHappySmileEncoder.SMILE_VALUE, smileBody), responseType);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SmileCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
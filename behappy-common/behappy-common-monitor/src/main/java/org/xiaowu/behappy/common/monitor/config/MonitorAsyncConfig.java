@@ -0,0 +1,14 @@
+package org.xiaowu.behappy.common.monitor.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+/**
+ * 开启@Async,指标在applicationTaskExecutor中异步上报,不占用请求线程
+ * 开启虚拟线程时applicationTaskExecutor为虚拟线程执行器
+ * @author xiaowu
+ */
+@EnableAsync
+@Configuration(proxyBeanMethods = false)
+public class MonitorAsyncConfig {
+}
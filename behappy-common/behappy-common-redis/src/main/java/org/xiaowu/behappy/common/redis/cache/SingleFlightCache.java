@@ -0,0 +1,103 @@
+package org.xiaowu.behappy.common.redis.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 缓存未命中时合并加载
+ * 代理 {@link Cache#get(Object, Callable)}(@Cacheable(sync = true)、{@code CacheManagerUtil.getCache(cacheName, key, loader)}),
+ * 其余操作直接委托
+ * @author xiaowu
+ */
+public class SingleFlightCache implements Cache {
+
+    private final Cache delegate;
+
+    private final SingleFlightLoader singleFlightLoader;
+
+    public SingleFlightCache(Cache delegate, SingleFlightLoader singleFlightLoader) {
+        this.delegate = delegate;
+        this.singleFlightLoader = singleFlightLoader;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper valueWrapper = delegate.get(key);
+        if (valueWrapper != null) {
+            return (T) valueWrapper.get();
+        }
+        String flightKey = getName() + key;
+        Callable<T> loader = () -> {
+            T value = valueLoader.call();
+            delegate.put(key, value);
+            return value;
+        };
+        try {
+            if (singleFlightLoader.isDistributed(getName())) {
+                return singleFlightLoader.loadDistributed(flightKey, () -> {
+                    ValueWrapper cached = delegate.get(key);
+                    return cached == null ? null : (T) cached.get();
+                }, loader);
+            }
+            return singleFlightLoader.load(flightKey, () -> {
+                // 等待上一次加载的线程可能刚刚写入
+                ValueWrapper cached = delegate.get(key);
+                return cached != null ? (T) cached.get() : loader.call();
+            });
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return delegate.invalidate();
+    }
+}
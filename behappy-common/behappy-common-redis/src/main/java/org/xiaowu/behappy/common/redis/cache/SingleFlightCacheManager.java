@@ -0,0 +1,44 @@
+package org.xiaowu.behappy.common.redis.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 为所有缓存加上合并加载
+ * @author xiaowu
+ */
+public class SingleFlightCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+
+    private final SingleFlightLoader singleFlightLoader;
+
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>(16);
+
+    public SingleFlightCacheManager(CacheManager delegate, SingleFlightLoader singleFlightLoader) {
+        this.delegate = delegate;
+        this.singleFlightLoader = singleFlightLoader;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, key -> new SingleFlightCache(target, singleFlightLoader));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
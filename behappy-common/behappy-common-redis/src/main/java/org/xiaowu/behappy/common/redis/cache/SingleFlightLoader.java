@@ -0,0 +1,97 @@
+package org.xiaowu.behappy.common.redis.cache;
+
+import lombok.SneakyThrows;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.xiaowu.behappy.common.redis.config.SingleFlightProperties;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并并发的缓存加载
+ * 同一个key同一时刻只有一个线程执行加载,其他线程等待并共享结果(包括异常),
+ * 分布式模式下加载前再获取redisson锁,拿到锁后重新检查缓存,保证集群内每个key每次过期只加载一次
+ * @author xiaowu
+ */
+public class SingleFlightLoader {
+
+    private static final String LOCK_PREFIX = "BEHAPPY-SINGLE-FLIGHT:";
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final ObjectProvider<RedissonClient> redissonClientProvider;
+
+    private final SingleFlightProperties singleFlightProperties;
+
+    public SingleFlightLoader(ObjectProvider<RedissonClient> redissonClientProvider, SingleFlightProperties singleFlightProperties) {
+        this.redissonClientProvider = redissonClientProvider;
+        this.singleFlightProperties = singleFlightProperties;
+    }
+
+    /**
+     * 本实例内合并加载
+     * @param key
+     * @param loader
+     * @return
+     */
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, Callable<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return (T) existing.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        try {
+            T value = loader.call();
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 集群内合并加载
+     * 本实例内先合并,再通过分布式锁与其他实例合并,拿到锁后先执行lookup,命中则不再加载
+     * @param key
+     * @param lookup 重新检查缓存,未命中返回null
+     * @param loader
+     * @return
+     */
+    public <T> T loadDistributed(String key, Callable<T> lookup, Callable<T> loader) {
+        return load(key, () -> {
+            RLock lock = redissonClientProvider.getObject().getLock(LOCK_PREFIX + key);
+            boolean locked = lock.tryLock(singleFlightProperties.getLockWaitMillis(), TimeUnit.MILLISECONDS);
+            try {
+                if (locked) {
+                    T cached = lookup.call();
+                    if (cached != null) {
+                        return cached;
+                    }
+                }
+                return loader.call();
+            } finally {
+                if (locked) {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    public boolean isDistributed(String cacheName) {
+        return singleFlightProperties.getDistributedCacheNames().contains(cacheName);
+    }
+}
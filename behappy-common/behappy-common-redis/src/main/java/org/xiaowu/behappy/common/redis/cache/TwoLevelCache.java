@@ -0,0 +1,147 @@
+package org.xiaowu.behappy.common.redis.cache;
+
+import io.micrometer.core.instrument.Counter;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 二级缓存
+ * 一级为本实例的caffeine,二级为redis;读取先查本地,未命中查redis后回填本地,
+ * 写入和删除同时修改两级,并通过{@link TwoLevelCacheManager}广播,其他实例删除本地缓存
+ * @author xiaowu
+ */
+public class TwoLevelCache implements Cache {
+
+    private final Cache redisCache;
+
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> localCache;
+
+    private final TwoLevelCacheManager twoLevelCacheManager;
+
+    private final Counter redisHitCounter;
+
+    private final Counter redisMissCounter;
+
+    public TwoLevelCache(Cache redisCache, com.github.benmanes.caffeine.cache.Cache<String, Object> localCache,
+                         TwoLevelCacheManager twoLevelCacheManager, Counter redisHitCounter, Counter redisMissCounter) {
+        this.redisCache = redisCache;
+        this.localCache = localCache;
+        this.twoLevelCacheManager = twoLevelCacheManager;
+        this.redisHitCounter = redisHitCounter;
+        this.redisMissCounter = redisMissCounter;
+    }
+
+    @Override
+    public String getName() {
+        return redisCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = String.valueOf(key);
+        Object value = localCache.getIfPresent(localKey);
+        if (value != null) {
+            return new SimpleValueWrapper(value == NullValue.INSTANCE ? null : value);
+        }
+        ValueWrapper valueWrapper = redisCache.get(key);
+        if (valueWrapper == null) {
+            redisMissCounter.increment();
+            return null;
+        }
+        redisHitCounter.increment();
+        localCache.put(localKey, valueWrapper.get() == null ? NullValue.INSTANCE : valueWrapper.get());
+        return valueWrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper valueWrapper = get(key);
+        if (valueWrapper == null) {
+            return null;
+        }
+        Object value = valueWrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    /**
+     * 并发未命中的合并由外层{@link SingleFlightCache}负责
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper valueWrapper = get(key);
+        if (valueWrapper != null) {
+            return (T) valueWrapper.get();
+        }
+        try {
+            T value = valueLoader.call();
+            put(key, value);
+            return value;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        localCache.put(String.valueOf(key), value == null ? NullValue.INSTANCE : value);
+        twoLevelCacheManager.publishEvict(getName(), String.valueOf(key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = redisCache.putIfAbsent(key, value);
+        if (existing == null) {
+            localCache.put(String.valueOf(key), value == null ? NullValue.INSTANCE : value);
+            twoLevelCacheManager.publishEvict(getName(), String.valueOf(key));
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        localCache.invalidate(String.valueOf(key));
+        twoLevelCacheManager.publishEvict(getName(), String.valueOf(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = redisCache.evictIfPresent(key);
+        localCache.invalidate(String.valueOf(key));
+        twoLevelCacheManager.publishEvict(getName(), String.valueOf(key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.invalidateAll();
+        twoLevelCacheManager.publishEvict(getName(), null);
+    }
+
+    /**
+     * 收到其他实例的广播,只删除本地缓存
+     * @param key 为null时清空
+     */
+    void evictLocal(String key) {
+        if (key == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(key);
+        }
+    }
+}
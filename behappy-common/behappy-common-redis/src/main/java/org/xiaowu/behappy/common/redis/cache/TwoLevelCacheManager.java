@@ -0,0 +1,146 @@
+package org.xiaowu.behappy.common.redis.cache;
+
+import cn.hutool.core.util.IdUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.xiaowu.behappy.common.redis.config.TwoLevelCacheProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 二级缓存管理
+ * 配置了本地缓存的缓存名称返回{@link TwoLevelCache},其余直接返回redis缓存;
+ * 写入、删除通过redis pub/sub广播,所有实例删除对应的本地缓存
+ * 指标: 本地缓存 cache.gets 等(caffeine统计), redis缓存 cache.l2.gets{result=hit|miss}
+ * @author xiaowu
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener {
+
+    private static final String INVALIDATE_CHANNEL = "BEHAPPY-CACHE:INVALIDATE";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 本实例标识,忽略自己发出的广播
+     */
+    private final String node = IdUtil.fastSimpleUUID();
+
+    private final CacheManager redisCacheManager;
+
+    private final TwoLevelCacheProperties twoLevelCacheProperties;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>(16);
+
+    public TwoLevelCacheManager(CacheManager redisCacheManager, TwoLevelCacheProperties twoLevelCacheProperties,
+                                StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer redisMessageListenerContainer,
+                                MeterRegistry meterRegistry) {
+        this.redisCacheManager = redisCacheManager;
+        this.twoLevelCacheProperties = twoLevelCacheProperties;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache redisCache = redisCacheManager.getCache(name);
+        if (redisCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, key -> createCache(redisCache));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    private Cache createCache(Cache redisCache) {
+        String name = redisCache.getName();
+        TwoLevelCacheProperties.LocalCache spec = twoLevelCacheProperties.getCaches().get(name);
+        if (spec == null || spec.getMaximumSize() <= 0) {
+            return redisCache;
+        }
+        com.github.benmanes.caffeine.cache.Cache<String, Object> localCache = Caffeine.newBuilder().
+                maximumSize(spec.getMaximumSize()).
+                expireAfterWrite(spec.getExpireAfterWrite()).
+                recordStats().
+                build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, name);
+        Counter hitCounter = Counter.builder("cache.l2.gets").tag("cache", name).tag("result", "hit").register(meterRegistry);
+        Counter missCounter = Counter.builder("cache.l2.gets").tag("cache", name).tag("result", "miss").register(meterRegistry);
+        log.info("TwoLevelCacheManager - 缓存 {} 开启本地缓存, maximumSize: {}, expireAfterWrite: {}", name, spec.getMaximumSize(), spec.getExpireAfterWrite());
+        return new TwoLevelCache(redisCache, localCache, this, hitCounter, missCounter);
+    }
+
+    /**
+     * 广播删除本地缓存
+     * @param cacheName
+     * @param key 为null时清空
+     */
+    void publishEvict(String cacheName, String key) {
+        try {
+            CacheInvalidation cacheInvalidation = new CacheInvalidation();
+            cacheInvalidation.setNode(node);
+            cacheInvalidation.setCacheName(cacheName);
+            cacheInvalidation.setKey(key);
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, OBJECT_MAPPER.writeValueAsString(cacheInvalidation));
+        } catch (Exception e) {
+            // 广播失败时其他实例的本地缓存依赖过期时间
+            log.warn("TwoLevelCacheManager - 广播失败, cache: {}, key: {}, {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            CacheInvalidation cacheInvalidation = OBJECT_MAPPER.readValue(new String(message.getBody(), StandardCharsets.UTF_8), CacheInvalidation.class);
+            if (node.equals(cacheInvalidation.getNode())) {
+                return;
+            }
+            Cache cache = caches.get(cacheInvalidation.getCacheName());
+            if (cache instanceof TwoLevelCache) {
+                ((TwoLevelCache) cache).evictLocal(cacheInvalidation.getKey());
+            }
+        } catch (Exception e) {
+            log.warn("TwoLevelCacheManager - onMessage: {}", e.getMessage());
+        }
+    }
+
+    @Data
+    public static class CacheInvalidation {
+
+        private String node;
+
+        private String cacheName;
+
+        /**
+         * 为null时清空
+         */
+        private String key;
+    }
+}
@@ -0,0 +1,31 @@
+package org.xiaowu.behappy.common.redis.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskHandler;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskPoller;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskService;
+
+import java.util.stream.Collectors;
+
+/**
+ * redis延迟任务配置
+ * delay-task.enabled=true 时启动轮询,处理所有注册的{@link DelayTaskHandler}
+ * @author xiaowu
+ */
+@EnableConfigurationProperties(DelayTaskProperties.class)
+public class DelayTaskConfig {
+
+    @Bean
+    public DelayTaskService delayTaskService(StringRedisTemplate stringRedisTemplate, DelayTaskProperties delayTaskProperties) {
+        return new DelayTaskService(stringRedisTemplate, delayTaskProperties);
+    }
+
+    @Bean
+    public DelayTaskPoller delayTaskPoller(DelayTaskService delayTaskService, DelayTaskProperties delayTaskProperties,
+                                           ObjectProvider<DelayTaskHandler> delayTaskHandlers) {
+        return new DelayTaskPoller(delayTaskService, delayTaskProperties, delayTaskHandlers.orderedStream().collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,59 @@
+package org.xiaowu.behappy.common.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * redis延迟任务配置
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "delay-task")
+public class DelayTaskProperties {
+
+    /**
+     * 是否开启redis延迟任务,默认关闭(使用rabbitmq死信队列)
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每个topic的分片数量,每个分片一个zset
+     * 已有任务时修改不会立即生效,旧分片的任务全部处理完后重启才切换
+     */
+    private int shards = 16;
+
+    /**
+     * 时间轮刻度,单位：毫秒
+     */
+    private long tickMillis = 100;
+
+    /**
+     * 每层时间轮的槽数
+     */
+    private int wheelSize = 64;
+
+    /**
+     * 每个分片每次最多领取的任务数
+     */
+    private int claimBatchSize = 100;
+
+    /**
+     * 领取后未确认的任务在租期到期后重新投递,单位：毫秒
+     */
+    private long leaseMillis = 30000;
+
+    /**
+     * 重新读取分片索引的间隔(感知其他实例新增的任务),单位：毫秒
+     */
+    private long rescanMillis = 1000;
+
+    /**
+     * 逐个扫描所有分片并修复索引的间隔,兜底索引与分片不一致的情况,单位：毫秒
+     */
+    private long fullRescanMillis = 60000;
+
+    /**
+     * 执行任务的线程数
+     */
+    private int workerThreads = 4;
+}
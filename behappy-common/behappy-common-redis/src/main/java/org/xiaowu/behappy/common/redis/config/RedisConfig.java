@@ -8,9 +8,15 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
 import org.redisson.spring.starter.RedissonAutoConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.interceptor.KeyGenerator;
@@ -22,9 +28,13 @@ import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
+import org.xiaowu.behappy.common.redis.cache.SingleFlightCacheManager;
+import org.xiaowu.behappy.common.redis.cache.SingleFlightLoader;
+import org.xiaowu.behappy.common.redis.cache.TwoLevelCacheManager;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -38,6 +48,7 @@ import static org.xiaowu.behappy.common.redis.constant.CacheConstant.*;
  */
 @Slf4j
 @EnableCaching
+@EnableConfigurationProperties({SingleFlightProperties.class, TwoLevelCacheProperties.class})
 @AutoConfigureBefore({RedissonAutoConfiguration.class})
 public class RedisConfig {
 
@@ -105,9 +116,21 @@ public class RedisConfig {
         return redisTemplate;
     }
 
+    @Bean
+    public SingleFlightLoader singleFlightLoader(ObjectProvider<RedissonClient> redissonClientProvider, SingleFlightProperties singleFlightProperties) {
+        return new SingleFlightLoader(redissonClientProvider, singleFlightProperties);
+    }
+
+    /**
+     * 缓存未命中时合并加载,见{@link SingleFlightCacheManager}
+     */
     @Primary
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, RedisSerializer<String> redisKeySerializer, RedisSerializer<Object> redisValueSerializer) {
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, RedisSerializer<String> redisKeySerializer,
+                                     RedisSerializer<Object> redisValueSerializer, SingleFlightLoader singleFlightLoader,
+                                     TwoLevelCacheProperties twoLevelCacheProperties, StringRedisTemplate stringRedisTemplate,
+                                     ObjectProvider<RedisMessageListenerContainer> redisMessageListenerContainer,
+                                     ObjectProvider<MeterRegistry> meterRegistry) {
         log.info("Init Redis CacheManager");
         RedisCacheWriter redisCacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory);
         RedisCacheConfiguration defaultCacheConfig = RedisCacheConfiguration.defaultCacheConfig().computePrefixWith(
@@ -120,9 +143,28 @@ public class RedisConfig {
         initialCacheConfigurations.put(PRODUCT_CATEGORY_CACHE, defaultCacheConfig.entryTtl(PRODUCT_CATEGORY_DURATION));
         initialCacheConfigurations.put(SMS_CODE_CACHE, defaultCacheConfig.entryTtl(SMS_CODE_DURATION));
         initialCacheConfigurations.put(USER_DETAILS_CACHE, defaultCacheConfig.entryTtl(USER_DETAILS_DURATION));
-        initialCacheConfigurations.put(BASKET_CART_CACHE, defaultCacheConfig.entryTtl(BASKET_CART_DURATION));
         initialCacheConfigurations.put(CONFIRM_ORDER_CACHE, defaultCacheConfig.entryTtl(CONFIRM_ORDER_DURATION));
-        return new RedisCacheManager(redisCacheWriter, defaultCacheConfig, initialCacheConfigurations);
+        initialCacheConfigurations.put(ORDER_SUBMIT_FAILURE_CACHE, defaultCacheConfig.entryTtl(ORDER_SUBMIT_FAILURE_DURATION));
+        RedisCacheManager redisCacheManager = new RedisCacheManager(redisCacheWriter, defaultCacheConfig, initialCacheConfigurations);
+        redisCacheManager.afterPropertiesSet();
+        if (!twoLevelCacheProperties.isEnabled()) {
+            return new SingleFlightCacheManager(redisCacheManager, singleFlightLoader);
+        }
+        log.info("Init TwoLevel CacheManager");
+        TwoLevelCacheManager twoLevelCacheManager = new TwoLevelCacheManager(redisCacheManager, twoLevelCacheProperties, stringRedisTemplate,
+                redisMessageListenerContainer.getObject(), meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+        return new SingleFlightCacheManager(twoLevelCacheManager, singleFlightLoader);
+    }
+
+    /**
+     * 二级缓存失效广播
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "two-level-cache", name = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer redisMessageListenerContainer = new RedisMessageListenerContainer();
+        redisMessageListenerContainer.setConnectionFactory(redisConnectionFactory);
+        return redisMessageListenerContainer;
     }
 
     @Bean
@@ -0,0 +1,26 @@
+package org.xiaowu.behappy.common.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 缓存加载合并配置
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "single-flight")
+public class SingleFlightProperties {
+
+    /**
+     * 使用分布式锁在集群内合并加载的缓存名称,其余缓存只在本实例内合并
+     */
+    private Set<String> distributedCacheNames = new HashSet<>();
+
+    /**
+     * 等待分布式锁的最长时间,超时后直接加载,单位：毫秒
+     */
+    private long lockWaitMillis = 3000;
+}
@@ -0,0 +1,58 @@
+package org.xiaowu.behappy.common.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.xiaowu.behappy.common.redis.constant.CacheConstant.PRODUCT_CATEGORY_CACHE;
+
+/**
+ * 二级缓存(caffeine + redis)配置
+ * 只有配置了本地缓存的缓存名称才会启用一级缓存,本地缓存返回的是共享对象,只适合只读数据
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "two-level-cache")
+public class TwoLevelCacheProperties {
+
+    /**
+     * 是否开启二级缓存,默认关闭
+     */
+    private boolean enabled = false;
+
+    /**
+     * 缓存名称 -> 本地缓存配置,yml中缓存名称包含冒号,需要写成 "[PRODUCT:CATEGORY:]"
+     */
+    private Map<String, LocalCache> caches = defaultCaches();
+
+    private static Map<String, LocalCache> defaultCaches() {
+        Map<String, LocalCache> caches = new HashMap<>(4);
+        caches.put(PRODUCT_CATEGORY_CACHE, new LocalCache(1000, Duration.ofMinutes(5)));
+        return caches;
+    }
+
+    @Data
+    public static class LocalCache {
+
+        /**
+         * 最大条数,小于等于0时不启用本地缓存
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 写入后过期时间,兜底丢失的失效广播
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(1);
+
+        public LocalCache() {
+        }
+
+        public LocalCache(long maximumSize, Duration expireAfterWrite) {
+            this.maximumSize = maximumSize;
+            this.expireAfterWrite = expireAfterWrite;
+        }
+    }
+}
@@ -15,10 +15,9 @@ public interface CacheConstant {
     Duration PRODUCT_CATEGORY_DURATION = Duration.of(1, ChronoUnit.HOURS);
 
     /**
-     * 购物车
+     * 购物车(用户hash,不走springcache)
      * 1个月
      */
-    String BASKET_CART_CACHE = "BASKET:CART:";
     Duration BASKET_CART_DURATION = Duration.of(30, ChronoUnit.DAYS);
 
     /**
@@ -39,4 +38,11 @@ public interface CacheConstant {
      */
     String CONFIRM_ORDER_CACHE = "CONFIRM:ORDER:TOKEN:";
     Duration CONFIRM_ORDER_DURATION = Duration.of(30, ChronoUnit.MINUTES);
+
+    /**
+     * 异步下单失败的原因,供客户端轮询
+     * 30min
+     */
+    String ORDER_SUBMIT_FAILURE_CACHE = "ORDER:SUBMIT:FAILURE:";
+    Duration ORDER_SUBMIT_FAILURE_DURATION = Duration.of(30, ChronoUnit.MINUTES);
 }
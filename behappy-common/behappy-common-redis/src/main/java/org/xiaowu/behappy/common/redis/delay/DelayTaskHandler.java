@@ -0,0 +1,22 @@
+package org.xiaowu.behappy.common.redis.delay;
+
+import java.util.List;
+
+/**
+ * 延迟任务处理器,注册为spring bean即可
+ * @author xiaowu
+ */
+public interface DelayTaskHandler {
+
+    /**
+     * 处理的任务主题
+     * @return
+     */
+    String topic();
+
+    /**
+     * 批量处理到期的任务,正常返回即确认,抛出异常则租期到期后重新投递
+     * @param payloads 同一个分片一次领取的任务
+     */
+    void handle(List<String> payloads);
+}
@@ -0,0 +1,255 @@
+package org.xiaowu.behappy.common.redis.delay;
+
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.xiaowu.behappy.common.redis.config.DelayTaskProperties;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 延迟任务轮询
+ * 每个分片只在时间轮上登记最早的到期时间,到期后批量领取、处理、确认,再登记下一个到期时间,
+ * 没有到期任务的分片不会访问redis;定时读取每个topic的分片索引,感知其他实例新增的任务和宕机实例未确认的任务,
+ * 低频逐个扫描所有分片修复索引
+ * @author xiaowu
+ */
+@Slf4j
+public class DelayTaskPoller implements SmartLifecycle {
+
+    private final DelayTaskService delayTaskService;
+
+    private final DelayTaskProperties delayTaskProperties;
+
+    private final Map<String, DelayTaskHandler> handlers = new HashMap<>();
+
+    /**
+     * 分片 -> 已登记的唤醒时间
+     */
+    private final Map<Shard, Long> wakeups = new ConcurrentHashMap<>();
+
+    /**
+     * 正在处理的分片,同一个分片同一时刻只有一个线程处理
+     */
+    private final Set<Shard> draining = ConcurrentHashMap.newKeySet();
+
+    private TimingWheel<Wakeup> timingWheel;
+
+    private ExecutorService workers;
+
+    private ScheduledExecutorService ticker;
+
+    private volatile boolean running;
+
+    private long lastRescan;
+
+    private long lastFullRescan;
+
+    public DelayTaskPoller(DelayTaskService delayTaskService, DelayTaskProperties delayTaskProperties, List<DelayTaskHandler> delayTaskHandlers) {
+        this.delayTaskService = delayTaskService;
+        this.delayTaskProperties = delayTaskProperties;
+        for (DelayTaskHandler delayTaskHandler : delayTaskHandlers) {
+            handlers.put(delayTaskHandler.topic(), delayTaskHandler);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!delayTaskProperties.isEnabled() || handlers.isEmpty()) {
+            return;
+        }
+        log.info("DelayTaskPoller - start, topics: {}", handlers.keySet());
+        timingWheel = new TimingWheel<>(delayTaskProperties.getTickMillis(), delayTaskProperties.getWheelSize(), System.currentTimeMillis());
+        workers = ExecutorBuilder.create().
+                setCorePoolSize(delayTaskProperties.getWorkerThreads()).
+                setMaxPoolSize(delayTaskProperties.getWorkerThreads()).
+                setWorkQueue(new LinkedBlockingQueue<>()).
+                setThreadFactory(ThreadFactoryBuilder.create().setNamePrefix("delay-task-worker-").build()).
+                build();
+        ticker = Executors.newSingleThreadScheduledExecutor(ThreadFactoryBuilder.create().setNamePrefix("delay-task-ticker-").build());
+        delayTaskService.setDelayTaskListener((topic, shard, deadline) -> {
+            if (handlers.containsKey(topic)) {
+                wake(new Shard(topic, shard), deadline);
+            }
+        });
+        running = true;
+        ticker.scheduleWithFixedDelay(this::tick, 0, delayTaskProperties.getTickMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastFullRescan >= delayTaskProperties.getFullRescanMillis()) {
+                lastFullRescan = now;
+                lastRescan = now;
+                fullRescan();
+            } else if (now - lastRescan >= delayTaskProperties.getRescanMillis()) {
+                lastRescan = now;
+                rescan();
+            }
+            List<Wakeup> expired;
+            synchronized (this) {
+                expired = timingWheel.poll(now);
+            }
+            expired.forEach(this::fire);
+        } catch (Exception e) {
+            log.error("DelayTaskPoller - tick: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 每个topic只读一次分片索引
+     */
+    private void rescan() {
+        for (String topic : handlers.keySet()) {
+            delayTaskService.activeShards(topic).forEach((index, deadline) -> wake(new Shard(topic, index), deadline));
+        }
+    }
+
+    /**
+     * 逐个扫描所有分片,同时修复索引
+     */
+    private void fullRescan() {
+        for (String topic : handlers.keySet()) {
+            for (int i = 0; i < delayTaskService.shards(topic); i++) {
+                Long deadline = delayTaskService.refreshIndex(topic, i);
+                if (deadline != null) {
+                    wake(new Shard(topic, i), deadline);
+                }
+            }
+        }
+    }
+
+    /**
+     * 登记分片的唤醒时间,已登记更早的时间时忽略
+     */
+    private void wake(Shard shard, long deadline) {
+        boolean due;
+        synchronized (this) {
+            Long current = wakeups.get(shard);
+            if (current != null && current <= deadline) {
+                return;
+            }
+            wakeups.put(shard, deadline);
+            due = !timingWheel.add(new Wakeup(shard, deadline), deadline);
+        }
+        if (due) {
+            fire(new Wakeup(shard, deadline));
+        }
+    }
+
+    private void fire(Wakeup wakeup) {
+        // 已被更早的唤醒处理过
+        if (!wakeups.remove(wakeup.shard, wakeup.deadline)) {
+            return;
+        }
+        if (running) {
+            workers.execute(() -> drain(wakeup.shard));
+        }
+    }
+
+    private void drain(Shard shard) {
+        if (!draining.add(shard)) {
+            return;
+        }
+        DelayTaskHandler delayTaskHandler = handlers.get(shard.topic);
+        boolean failed = false;
+        try {
+            while (running) {
+                // 时间轮精度为一个刻度,领取时包含当前刻度内到期的任务
+                List<String> payloads = delayTaskService.claim(shard.topic, shard.index,
+                        System.currentTimeMillis() + delayTaskProperties.getTickMillis());
+                if (payloads.isEmpty()) {
+                    break;
+                }
+                try {
+                    delayTaskHandler.handle(payloads);
+                    delayTaskService.ack(shard.topic, shard.index, payloads);
+                } catch (Exception e) {
+                    // 不确认,租期到期后重新投递
+                    log.error("DelayTaskPoller - handle {}: {}", shard, e.getMessage());
+                    failed = true;
+                    break;
+                }
+                if (payloads.size() < delayTaskProperties.getClaimBatchSize()) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("DelayTaskPoller - drain {}: {}", shard, e.getMessage());
+            failed = true;
+        } finally {
+            draining.remove(shard);
+        }
+        Long deadline = delayTaskService.refreshIndex(shard.topic, shard.index);
+        if (deadline != null) {
+            // 处理失败时推迟到下次扫描,避免空转重试
+            long earliest = failed ? System.currentTimeMillis() + delayTaskProperties.getRescanMillis() : 0;
+            wake(shard, Math.max(deadline, earliest));
+        }
+    }
+
+    private static class Shard {
+
+        private final String topic;
+
+        private final int index;
+
+        private Shard(String topic, int index) {
+            this.topic = topic;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Shard)) {
+                return false;
+            }
+            Shard shard = (Shard) o;
+            return index == shard.index && topic.equals(shard.topic);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(topic, index);
+        }
+
+        @Override
+        public String toString() {
+            return topic + ":" + index;
+        }
+    }
+
+    private static class Wakeup {
+
+        private final Shard shard;
+
+        private final long deadline;
+
+        private Wakeup(Shard shard, long deadline) {
+            this.shard = shard;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.xiaowu.behappy.common.redis.delay;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.xiaowu.behappy.common.redis.config.DelayTaskProperties;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * redis延迟任务
+ * 每个topic按任务内容hash分成多个分片,每个分片一个zset(score为到期时间),
+ * 到期任务由lua脚本批量移动到处理中zset(score为租期到期时间),处理完成后确认删除,
+ * 分片和处理中zset使用相同的hash tag,集群模式下在同一个slot;
+ * 每个topic另有一个分片索引zset记录非空分片的最早到期时间,轮询时只读索引,不再逐个扫描分片
+ * 分片数量在topic第一次使用时记录到redis,之后修改配置只在旧分片全部处理完后生效,
+ * 否则沿用记录的数量,避免已有任务按新的数量hash后找不到(取消失败)
+ * @author xiaowu
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DelayTaskService {
+
+    private static final String KEY_PREFIX = "BEHAPPY-DELAY:";
+
+    private static final String PROCESSING_SUFFIX = ":PROCESSING";
+
+    private static final String INDEX_PREFIX = KEY_PREFIX + "INDEX:";
+
+    private static final String SHARDS_PREFIX = KEY_PREFIX + "SHARDS:";
+
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = script("lua/delay_task_claim.lua", List.class);
+
+    private static final DefaultRedisScript<Long> INDEX_SCRIPT = script("lua/delay_task_index.lua", Long.class);
+
+    private static final DefaultRedisScript<Long> UNINDEX_SCRIPT = script("lua/delay_task_unindex.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final DelayTaskProperties delayTaskProperties;
+
+    /**
+     * topic -> 生效的分片数量
+     */
+    private final Map<String, Integer> topicShards = new ConcurrentHashMap<>();
+
+    /**
+     * 本实例新增任务时通知时间轮
+     */
+    @Setter(AccessLevel.PACKAGE)
+    private DelayTaskListener delayTaskListener;
+
+    public boolean isEnabled() {
+        return delayTaskProperties.isEnabled();
+    }
+
+    /**
+     * 添加延迟任务,相同topic相同内容的任务只保留一个(以最后一次的到期时间为准)
+     * @param topic
+     * @param payload
+     * @param delay
+     */
+    public void schedule(String topic, String payload, Duration delay) {
+        schedule(topic, payload, System.currentTimeMillis() + delay.toMillis());
+    }
+
+    public void schedule(String topic, String payload, long deadline) {
+        int shard = shard(topic, payload);
+        stringRedisTemplate.opsForZSet().add(queueKey(topic, shard), payload, deadline);
+        stringRedisTemplate.execute(INDEX_SCRIPT, Collections.singletonList(indexKey(topic)),
+                String.valueOf(shard), String.valueOf(deadline), String.valueOf(System.currentTimeMillis()));
+        if (delayTaskListener != null) {
+            delayTaskListener.onSchedule(topic, shard, deadline);
+        }
+    }
+
+    /**
+     * 取消还未到期的任务
+     * @param topic
+     * @param payload
+     * @return 是否取消成功
+     */
+    public boolean cancel(String topic, String payload) {
+        Long removed = stringRedisTemplate.opsForZSet().remove(queueKey(topic, shard(topic, payload)), payload);
+        return removed != null && removed > 0;
+    }
+
+    /**
+     * 领取分片中到期的任务
+     * @param topic
+     * @param shard
+     * @param horizon 领取到期时间不超过该时间的任务
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    List<String> claim(String topic, int shard, long horizon) {
+        long leaseDeadline = System.currentTimeMillis() + delayTaskProperties.getLeaseMillis();
+        List<String> items = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                Arrays.asList(queueKey(topic, shard), processingKey(topic, shard)),
+                String.valueOf(horizon), String.valueOf(delayTaskProperties.getClaimBatchSize()), String.valueOf(leaseDeadline));
+        return items == null ? Collections.emptyList() : items;
+    }
+
+    void ack(String topic, int shard, List<String> payloads) {
+        stringRedisTemplate.opsForZSet().remove(processingKey(topic, shard), payloads.toArray());
+    }
+
+    /**
+     * 分片中最早需要处理的时间(到期任务或租期到期的任务)
+     * @param topic
+     * @param shard
+     * @return 分片为空时返回null
+     */
+    Long nextDeadline(String topic, int shard) {
+        Long queueDeadline = firstScore(queueKey(topic, shard));
+        Long processingDeadline = firstScore(processingKey(topic, shard));
+        if (queueDeadline == null) {
+            return processingDeadline;
+        }
+        if (processingDeadline == null) {
+            return queueDeadline;
+        }
+        return Math.min(queueDeadline, processingDeadline);
+    }
+
+    /**
+     * 索引中登记的非空分片
+     * @param topic
+     * @return 分片号 -> 最早到期时间
+     */
+    Map<Integer, Long> activeShards(String topic) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet().rangeWithScores(indexKey(topic), 0, -1);
+        if (tuples == null || tuples.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Long> shards = new HashMap<>(tuples.size());
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (tuple.getValue() != null && tuple.getScore() != null) {
+                shards.put(Integer.valueOf(tuple.getValue()), tuple.getScore().longValue());
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * 按分片当前的最早到期时间更新索引,分片为空时移除
+     * @param topic
+     * @param shard
+     * @return 分片中最早需要处理的时间,分片为空时返回null
+     */
+    Long refreshIndex(String topic, int shard) {
+        Long deadline = nextDeadline(topic, shard);
+        long now = System.currentTimeMillis();
+        if (deadline == null) {
+            stringRedisTemplate.execute(UNINDEX_SCRIPT, Collections.singletonList(indexKey(topic)),
+                    String.valueOf(shard), String.valueOf(now));
+        } else {
+            stringRedisTemplate.execute(INDEX_SCRIPT, Collections.singletonList(indexKey(topic)),
+                    String.valueOf(shard), String.valueOf(deadline), String.valueOf(now));
+        }
+        return deadline;
+    }
+
+    /**
+     * topic生效的分片数量
+     * 第一次使用时记录配置的数量;记录的数量与配置不同时,旧分片全部为空才切换到新的数量
+     * @param topic
+     * @return
+     */
+    int shards(String topic) {
+        return topicShards.computeIfAbsent(topic, this::resolveShards);
+    }
+
+    private int resolveShards(String topic) {
+        int configured = delayTaskProperties.getShards();
+        String shardsKey = SHARDS_PREFIX + topic;
+        if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(shardsKey, String.valueOf(configured)))) {
+            return configured;
+        }
+        String value = stringRedisTemplate.opsForValue().get(shardsKey);
+        int stored = value == null ? configured : Integer.parseInt(value);
+        if (stored == configured) {
+            return configured;
+        }
+        for (int i = 0; i < stored; i++) {
+            if (nextDeadline(topic, i) != null) {
+                log.warn("DelayTaskService - topic {} 分片数量由 {} 修改为 {}, 旧分片还有未处理的任务, 继续使用 {}",
+                        topic, stored, configured, stored);
+                return stored;
+            }
+        }
+        log.info("DelayTaskService - topic {} 分片数量由 {} 修改为 {}", topic, stored, configured);
+        stringRedisTemplate.opsForValue().set(shardsKey, String.valueOf(configured));
+        return configured;
+    }
+
+    private Long firstScore(String key) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet().rangeWithScores(key, 0, 0);
+        if (tuples == null || tuples.isEmpty()) {
+            return null;
+        }
+        Double score = tuples.iterator().next().getScore();
+        return score == null ? null : score.longValue();
+    }
+
+    private int shard(String topic, String payload) {
+        return Math.floorMod(payload.hashCode(), shards(topic));
+    }
+
+    private static <T> DefaultRedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        redisScript.setResultType(resultType);
+        return redisScript;
+    }
+
+    private static String queueKey(String topic, int shard) {
+        return KEY_PREFIX + "{" + topic + ":" + shard + "}";
+    }
+
+    private static String indexKey(String topic) {
+        return INDEX_PREFIX + "{" + topic + "}";
+    }
+
+    private static String processingKey(String topic, int shard) {
+        return queueKey(topic, shard) + PROCESSING_SUFFIX;
+    }
+
+    /**
+     * 新增任务的回调
+     */
+    interface DelayTaskListener {
+
+        void onSchedule(String topic, int shard, long deadline);
+    }
+}
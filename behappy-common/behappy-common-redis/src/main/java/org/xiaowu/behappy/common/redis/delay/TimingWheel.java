@@ -0,0 +1,130 @@
+package org.xiaowu.behappy.common.redis.delay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 分层时间轮(非线程安全,由调用方加锁)
+ * 每层有wheelSize个槽,上一层的刻度等于下一层一圈的时长,超出当前层范围的元素放入上一层,
+ * 上一层的槽到期时元素重新放入下层,直到落入最底层的槽
+ * 只有非空的槽会进入优先队列,推进时间时只处理到期的槽,空转没有开销
+ * @author xiaowu
+ */
+class TimingWheel<T> {
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    private final long interval;
+
+    private final List<Bucket<T>> buckets;
+
+    /**
+     * 所有层共用,按到期时间排序的非空槽
+     */
+    private final PriorityQueue<Bucket<T>> queue;
+
+    private long currentTime;
+
+    private TimingWheel<T> overflowWheel;
+
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this(tickMillis, wheelSize, startMillis, new PriorityQueue<>());
+    }
+
+    private TimingWheel(long tickMillis, int wheelSize, long startMillis, PriorityQueue<Bucket<T>> queue) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.interval = tickMillis * wheelSize;
+        this.queue = queue;
+        this.currentTime = startMillis - (startMillis % tickMillis);
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new Bucket<>());
+        }
+    }
+
+    /**
+     * 添加元素
+     * @param item
+     * @param deadline 到期时间
+     * @return false表示已经到期(在当前刻度内),需要立即执行
+     */
+    boolean add(T item, long deadline) {
+        if (deadline < currentTime + tickMillis) {
+            return false;
+        }
+        if (deadline < currentTime + interval) {
+            long virtualId = deadline / tickMillis;
+            Bucket<T> bucket = buckets.get((int) (virtualId % wheelSize));
+            bucket.entries.add(new Entry<>(item, deadline));
+            if (bucket.expiration != virtualId * tickMillis) {
+                bucket.expiration = virtualId * tickMillis;
+                queue.offer(bucket);
+            }
+            return true;
+        }
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime, queue);
+        }
+        return overflowWheel.add(item, deadline);
+    }
+
+    /**
+     * 推进到now,返回到期的元素
+     * @param now
+     * @return
+     */
+    List<T> poll(long now) {
+        List<T> expired = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().expiration <= now) {
+            Bucket<T> bucket = queue.poll();
+            advanceClock(bucket.expiration);
+            List<Entry<T>> entries = bucket.entries;
+            bucket.entries = new ArrayList<>();
+            bucket.expiration = -1;
+            for (Entry<T> entry : entries) {
+                if (!add(entry.item, entry.deadline)) {
+                    expired.add(entry.item);
+                }
+            }
+        }
+        advanceClock(now);
+        return expired;
+    }
+
+    private void advanceClock(long timeMillis) {
+        if (timeMillis >= currentTime + tickMillis) {
+            currentTime = timeMillis - (timeMillis % tickMillis);
+            if (overflowWheel != null) {
+                overflowWheel.advanceClock(currentTime);
+            }
+        }
+    }
+
+    private static class Entry<T> {
+
+        private final T item;
+
+        private final long deadline;
+
+        private Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+
+    private static class Bucket<T> implements Comparable<Bucket<T>> {
+
+        private List<Entry<T>> entries = new ArrayList<>();
+
+        private long expiration = -1;
+
+        @Override
+        public int compareTo(Bucket<T> o) {
+            return Long.compare(expiration, o.expiration);
+        }
+    }
+}
@@ -5,14 +5,30 @@ import lombok.experimental.UtilityClass;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 
+import java.util.concurrent.Callable;
+
 /**
  * @author xiaowu
  */
 @UtilityClass
 public class CacheManagerUtil {
 
+    private volatile CacheManager cacheManager;
+
+    /**
+     * 缓存CacheManager,避免每次从容器中查找
+     */
+    private CacheManager cacheManager() {
+        CacheManager current = cacheManager;
+        if (current == null) {
+            current = SpringUtil.getBean(CacheManager.class);
+            cacheManager = current;
+        }
+        return current;
+    }
+
     public <T> T getCache(String cacheName, String key) {
-        CacheManager cacheManager = SpringUtil.getBean(CacheManager.class);
+        CacheManager cacheManager = cacheManager();
         Cache cache = cacheManager.getCache(cacheName);
         if (cache == null) {
             return null;
@@ -24,8 +40,24 @@ public class CacheManagerUtil {
         return (T) valueWrapper.get();
     }
 
+    /**
+     * 读取缓存,未命中时加载并写入,并发未命中合并为一次加载
+     * @param cacheName
+     * @param key
+     * @param loader
+     * @return
+     */
+    public <T> T getCache(String cacheName, String key, Callable<T> loader) {
+        CacheManager cacheManager = cacheManager();
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) {
+            return null;
+        }
+        return cache.get(key, loader);
+    }
+
     public void putCache(String cacheName, String key, Object value) {
-        CacheManager cacheManager = SpringUtil.getBean(CacheManager.class);
+        CacheManager cacheManager = cacheManager();
         Cache cache = cacheManager.getCache(cacheName);
         if (cache != null) {
             cache.put(key, value);
@@ -33,7 +65,7 @@ public class CacheManagerUtil {
     }
 
     public void evictCache(String cacheName, String key) {
-        CacheManager cacheManager = SpringUtil.getBean(CacheManager.class);
+        CacheManager cacheManager = cacheManager();
         Cache cache = cacheManager.getCache(cacheName);
         if (cache != null) {
             cache.evict(key);
@@ -0,0 +1,21 @@
+-- 批量领取到期的延迟任务
+-- KEYS[1]: 分片zset, KEYS[2]: 分片处理中zset
+-- ARGV[1]: 当前时间, ARGV[2]: 最大领取数量, ARGV[3]: 租期到期时间
+-- 先重新领取租期已过期(处理失败或实例宕机)的任务,再领取新到期的任务
+local now = tonumber(ARGV[1])
+local limit = tonumber(ARGV[2])
+local items = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', now, 'LIMIT', 0, limit)
+local remaining = limit - #items
+if remaining > 0 then
+    local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', now, 'LIMIT', 0, remaining)
+    if #due > 0 then
+        redis.call('ZREM', KEYS[1], unpack(due))
+        for i = 1, #due do
+            items[#items + 1] = due[i]
+        end
+    end
+end
+for i = 1, #items do
+    redis.call('ZADD', KEYS[2], ARGV[3], items[i])
+end
+return items
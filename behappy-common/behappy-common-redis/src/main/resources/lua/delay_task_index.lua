@@ -0,0 +1,9 @@
+-- 登记非空分片及其最早到期时间
+-- KEYS[1]: topic的分片索引zset(member为分片号,score为最早到期时间)
+-- ARGV[1]: 分片号, ARGV[2]: 到期时间, ARGV[3]: 当前时间
+-- 已登记的时间更早且未过期时保留,已过期(分片可能已处理完)时以新的到期时间为准
+local current = redis.call('ZSCORE', KEYS[1], ARGV[1])
+if not current or tonumber(ARGV[2]) < tonumber(current) or tonumber(current) <= tonumber(ARGV[3]) then
+    redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+end
+return 1
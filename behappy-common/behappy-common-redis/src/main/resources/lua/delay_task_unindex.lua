@@ -0,0 +1,9 @@
+-- 分片处理完后移除索引
+-- KEYS[1]: topic的分片索引zset
+-- ARGV[1]: 分片号, ARGV[2]: 当前时间
+-- 期间有新任务登记了未来的到期时间时保留
+local current = redis.call('ZSCORE', KEYS[1], ARGV[1])
+if current and tonumber(current) <= tonumber(ARGV[2]) then
+    redis.call('ZREM', KEYS[1], ARGV[1])
+end
+return 1
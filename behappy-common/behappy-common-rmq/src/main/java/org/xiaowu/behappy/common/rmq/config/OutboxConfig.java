@@ -0,0 +1,52 @@
+package org.xiaowu.behappy.common.rmq.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xiaowu.behappy.common.rmq.mapper.MqOutboxMapper;
+import org.xiaowu.behappy.common.rmq.outbox.OutboxPayloadTypes;
+import org.xiaowu.behappy.common.rmq.outbox.OutboxRelay;
+import org.xiaowu.behappy.common.rmq.outbox.OutboxService;
+
+/**
+ * 消息发件箱配置
+ * mq-outbox.enabled=true 时消息先写入发件箱,由{@link OutboxRelay}批量发送,需要引入behappy-common-mybatis;
+ * 未开启时{@link OutboxService}直接发送,不创建发件箱相关的bean
+ * @author xiaowu
+ */
+@EnableConfigurationProperties(OutboxProperties.class)
+public class OutboxConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "mq-outbox", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public OutboxService directOutboxService(RabbitTemplate rabbitTemplate, OutboxProperties outboxProperties) {
+        return new OutboxService(rabbitTemplate, outboxProperties);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "com.baomidou.mybatisplus.core.mapper.BaseMapper")
+    @ConditionalOnProperty(prefix = "mq-outbox", name = "enabled", havingValue = "true")
+    static class OutboxTableConfig {
+
+        @Bean
+        public OutboxPayloadTypes outboxPayloadTypes(OutboxProperties outboxProperties) {
+            return new OutboxPayloadTypes(outboxProperties.getPayloadTypes());
+        }
+
+        @Bean
+        public OutboxRelay outboxRelay(MqOutboxMapper mqOutboxMapper, RabbitTemplate rabbitTemplate, ObjectMapper objectMapper,
+                                       OutboxProperties outboxProperties, OutboxPayloadTypes outboxPayloadTypes) {
+            return new OutboxRelay(mqOutboxMapper, rabbitTemplate, objectMapper, outboxProperties, outboxPayloadTypes);
+        }
+
+        @Bean
+        public OutboxService outboxService(MqOutboxMapper mqOutboxMapper, RabbitTemplate rabbitTemplate, ObjectMapper objectMapper,
+                                           OutboxProperties outboxProperties, OutboxRelay outboxRelay, OutboxPayloadTypes outboxPayloadTypes) {
+            return new OutboxService(mqOutboxMapper, rabbitTemplate, objectMapper, outboxProperties, outboxRelay, outboxPayloadTypes);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.xiaowu.behappy.common.rmq.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 消息发件箱配置
+ * 开启后需要将 spring.rabbitmq.publisher-confirm-type 设置为 correlated
+ * @author xiaowu
+ */
+@Data
+@ConfigurationProperties(prefix = "mq-outbox")
+public class OutboxProperties {
+
+    /**
+     * 是否开启发件箱,默认关闭(事务内直接发送)
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每次领取发送的最大消息数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 轮询间隔,单位：毫秒
+     */
+    private long pollMillis = 200;
+
+    /**
+     * 等待broker确认的超时时间,单位：毫秒
+     */
+    private long confirmTimeoutMillis = 5000;
+
+    /**
+     * 领取后未确认的消息在租期到期后重新发送(实例宕机),单位：毫秒
+     */
+    private long leaseMillis = 30000;
+
+    /**
+     * 最大发送次数,超过后标记为发送失败
+     */
+    private int maxAttempts = 10;
+
+    /**
+     * 已发送消息的保留时间,单位：毫秒
+     */
+    private long retentionMillis = 86400000;
+
+    /**
+     * 允许写入发件箱的消息类型,Long、Integer、String默认允许
+     * 发送时校验,投递时只反序列化为这些类型
+     */
+    private List<Class<?>> payloadTypes = new ArrayList<>();
+}
@@ -0,0 +1,93 @@
+package org.xiaowu.behappy.common.rmq.entity;
+
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.xiaowu.common.mybatis.base.BaseEntity;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 消息发件箱
+ * @author xiaowu
+ */
+@Data
+@TableName("bh_mq_outbox")
+@EqualsAndHashCode(callSuper = true)
+public class MqOutboxEntity extends BaseEntity implements Serializable {
+
+    private static final long serialVersionUID = -2385126807593217644L;
+
+    /**
+     * 待发送
+     */
+    public static final int PENDING = 0;
+
+    /**
+     * 发送中
+     */
+    public static final int SENDING = 1;
+
+    /**
+     * 已发送
+     */
+    public static final int SENT = 2;
+
+    /**
+     * 发送失败,超过最大重试次数,需人工处理
+     */
+    public static final int FAILED = 3;
+
+    /**
+     * id
+     */
+    @TableId
+    private Long id;
+
+    /**
+     * 交换机
+     */
+    private String exchange;
+
+    /**
+     * 路由键
+     */
+    private String routingKey;
+
+    /**
+     * 消息类型
+     */
+    private String payloadType;
+
+    /**
+     * 消息内容(json)
+     */
+    private String payload;
+
+    /**
+     * 0-待发送 1-发送中 2-已发送 3-发送失败
+     */
+    private Integer status;
+
+    /**
+     * 发送失败次数
+     */
+    private Integer attempts;
+
+    /**
+     * 领取标识
+     */
+    private String claimToken;
+
+    /**
+     * 领取租期,到期未确认的消息重新发送
+     */
+    private LocalDateTime leaseTime;
+
+    /**
+     * 发送时间
+     */
+    private LocalDateTime sendTime;
+}
@@ -0,0 +1,11 @@
+package org.xiaowu.behappy.common.rmq.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.xiaowu.behappy.common.rmq.entity.MqOutboxEntity;
+
+/**
+ *
+ * @author xiaowu
+ */
+public interface MqOutboxMapper extends BaseMapper<MqOutboxEntity> {
+}
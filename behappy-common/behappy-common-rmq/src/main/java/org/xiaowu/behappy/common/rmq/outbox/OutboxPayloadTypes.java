@@ -0,0 +1,48 @@
+package org.xiaowu.behappy.common.rmq.outbox;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 发件箱允许的消息类型
+ * 发件箱表中保存的是类型名,投递时只按已登记的类型反序列化,不会加载表中任意的类
+ * @author xiaowu
+ */
+public class OutboxPayloadTypes {
+
+    private final Map<String, Class<?>> types = new ConcurrentHashMap<>();
+
+    public OutboxPayloadTypes(Collection<Class<?>> payloadTypes) {
+        register(Arrays.asList(Long.class, Integer.class, String.class));
+        register(payloadTypes);
+    }
+
+    public void register(Collection<Class<?>> payloadTypes) {
+        payloadTypes.forEach(payloadType -> types.put(payloadType.getName(), payloadType));
+    }
+
+    /**
+     * 校验消息类型是否允许写入发件箱
+     * @param payloadType
+     */
+    public void check(Class<?> payloadType) {
+        if (types.get(payloadType.getName()) != payloadType) {
+            throw new IllegalArgumentException("消息类型未登记到 mq-outbox.payload-types: " + payloadType.getName());
+        }
+    }
+
+    /**
+     * 按类型名查找已登记的类型
+     * @param payloadType
+     * @return
+     */
+    public Class<?> resolve(String payloadType) {
+        Class<?> type = types.get(payloadType);
+        if (type == null) {
+            throw new IllegalArgumentException("消息类型未登记到 mq-outbox.payload-types: " + payloadType);
+        }
+        return type;
+    }
+}
@@ -0,0 +1,244 @@
+package org.xiaowu.behappy.common.rmq.outbox;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.context.SmartLifecycle;
+import org.xiaowu.behappy.common.rmq.config.OutboxProperties;
+import org.xiaowu.behappy.common.rmq.entity.MqOutboxEntity;
+import org.xiaowu.behappy.common.rmq.mapper.MqOutboxMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 发件箱投递
+ * 1. 一条update按id顺序领取一批待发送(或租期到期)的消息,多实例之间不会重复领取
+ * 2. 批量发送,每条消息携带CorrelationData,发送完后统一等待broker异步确认
+ * 3. 已确认的消息一条update标记为已发送,未确认的重新置为待发送,超过最大次数标记为发送失败,
+ *    只更新仍属于本次领取(领取标记相同且发送中)的消息
+ * 4. 定期清理已发送的消息
+ * 消息为至少一次投递,消费端需要幂等
+ * @author xiaowu
+ */
+@Slf4j
+public class OutboxRelay implements SmartLifecycle {
+
+    private static final long PURGE_INTERVAL = 60000;
+
+    private static final int PURGE_BATCH_SIZE = 1000;
+
+    private final MqOutboxMapper mqOutboxMapper;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final OutboxProperties outboxProperties;
+
+    private final OutboxPayloadTypes outboxPayloadTypes;
+
+    /**
+     * 已提交但还未执行的唤醒,合并多次唤醒
+     */
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    private ScheduledExecutorService executor;
+
+    private volatile boolean running;
+
+    private long lastPurge;
+
+    public OutboxRelay(MqOutboxMapper mqOutboxMapper, RabbitTemplate rabbitTemplate, ObjectMapper objectMapper,
+                       OutboxProperties outboxProperties, OutboxPayloadTypes outboxPayloadTypes) {
+        this.mqOutboxMapper = mqOutboxMapper;
+        this.rabbitTemplate = rabbitTemplate;
+        this.objectMapper = objectMapper;
+        this.outboxProperties = outboxProperties;
+        this.outboxPayloadTypes = outboxPayloadTypes;
+    }
+
+    @Override
+    public void start() {
+        if (!outboxProperties.isEnabled()) {
+            return;
+        }
+        log.info("OutboxRelay - start, batchSize: {}", outboxProperties.getBatchSize());
+        executor = Executors.newSingleThreadScheduledExecutor(ThreadFactoryBuilder.create().setNamePrefix("mq-outbox-relay-").build());
+        running = true;
+        executor.scheduleWithFixedDelay(this::poll, 0, outboxProperties.getPollMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 有新消息提交,立即发送
+     */
+    public void wakeUp() {
+        if (running && wakeupPending.compareAndSet(false, true)) {
+            executor.execute(this::poll);
+        }
+    }
+
+    private void poll() {
+        wakeupPending.set(false);
+        try {
+            // 领满一批说明还有积压,继续发送
+            while (running && relay() >= outboxProperties.getBatchSize()) {
+                wakeupPending.set(false);
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastPurge >= PURGE_INTERVAL) {
+                lastPurge = now;
+                purge();
+            }
+        } catch (Exception e) {
+            log.error("OutboxRelay - poll: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 领取并发送一批消息
+     * @return 领取的消息数
+     */
+    private int relay() {
+        List<MqOutboxEntity> claimed = claim();
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+        List<Long> failedIds = new ArrayList<>();
+        List<MqOutboxEntity> published = new ArrayList<>(claimed.size());
+        List<CorrelationData> correlations = new ArrayList<>(claimed.size());
+        for (MqOutboxEntity mqOutboxEntity : claimed) {
+            try {
+                Object payload = objectMapper.readValue(mqOutboxEntity.getPayload(), outboxPayloadTypes.resolve(mqOutboxEntity.getPayloadType()));
+                CorrelationData correlationData = new CorrelationData(String.valueOf(mqOutboxEntity.getId()));
+                rabbitTemplate.convertAndSend(mqOutboxEntity.getExchange(), mqOutboxEntity.getRoutingKey(), payload, correlationData);
+                published.add(mqOutboxEntity);
+                correlations.add(correlationData);
+            } catch (Exception e) {
+                log.error("OutboxRelay - 消息 {} 发送失败: {}", mqOutboxEntity.getId(), e.getMessage());
+                failedIds.add(mqOutboxEntity.getId());
+            }
+        }
+        List<Long> sentIds = new ArrayList<>(published.size());
+        long deadline = System.currentTimeMillis() + outboxProperties.getConfirmTimeoutMillis();
+        for (int i = 0; i < published.size(); i++) {
+            Long id = published.get(i).getId();
+            if (awaitConfirm(correlations.get(i), deadline)) {
+                sentIds.add(id);
+            } else {
+                failedIds.add(id);
+            }
+        }
+        // 同一批消息的领取标记相同
+        String claimToken = claimed.get(0).getClaimToken();
+        markSent(sentIds, claimToken);
+        markFailed(failedIds, claimToken);
+        log.debug("OutboxRelay - relay: claimed {}, sent {}, failed {}", claimed.size(), sentIds.size(), failedIds.size());
+        return claimed.size();
+    }
+
+    private List<MqOutboxEntity> claim() {
+        String claimToken = IdUtil.fastSimpleUUID();
+        LocalDateTime now = LocalDateTime.now();
+        int claimedCount = mqOutboxMapper.update(null, Wrappers.<MqOutboxEntity>lambdaUpdate().
+                set(MqOutboxEntity::getStatus, MqOutboxEntity.SENDING).
+                set(MqOutboxEntity::getClaimToken, claimToken).
+                set(MqOutboxEntity::getLeaseTime, now.plusNanos(TimeUnit.MILLISECONDS.toNanos(outboxProperties.getLeaseMillis()))).
+                and(wrapper -> wrapper.eq(MqOutboxEntity::getStatus, MqOutboxEntity.PENDING).
+                        or(expired -> expired.eq(MqOutboxEntity::getStatus, MqOutboxEntity.SENDING).
+                                lt(MqOutboxEntity::getLeaseTime, now))).
+                last("ORDER BY id LIMIT " + outboxProperties.getBatchSize()));
+        if (claimedCount == 0) {
+            return new ArrayList<>();
+        }
+        return mqOutboxMapper.selectList(Wrappers.<MqOutboxEntity>lambdaQuery().
+                eq(MqOutboxEntity::getClaimToken, claimToken).
+                eq(MqOutboxEntity::getStatus, MqOutboxEntity.SENDING).
+                orderByAsc(MqOutboxEntity::getId));
+    }
+
+    /**
+     * 等待broker确认,消息被退回(路由失败)视为失败
+     */
+    private boolean awaitConfirm(CorrelationData correlationData, long deadline) {
+        try {
+            long timeout = Math.max(0, deadline - System.currentTimeMillis());
+            CorrelationData.Confirm confirm = correlationData.getFuture().get(timeout, TimeUnit.MILLISECONDS);
+            if (!confirm.isAck()) {
+                log.warn("OutboxRelay - 消息 {} nack: {}", correlationData.getId(), confirm.getReason());
+                return false;
+            }
+            return correlationData.getReturned() == null;
+        } catch (TimeoutException e) {
+            log.warn("OutboxRelay - 消息 {} 等待确认超时", correlationData.getId());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.warn("OutboxRelay - 消息 {} 确认失败: {}", correlationData.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 只更新本次领取的消息,租期到期后被其他实例重新领取的消息不受影响
+     */
+    private void markSent(List<Long> ids, String claimToken) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        mqOutboxMapper.update(null, Wrappers.<MqOutboxEntity>lambdaUpdate().
+                set(MqOutboxEntity::getStatus, MqOutboxEntity.SENT).
+                set(MqOutboxEntity::getSendTime, LocalDateTime.now()).
+                in(MqOutboxEntity::getId, ids).
+                eq(MqOutboxEntity::getClaimToken, claimToken).
+                eq(MqOutboxEntity::getStatus, MqOutboxEntity.SENDING));
+    }
+
+    private void markFailed(List<Long> ids, String claimToken) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        mqOutboxMapper.update(null, Wrappers.<MqOutboxEntity>lambdaUpdate().
+                setSql("attempts = attempts + 1").
+                setSql("status = IF(attempts >= " + outboxProperties.getMaxAttempts() + ", " + MqOutboxEntity.FAILED + ", " + MqOutboxEntity.PENDING + ")").
+                in(MqOutboxEntity::getId, ids).
+                eq(MqOutboxEntity::getClaimToken, claimToken).
+                eq(MqOutboxEntity::getStatus, MqOutboxEntity.SENDING));
+    }
+
+    private void purge() {
+        LocalDateTime expired = LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(outboxProperties.getRetentionMillis()));
+        int deleted;
+        do {
+            deleted = mqOutboxMapper.delete(Wrappers.<MqOutboxEntity>lambdaQuery().
+                    eq(MqOutboxEntity::getStatus, MqOutboxEntity.SENT).
+                    lt(MqOutboxEntity::getSendTime, expired).
+                    last("LIMIT " + PURGE_BATCH_SIZE));
+        } while (running && deleted >= PURGE_BATCH_SIZE);
+    }
+}
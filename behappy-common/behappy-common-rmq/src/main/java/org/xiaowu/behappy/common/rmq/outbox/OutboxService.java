@@ -0,0 +1,81 @@
+package org.xiaowu.behappy.common.rmq.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.xiaowu.behappy.common.rmq.config.OutboxProperties;
+import org.xiaowu.behappy.common.rmq.entity.MqOutboxEntity;
+import org.xiaowu.behappy.common.rmq.mapper.MqOutboxMapper;
+
+/**
+ * 消息发件箱
+ * 开启后消息与业务数据在同一个事务中写入发件箱表,事务提交后由{@link OutboxRelay}批量发送,
+ * 业务事务中不再同步等待broker,缩短行锁持有时间;事务回滚时消息也一起回滚
+ * 未开启时直接发送,不依赖数据库
+ * @author xiaowu
+ */
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final MqOutboxMapper mqOutboxMapper;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final OutboxProperties outboxProperties;
+
+    private final OutboxRelay outboxRelay;
+
+    private final OutboxPayloadTypes outboxPayloadTypes;
+
+    /**
+     * 未开启发件箱,直接发送
+     * @param rabbitTemplate
+     * @param outboxProperties
+     */
+    public OutboxService(RabbitTemplate rabbitTemplate, OutboxProperties outboxProperties) {
+        this(null, rabbitTemplate, null, outboxProperties, null, null);
+    }
+
+    public boolean isEnabled() {
+        return outboxProperties.isEnabled();
+    }
+
+    /**
+     * 发送消息
+     * @param exchange
+     * @param routingKey
+     * @param payload 消息内容,使用json序列化
+     */
+    @SneakyThrows
+    public void send(String exchange, String routingKey, Object payload) {
+        if (!isEnabled()) {
+            rabbitTemplate.convertAndSend(exchange, routingKey, payload);
+            return;
+        }
+        outboxPayloadTypes.check(payload.getClass());
+        MqOutboxEntity mqOutboxEntity = new MqOutboxEntity();
+        mqOutboxEntity.setExchange(exchange);
+        mqOutboxEntity.setRoutingKey(routingKey);
+        mqOutboxEntity.setPayloadType(payload.getClass().getName());
+        mqOutboxEntity.setPayload(objectMapper.writeValueAsString(payload));
+        mqOutboxEntity.setStatus(MqOutboxEntity.PENDING);
+        mqOutboxEntity.setAttempts(0);
+        mqOutboxMapper.insert(mqOutboxEntity);
+        // 事务提交后立即唤醒发送,不必等到下次轮询
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    outboxRelay.wakeUp();
+                }
+            });
+        } else {
+            outboxRelay.wakeUp();
+        }
+    }
+}
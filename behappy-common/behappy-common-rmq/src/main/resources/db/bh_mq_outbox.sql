@@ -0,0 +1,20 @@
+-- 消息发件箱,使用发件箱的服务(order、ware)各自的库中都需要创建
+CREATE TABLE `bh_mq_outbox`
+(
+    `id`           bigint       NOT NULL COMMENT 'id',
+    `exchange`     varchar(128) NOT NULL COMMENT '交换机',
+    `routing_key`  varchar(128) NOT NULL COMMENT '路由键',
+    `payload_type` varchar(255) NOT NULL COMMENT '消息类型',
+    `payload`      text         NOT NULL COMMENT '消息内容(json)',
+    `status`       tinyint      NOT NULL DEFAULT 0 COMMENT '0-待发送 1-发送中 2-已发送 3-发送失败',
+    `attempts`     int          NOT NULL DEFAULT 0 COMMENT '发送失败次数',
+    `claim_token`  varchar(64)           DEFAULT NULL COMMENT '领取标识',
+    `lease_time`   datetime              DEFAULT NULL COMMENT '领取租期',
+    `send_time`    datetime              DEFAULT NULL COMMENT '发送时间',
+    `create_time`  datetime              DEFAULT NULL COMMENT '创建时间',
+    `update_time`  datetime              DEFAULT NULL COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_status_lease_time` (`status`, `lease_time`),
+    KEY `idx_claim_token` (`claim_token`),
+    KEY `idx_status_send_time` (`status`, `send_time`)
+) ENGINE = InnoDB COMMENT ='消息发件箱';
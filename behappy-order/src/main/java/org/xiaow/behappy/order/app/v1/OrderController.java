@@ -1,10 +1,7 @@
 package org.xiaow.behappy.order.app.v1;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 import org.xiaow.behappy.order.service.OrderService;
 import org.xiaowu.behappy.common.core.util.Response;
 import org.xiaowu.behappy.common.satoken.util.SaUtils;
@@ -52,4 +49,17 @@ public class OrderController {
         Long orderNumber = orderService.submitOrder(submitOrderDto, userId);
         return Response.ok(orderNumber);
     }
+
+    /**
+     * 查询下单结果
+     * @apiNote 异步下单时轮询, data为null表示处理中, 下单失败时返回失败原因
+     * @author xiaowu
+     * @param orderNum
+     * @return org.xiaowu.behappy.common.core.util.Response<java.lang.Integer>
+     */
+    @GetMapping("/submit-status")
+    public Response<Integer> getSubmitStatus(@RequestParam("orderNum") Long orderNum) {
+        Long userId = SaUtils.getUser().getUserId();
+        return Response.ok(orderService.getSubmitStatus(orderNum, userId));
+    }
 }
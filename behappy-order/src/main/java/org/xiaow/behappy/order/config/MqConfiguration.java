@@ -5,6 +5,9 @@ import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.Exchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -79,6 +82,23 @@ public class MqConfiguration {
                 mqProperties.getEventExchange(), mqProperties.getLettuceRoutingKey(), null);
     }
 
+    /**
+     * 批量消费关闭订单队列的容器工厂
+     * 沿用spring.rabbitmq.listener.simple的配置(手动ack),预取数量不小于批大小
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory orderCloseBatchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(mqProperties.getCloseBatchSize());
+        factory.setPrefetchCount(mqProperties.getCloseBatchSize());
+        factory.setReceiveTimeout(mqProperties.getCloseBatchReceiveTimeout());
+        return factory;
+    }
+
     /**
      * 订单释放直接和库存释放进行绑定
      * 这里的getReleaseOtherQueue时ware服务中绑定的释放库存queue
@@ -88,4 +108,19 @@ public class MqConfiguration {
         return new Binding(mqProperties.getReleaseOtherQueue(), Binding.DestinationType.QUEUE,
                 mqProperties.getEventExchange(), mqProperties.getReleaseOtherRoutingKey() + ".#", null);
     }
+
+    /**
+     * 已关闭订单支付成功后的退款队列
+     * @return
+     */
+    @Bean
+    public Queue orderRefundQueue() {
+        return new Queue(mqProperties.getOrderRefundQueue(), true, false, false);
+    }
+
+    @Bean
+    public Binding orderRefundBinding() {
+        return new Binding(mqProperties.getOrderRefundQueue(), Binding.DestinationType.QUEUE,
+                mqProperties.getEventExchange(), mqProperties.getOrderRefundRoutingKey(), null);
+    }
 }
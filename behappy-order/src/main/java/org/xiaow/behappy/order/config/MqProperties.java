@@ -32,4 +32,26 @@ public class MqProperties {
 
     private String releaseOtherRoutingKey;
 
+    /**
+     * 下面俩用于已关闭订单收到支付成功后退款
+     */
+    private String orderRefundQueue;
+
+    private String orderRefundRoutingKey;
+
+    /**
+     * 是否批量消费关闭订单队列
+     */
+    private boolean closeBatchEnabled = false;
+
+    /**
+     * 批量消费时每批最大消息数
+     */
+    private int closeBatchSize = 100;
+
+    /**
+     * 批量消费时凑批的最长等待时间,单位：毫秒
+     */
+    private long closeBatchReceiveTimeout = 1000;
+
 }
@@ -0,0 +1,22 @@
+package org.xiaow.behappy.order.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 下单配置
+ * @author xiaowu
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "order-submit")
+public class OrderSubmitProperties {
+
+    /**
+     * 是否异步下单,默认关闭
+     * 开启后提交订单只校验并入队,立即返回订单号,由redis延迟任务(需要delay-task.enabled=true)分片批量处理,
+     * 客户端通过订单号轮询下单结果
+     */
+    private boolean asyncEnabled = false;
+}
@@ -1,13 +1,13 @@
 package org.xiaow.behappy.order.feign.v1;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 import org.xiaow.behappy.order.service.OrderService;
 import org.xiaowu.behappy.common.core.util.Response;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * feign order
  * @author xiaowu
@@ -30,4 +30,16 @@ public class FeignOrderController {
     public Response<Integer> getOrderStatus(@RequestParam("orderNum") Long orderNum) {
         return Response.ok(orderService.getOrderStatus(orderNum));
     }
+
+    /**
+     * 批量查询订单状态
+     * @apiNote 批量查询订单状态, 不存在的订单不返回
+     * @author xiaowu
+     * @param orderNums
+     * @return org.xiaowu.behappy.common.core.util.Response<java.util.Map < java.lang.Long, java.lang.Integer>>
+     */
+    @PostMapping("/order-statuses")
+    public Response<Map<Long, Integer>> getOrderStatuses(@RequestBody List<Long> orderNums) {
+        return Response.ok(orderService.getOrderStatuses(orderNums));
+    }
 }
@@ -0,0 +1,52 @@
+package org.xiaow.behappy.order.listener;
+
+import com.rabbitmq.client.Channel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.xiaow.behappy.order.service.OrderService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量关闭订单,rmq.close-batch-enabled=true时代替{@link OrderCloseListener}
+ * 一批消息一条update关闭,整批一起ack
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "rmq", name = "close-batch-enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class OrderCloseBatchListener {
+
+    private final OrderService orderService;
+
+    private final MessageConverter messageConverter;
+
+    @RabbitListener(queues = "${rmq.order-release-queue}", containerFactory = "orderCloseBatchContainerFactory")
+    public void listener(List<Message> messages, Channel channel) throws IOException {
+        long lastDeliveryTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+        try {
+            List<Long> orderNums = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                Object payload = messageConverter.fromMessage(message);
+                if (payload instanceof Number) {
+                    orderNums.add(((Number) payload).longValue());
+                } else {
+                    log.warn("OrderCloseBatchListener - 未知的消息: {}", payload);
+                }
+            }
+            orderService.closeOrders(orderNums);
+            channel.basicAck(lastDeliveryTag, true);
+        } catch (Exception e) {
+            log.error("OrderCloseBatchListener - listener: {}", e.getMessage());
+            channel.basicNack(lastDeliveryTag, true, true);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.xiaow.behappy.order.listener;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.xiaow.behappy.order.service.OrderService;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskHandler;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * redis延迟任务到期,判断状态,关闭订单
+ * delay-task.enabled=true 时代替rabbitmq死信队列
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderCloseDelayTaskHandler implements DelayTaskHandler {
+
+    public static final String TOPIC = "ORDER:CLOSE";
+
+    private final OrderService orderService;
+
+    @Override
+    public String topic() {
+        return TOPIC;
+    }
+
+    @Override
+    public void handle(List<String> payloads) {
+        List<Long> orderNums = payloads.stream().map(Long::valueOf).collect(Collectors.toList());
+        orderService.closeOrders(orderNums);
+    }
+}
@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.xiaow.behappy.order.service.OrderService;
 
@@ -17,6 +18,7 @@ import java.io.IOException;
  */
 @Slf4j
 @Component
+@ConditionalOnProperty(prefix = "rmq", name = "close-batch-enabled", havingValue = "false", matchIfMissing = true)
 @RabbitListener(queues = "${rmq.order-release-queue}")
 @RequiredArgsConstructor
 public class OrderCloseListener {
@@ -0,0 +1,38 @@
+package org.xiaow.behappy.order.listener;
+
+import com.rabbitmq.client.Channel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+import org.xiaow.behappy.order.service.AliPayService;
+import org.xiaow.behappy.order.to.OrderRefundTo;
+
+import java.io.IOException;
+
+/**
+ * 已关闭订单收到支付成功后退款
+ * 退款请求使用固定的退款请求号,重复消费不会重复退款
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@RabbitListener(queues = "${rmq.order-refund-queue}")
+@RequiredArgsConstructor
+public class OrderRefundListener {
+
+    private final AliPayService aliPayService;
+
+    @RabbitHandler
+    public void listener(OrderRefundTo orderRefundTo, Channel channel, Message message) throws IOException {
+        try {
+            aliPayService.refund(orderRefundTo);
+            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+        } catch (Exception e) {
+            log.error("OrderRefundListener - listener: {}, {}", orderRefundTo, e.getMessage());
+            channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.xiaow.behappy.order.listener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.xiaow.behappy.order.service.OrderSubmitService;
+import org.xiaow.behappy.order.to.OrderSubmitTo;
+import org.xiaowu.behappy.common.core.exception.BeHappyException;
+import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskHandler;
+import org.xiaowu.behappy.common.redis.util.CacheManagerUtil;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.xiaowu.behappy.common.redis.constant.CacheConstant.ORDER_SUBMIT_FAILURE_CACHE;
+
+/**
+ * 异步下单
+ * 下单命令按内容hash分片,每个分片一次领取一批,逐个订单独立事务下单,
+ * 业务失败(库存不足、商品下架等)记录失败原因供客户端轮询,其他异常整批重新投递(已下单的订单会跳过)
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderSubmitDelayTaskHandler implements DelayTaskHandler {
+
+    public static final String TOPIC = "ORDER:SUBMIT";
+
+    private final OrderSubmitService orderSubmitService;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 下单失败原因的缓存key,包含用户id,只能查询自己的订单
+     * @param userId
+     * @param orderNum
+     * @return
+     */
+    public static String failureKey(Long userId, Long orderNum) {
+        return userId + ":" + orderNum;
+    }
+
+    @Override
+    public String topic() {
+        return TOPIC;
+    }
+
+    @Override
+    @SneakyThrows
+    public void handle(List<String> payloads) {
+        for (String payload : payloads) {
+            OrderSubmitTo orderSubmitTo = objectMapper.readValue(payload, OrderSubmitTo.class);
+            String orderNum = orderSubmitTo.getOrderNum().toString();
+            String failureKey = failureKey(orderSubmitTo.getUserId(), orderSubmitTo.getOrderNum());
+            try {
+                orderSubmitService.submit(orderSubmitTo.getOrderNum(), orderSubmitTo.getUserId(),
+                        orderSubmitTo.getConfirmOrderVo(), orderSubmitTo.getSubmitOrderDto());
+                CacheManagerUtil.evictCache(ORDER_SUBMIT_FAILURE_CACHE, failureKey);
+            } catch (Exception e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                if (!(cause instanceof BeHappyException)) {
+                    throw e;
+                }
+                BeHappyException beHappyException = (BeHappyException) cause;
+                log.warn("OrderSubmitDelayTaskHandler - 订单 {} 下单失败: {}", orderNum, beHappyException.getMsg());
+                CacheManagerUtil.putCache(ORDER_SUBMIT_FAILURE_CACHE, failureKey,
+                        Response.failed(beHappyException.getCode(), beHappyException.getMsg()));
+            }
+        }
+    }
+}
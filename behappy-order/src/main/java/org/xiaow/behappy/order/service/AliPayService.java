@@ -3,13 +3,19 @@ package org.xiaow.behappy.order.service;
 import com.alipay.api.AlipayClient;
 import com.alipay.api.DefaultAlipayClient;
 import com.alipay.api.request.AlipayTradePagePayRequest;
+import com.alipay.api.request.AlipayTradeRefundRequest;
+import com.alipay.api.response.AlipayTradeRefundResponse;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.xiaow.behappy.order.to.OrderRefundTo;
+import org.xiaowu.behappy.common.core.exception.BeHappyException;
 import org.xiaowu.behappy.common.pay.config.AlipayTemplate;
 import org.xiaowu.behappy.order.dto.PayDto;
 
+import static org.xiaowu.behappy.order.enums.BizCode.ORDER_REFUND_FAILED;
+
 /**
  *
  * @author xiaowu
@@ -24,14 +30,7 @@ public class AliPayService {
     @SneakyThrows
     public String pay(PayDto vo) {
         //1、根据支付宝的配置生成一个支付客户端
-        AlipayClient alipayClient = new DefaultAlipayClient(
-                alipayTemplate.getGatewayUrl(),
-                alipayTemplate.getAppId(),
-                alipayTemplate.getMerchantPrivateKey(),
-                "json",
-                alipayTemplate.getCharset(),
-                alipayTemplate.getAlipayPublicKey(),
-                alipayTemplate.getSignType());
+        AlipayClient alipayClient = alipayClient();
 
         //2、创建一个支付请求 //设置请求参数
         AlipayTradePagePayRequest alipayRequest = new AlipayTradePagePayRequest();
@@ -58,4 +57,36 @@ public class AliPayService {
         //会收到支付宝的响应，响应的是一个页面，只要浏览器显示这个页面，就会自动来到支付宝的收银台页面
         return result;
     }
+
+    /**
+     * 全额退款
+     * 退款请求号固定为订单号,重复调用时支付宝只退一次
+     * @param orderRefundTo
+     */
+    @SneakyThrows
+    public void refund(OrderRefundTo orderRefundTo) {
+        AlipayTradeRefundRequest alipayRequest = new AlipayTradeRefundRequest();
+        alipayRequest.setBizContent("{\"out_trade_no\":\"" + orderRefundTo.getOrderNum() + "\","
+                + "\"trade_no\":\"" + orderRefundTo.getTradeNo() + "\","
+                + "\"refund_amount\":\"" + orderRefundTo.getRefundAmount() + "\","
+                + "\"refund_reason\":\"订单已关闭\","
+                + "\"out_request_no\":\"" + orderRefundTo.getOrderNum() + "\"}");
+        AlipayTradeRefundResponse response = alipayClient().execute(alipayRequest);
+        if (!response.isSuccess()) {
+            log.error("AliPayService - refund: 订单 {} 退款失败, {}: {}", orderRefundTo.getOrderNum(), response.getSubCode(), response.getSubMsg());
+            throw new BeHappyException(ORDER_REFUND_FAILED.getCode(), ORDER_REFUND_FAILED.getMsg());
+        }
+        log.info("AliPayService - refund: 订单 {} 已退款 {}", orderRefundTo.getOrderNum(), response.getRefundFee());
+    }
+
+    private AlipayClient alipayClient() {
+        return new DefaultAlipayClient(
+                alipayTemplate.getGatewayUrl(),
+                alipayTemplate.getAppId(),
+                alipayTemplate.getMerchantPrivateKey(),
+                "json",
+                alipayTemplate.getCharset(),
+                alipayTemplate.getAlipayPublicKey(),
+                alipayTemplate.getSignType());
+    }
 }
@@ -4,29 +4,40 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.lang.Snowflake;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.xiaow.behappy.order.config.MqProperties;
+import org.xiaow.behappy.order.config.OrderSubmitProperties;
 import org.xiaow.behappy.order.entity.OrderEntity;
+import org.xiaow.behappy.order.listener.OrderSubmitDelayTaskHandler;
 import org.xiaow.behappy.order.mapper.OrderMapper;
+import org.xiaow.behappy.order.statemachine.OrderEvent;
+import org.xiaow.behappy.order.statemachine.OrderStateMachine;
+import org.xiaow.behappy.order.statemachine.TransitionResult;
+import org.xiaow.behappy.order.to.OrderRefundTo;
+import org.xiaow.behappy.order.to.OrderSubmitTo;
 import org.xiaowu.behappy.basket.feign.CartFeign;
 import org.xiaowu.behappy.basket.vo.ShopCartItemVo;
 import org.xiaowu.behappy.common.core.exception.BeHappyException;
+import org.xiaowu.behappy.common.core.executor.BulkheadExecutors;
 import org.xiaowu.behappy.common.core.util.Response;
 import org.xiaowu.behappy.common.core.util.ResponseConvert;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskService;
 import org.xiaowu.behappy.common.redis.util.CacheManagerUtil;
+import org.xiaowu.behappy.common.rmq.outbox.OutboxService;
 import org.xiaowu.behappy.member.feign.UserAddrFeign;
 import org.xiaowu.behappy.member.vo.UserAddressDetailVo;
 import org.xiaowu.behappy.order.dto.*;
@@ -34,21 +45,27 @@ import org.xiaowu.behappy.order.enums.OrderStatus;
 import org.xiaowu.behappy.order.vo.ConfirmOrderVo;
 import org.xiaowu.behappy.order.vo.OrderItemVo;
 import org.xiaowu.behappy.order.vo.UserAddrVo;
-import org.xiaowu.behappy.product.feign.ProdFeign;
-import org.xiaowu.behappy.product.feign.SkuFeign;
+import org.xiaowu.behappy.product.loader.ProductBatchLoader;
 import org.xiaowu.behappy.product.vo.ShopProdVo;
 import org.xiaowu.behappy.product.vo.ShopSkuVo;
+import org.xiaowu.behappy.ware.to.OrderCloseTo;
 
+import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
+import static org.xiaowu.behappy.common.core.executor.BulkheadExecutors.MEMBER;
 import static org.xiaowu.behappy.common.redis.constant.CacheConstant.CONFIRM_ORDER_CACHE;
+import static org.xiaowu.behappy.common.redis.constant.CacheConstant.ORDER_SUBMIT_FAILURE_CACHE;
 import static org.xiaowu.behappy.order.enums.BizCode.*;
 
 /**
@@ -60,24 +77,37 @@ import static org.xiaowu.behappy.order.enums.BizCode.*;
 @AllArgsConstructor
 public class OrderService extends ServiceImpl<OrderMapper, OrderEntity> implements IService<OrderEntity> {
 
+    /**
+     * 支付成功变更订单状态时,版本冲突的最大尝试次数
+     */
+    private static final int PAY_TRANSITION_ATTEMPTS = 3;
+
     private final UserAddrFeign userAddrFeign;
 
     private final CartFeign cartFeign;
 
-    private final ProdFeign prodFeign;
-
-    private final SkuFeign skuFeign;
+    private final ProductBatchLoader productBatchLoader;
 
     private final ResponseConvert responseConvert;
 
-    private final ThreadPoolExecutor executor;
-
     private final OrderSubmitService orderSubmitService;
 
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxService outboxService;
 
     private final MqProperties mqProperties;
 
+    private final OrderStateMachine orderStateMachine;
+
+    private final OrderSubmitProperties orderSubmitProperties;
+
+    private final DelayTaskService delayTaskService;
+
+    private final Snowflake snowflake;
+
+    private final ObjectMapper objectMapper;
+
+    private final BulkheadExecutors bulkheadExecutors;
+
     @SneakyThrows
     private List<ShopCartItemVo> getShopCartItemsByOrderItems(ConfimOrderDto confimOrderDto, Long userId) {
         // 既没有勾选购买项也没有购物车
@@ -86,23 +116,14 @@ public class OrderService extends ServiceImpl<OrderMapper, OrderEntity> implemen
         }
         // 立即购买的情况
         if (CollectionUtil.isEmpty(confimOrderDto.getBasketIds()) && confimOrderDto.getOrderItemDto() != null) {
-            CompletableFuture<List<ShopSkuVo>> skuCompletableFuture = CompletableFuture.supplyAsync(() -> {
-                Response<List<ShopSkuVo>> skuResponse = skuFeign.shopSkuVoList(Collections.singletonList(confimOrderDto.getOrderItemDto().getSkuId()));
-                List<ShopSkuVo> skuVoList = responseConvert.convert(skuResponse, new TypeReference<List<ShopSkuVo>>() {
-                });
-                return skuVoList;
-            }, executor);
-            CompletableFuture<List<ShopProdVo>> prodCompletableFuture = CompletableFuture.supplyAsync(() -> {
-                Response<List<ShopProdVo>> prodResponse = prodFeign.shopProdVoList(Collections.singletonList(confimOrderDto.getOrderItemDto().getProdId()));
-                List<ShopProdVo> shopProdVos = responseConvert.convert(prodResponse, new TypeReference<List<ShopProdVo>>() {
-                });
-                return shopProdVos;
-            }, executor);
+            // 与其他请求合并批量查询
+            CompletableFuture<ShopSkuVo> skuCompletableFuture = productBatchLoader.loadSku(confimOrderDto.getOrderItemDto().getSkuId());
+            CompletableFuture<ShopProdVo> prodCompletableFuture = productBatchLoader.loadProd(confimOrderDto.getOrderItemDto().getProdId());
             CompletableFuture.allOf(skuCompletableFuture, prodCompletableFuture).get();
-            List<ShopSkuVo> shopSkuVos = skuCompletableFuture.get();
-            List<ShopProdVo> shopProdVos = prodCompletableFuture.get();
+            ShopSkuVo shopSkuVo = skuCompletableFuture.get();
+            ShopProdVo shopProdVo = prodCompletableFuture.get();
             // 判断状态
-            if (CollUtil.isEmpty(shopProdVos) || CollUtil.isEmpty(shopSkuVos)) {
+            if (shopProdVo == null || shopSkuVo == null) {
                 throw new BeHappyException(GOODS_CAN_NOT_IDENTIFY.getCode(), GOODS_CAN_NOT_IDENTIFY.getMsg());
             }
             // 拿到购物车的所有item
@@ -111,11 +132,11 @@ public class OrderService extends ServiceImpl<OrderMapper, OrderEntity> implemen
             cartItemVo.setSkuId(confimOrderDto.getOrderItemDto().getSkuId());
             cartItemVo.setProdCount(confimOrderDto.getOrderItemDto().getProdCount());
             cartItemVo.setProdId(confimOrderDto.getOrderItemDto().getProdId());
-            cartItemVo.setSkuName(shopSkuVos.get(0).getSkuName());
-            cartItemVo.setPic(StrUtil.isBlank(shopSkuVos.get(0).getPic()) ? shopProdVos.get(0).getPic() : shopSkuVos.get(0).getPic());
-            cartItemVo.setProdName(shopSkuVos.get(0).getProdName());
-            cartItemVo.setProductTotalAmount(NumberUtil.mul(shopSkuVos.get(0).getPrice(), confimOrderDto.getOrderItemDto().getProdCount()));
-            cartItemVo.setPrice(shopSkuVos.get(0).getPrice());
+            cartItemVo.setSkuName(shopSkuVo.getSkuName());
+            cartItemVo.setPic(StrUtil.isBlank(shopSkuVo.getPic()) ? shopProdVo.getPic() : shopSkuVo.getPic());
+            cartItemVo.setProdName(shopSkuVo.getProdName());
+            cartItemVo.setProductTotalAmount(NumberUtil.mul(shopSkuVo.getPrice(), confimOrderDto.getOrderItemDto().getProdCount()));
+            cartItemVo.setPrice(shopSkuVo.getPrice());
             return Collections.singletonList(cartItemVo);
         }
         // 购物车购买的情况
@@ -136,12 +157,22 @@ public class OrderService extends ServiceImpl<OrderMapper, OrderEntity> implemen
      * @return
      */
     public ConfirmOrderVo confirmOrder(ConfimOrderDto confimOrderDto, Long userId) {
-        //1. 订单的地址信息
-        Response<UserAddressDetailVo> userAddrResponse = userAddrFeign.getUserAddrByUserIdAndAddrId(userId, confimOrderDto.getAddrId());
-        UserAddressDetailVo addressDetailVo = responseConvert.convert(userAddrResponse, new TypeReference<UserAddressDetailVo>() {
-        });
+        //1. 订单的地址信息,与购物车/商品查询并行
+        CompletableFuture<UserAddressDetailVo> addressFuture = CompletableFuture.supplyAsync(() -> {
+            Response<UserAddressDetailVo> userAddrResponse = userAddrFeign.getUserAddrByUserIdAndAddrId(userId, confimOrderDto.getAddrId());
+            return responseConvert.convert(userAddrResponse, new TypeReference<UserAddressDetailVo>() {
+            });
+        }, bulkheadExecutors.get(MEMBER));
         //2. 判断是立即购买还是购物车进入
-        List<ShopCartItemVo> shopCartItemsByOrderItems = getShopCartItemsByOrderItems(confimOrderDto, userId);
+        List<ShopCartItemVo> shopCartItemsByOrderItems;
+        try {
+            shopCartItemsByOrderItems = getShopCartItemsByOrderItems(confimOrderDto, userId);
+        } catch (RuntimeException e) {
+            // 地址查询使用当前请求的属性,不能在请求结束后继续执行
+            awaitQuietly(addressFuture);
+            throw e;
+        }
+        UserAddressDetailVo addressDetailVo = join(addressFuture);
         List<OrderItemVo> orderItemVos = BeanUtil.copyToList(shopCartItemsByOrderItems, OrderItemVo.class, CopyOptions.create());
         UserAddrVo userAddrVo = BeanUtil.copyProperties(addressDetailVo, UserAddrVo.class);
         //3. 计算总价,总数等
@@ -162,6 +193,23 @@ public class OrderService extends ServiceImpl<OrderMapper, OrderEntity> implemen
         return confirmOrderVo;
     }
 
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // 保留业务异常,由全局异常处理返回错误码
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private static void awaitQuietly(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException | CancellationException ignored) {
+            // 调用方已经失败,忽略并行任务的结果
+        }
+    }
+
     public Long submitOrder(SubmitOrderDto submitOrderDto, Long userId) {
         ConfirmOrderVo confirmOrderVo = CacheManagerUtil.getCache(CONFIRM_ORDER_CACHE, userId.toString());
         // 30分钟未提交,已过期
@@ -170,13 +218,65 @@ public class OrderService extends ServiceImpl<OrderMapper, OrderEntity> implemen
         }
         List<OrderItemVo> orderItemVos = confirmOrderVo.getOrderItemVos();
         orderItemVos.forEach(orderItemVo -> orderItemVo.setRemarks(submitOrderDto.getRemarks()));
-        Long orderNum = orderSubmitService.submit(userId, confirmOrderVo, submitOrderDto);
+        Long orderNum;
+        if (orderSubmitProperties.isAsyncEnabled()) {
+            // 异步下单,入队后立即返回订单号
+            orderNum = snowflake.nextId();
+            OrderSubmitTo orderSubmitTo = new OrderSubmitTo();
+            orderSubmitTo.setOrderNum(orderNum);
+            orderSubmitTo.setUserId(userId);
+            orderSubmitTo.setConfirmOrderVo(confirmOrderVo);
+            orderSubmitTo.setSubmitOrderDto(submitOrderDto);
+            delayTaskService.schedule(OrderSubmitDelayTaskHandler.TOPIC, toJson(orderSubmitTo), Duration.ZERO);
+        } else {
+            orderNum = orderSubmitService.submit(userId, confirmOrderVo, submitOrderDto);
+        }
         // 清除缓存
         CacheManagerUtil.evictCache(CONFIRM_ORDER_CACHE, userId.toString());
         // 返回订单号
         return orderNum;
     }
 
+    /**
+     * 异步下单依赖redis延迟任务,未开启时启动失败,避免静默退化为同步下单
+     */
+    @PostConstruct
+    public void checkSubmitMode() {
+        if (orderSubmitProperties.isAsyncEnabled() && !delayTaskService.isEnabled()) {
+            throw new IllegalStateException("order-submit.async-enabled=true 需要同时开启 delay-task.enabled");
+        }
+    }
+
+    /**
+     * 查询下单结果
+     * 异步下单时订单还未落库返回null(处理中),下单失败时抛出失败原因
+     * 只能查询自己的订单
+     * @param orderNum
+     * @param userId
+     * @return 订单状态
+     */
+    public Integer getSubmitStatus(Long orderNum, Long userId) {
+        LambdaQueryWrapper<OrderEntity> queryWrapper = Wrappers.<OrderEntity>lambdaQuery().
+                select(OrderEntity::getStatus).
+                eq(OrderEntity::getOrderNumber, orderNum).
+                eq(OrderEntity::getUserId, userId);
+        OrderEntity orderEntity = baseMapper.selectOne(queryWrapper);
+        if (ObjectUtil.isNotNull(orderEntity)) {
+            return orderEntity.getStatus();
+        }
+        Response<Void> failure = CacheManagerUtil.getCache(ORDER_SUBMIT_FAILURE_CACHE,
+                OrderSubmitDelayTaskHandler.failureKey(userId, orderNum));
+        if (ObjectUtil.isNotNull(failure)) {
+            throw new BeHappyException(failure.getCode(), failure.getMsg());
+        }
+        return null;
+    }
+
+    @SneakyThrows
+    private String toJson(Object value) {
+        return objectMapper.writeValueAsString(value);
+    }
+
     /**
      * 查询订单状态
      * @param orderNum
@@ -193,21 +293,54 @@ public class OrderService extends ServiceImpl<OrderMapper, OrderEntity> implemen
         return null;
     }
 
+    /**
+     * 批量查询订单状态,一条IN查询
+     * @param orderNums
+     * @return orderNum -> 订单状态, 不存在的订单不返回
+     */
+    public Map<Long, Integer> getOrderStatuses(List<Long> orderNums) {
+        if (CollUtil.isEmpty(orderNums)) {
+            return Collections.emptyMap();
+        }
+        LambdaQueryWrapper<OrderEntity> queryWrapper = Wrappers.<OrderEntity>lambdaQuery().
+                select(OrderEntity::getOrderNumber, OrderEntity::getStatus).
+                in(OrderEntity::getOrderNumber, orderNums);
+        return baseMapper.selectList(queryWrapper).stream().
+                collect(Collectors.toMap(OrderEntity::getOrderNumber, OrderEntity::getStatus, (a, b) -> a));
+    }
+
+    @Transactional(rollbackFor = Exception.class)
     public void closeOrder(Long orderNum) {
         log.info("OrderService - closeOrder: {}", orderNum);
+        closeOrders(Collections.singletonList(orderNum));
+    }
 
-        // 查询订单状态
-        LambdaQueryWrapper<OrderEntity> queryWrapper = Wrappers.<OrderEntity>lambdaQuery().
-                eq(OrderEntity::getOrderNumber, orderNum);
-        OrderEntity orderEntity = baseMapper.selectOne(queryWrapper);
-        if (orderEntity.getStatus().equals(OrderStatus.UNPAY.value())) {
-            // 更新为关闭状态
-            orderEntity.setStatus(OrderStatus.CLOSE.value());
-            baseMapper.updateById(orderEntity);
+    /**
+     * 批量关闭订单
+     * 按版本号只关闭仍是待支付的订单,只为实际关闭的订单发送一条释放库存消息,
+     * 已支付或已关闭的订单不再重复释放库存
+     * @param orderNums
+     * @return 实际关闭的订单
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public List<Long> closeOrders(List<Long> orderNums) {
+        if (CollUtil.isEmpty(orderNums)) {
+            return Collections.emptyList();
         }
+        // 更新为关闭状态
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> closeOrderNums = orderStateMachine.fireAll(orderNums, OrderEvent.CLOSE,
+                updateWrapper -> updateWrapper.set(OrderEntity::getCancelTime, now));
+        if (closeOrderNums.isEmpty()) {
+            return closeOrderNums;
+        }
+        log.info("OrderService - closeOrders: {}/{}", closeOrderNums.size(), orderNums.size());
         // 发送队列消息, 解锁库存
-        rabbitTemplate.convertAndSend(mqProperties.getEventExchange(),
-                mqProperties.getReleaseOtherRoutingKey(), orderNum);
+        OrderCloseTo orderCloseTo = new OrderCloseTo();
+        orderCloseTo.setOrderSns(closeOrderNums);
+        outboxService.send(mqProperties.getEventExchange(),
+                mqProperties.getReleaseOtherRoutingKey(), orderCloseTo);
+        return closeOrderNums;
     }
 
     public PayDto pay(OrderPayDto orderPayDto) {
@@ -230,14 +363,41 @@ public class OrderService extends ServiceImpl<OrderMapper, OrderEntity> implemen
         // 2.修改订单状态信息
         if (payAsyncDto.getTrade_status().equals("TRADE_SUCCESS") || payAsyncDto.getTrade_status().equals("TRADE_FINISHED")) {
             // 支付成功
-            String orderSn = payAsyncDto.getOut_trade_no();
-            LambdaUpdateWrapper<OrderEntity> updateWrapper = Wrappers.<OrderEntity>lambdaUpdate().
-                    set(OrderEntity::getStatus, OrderStatus.PADYED.value()).
-                    set(OrderEntity::getPayTime, LocalDateTime.now()).
-                    set(OrderEntity::getPayType, 2).
-                    set(OrderEntity::getPayType, 2).
-                    eq(OrderEntity::getOrderNumber, orderSn);
-            this.baseMapper.update(null, updateWrapper);
+            Long orderNum = Long.valueOf(payAsyncDto.getOut_trade_no());
+            LocalDateTime now = LocalDateTime.now();
+            TransitionResult result = TransitionResult.CONFLICT;
+            // 读取后被其他请求修改时重新读取,关闭与支付同时到达时最终只有一个成功
+            for (int i = 0; i < PAY_TRANSITION_ATTEMPTS && result == TransitionResult.CONFLICT; i++) {
+                LambdaQueryWrapper<OrderEntity> queryWrapper = Wrappers.<OrderEntity>lambdaQuery().
+                        select(OrderEntity::getOrderNumber, OrderEntity::getVersion).
+                        eq(OrderEntity::getOrderNumber, orderNum);
+                OrderEntity orderEntity = getOne(queryWrapper);
+                if (ObjectUtil.isNull(orderEntity)) {
+                    result = TransitionResult.NOT_FOUND;
+                    break;
+                }
+                result = orderStateMachine.fire(orderEntity, OrderEvent.PAY,
+                        updateWrapper -> updateWrapper.set(OrderEntity::getPayTime, now).set(OrderEntity::getPayType, 2));
+            }
+            if (result == TransitionResult.ILLEGAL) {
+                // 已支付、已发货等订单的重复通知或TRADE_FINISHED通知同样不能再支付,只有已关闭的订单需要退款,关闭是终态,重新读取即可
+                Integer status = getOrderStatus(orderNum);
+                if (!OrderStatus.CLOSE.value().equals(status)) {
+                    log.info("OrderService - handlePayResult: 订单 {} 状态 {}, 忽略支付通知 {}", orderNum, status, payAsyncDto.getTrade_status());
+                    return "success";
+                }
+                // 订单已关闭后才支付成功,库存已释放,原路退款
+                log.error("OrderService - handlePayResult: 订单 {} 已关闭, 支付宝交易号 {}, 发起退款", orderNum, payAsyncDto.getTrade_no());
+                OrderRefundTo orderRefundTo = new OrderRefundTo();
+                orderRefundTo.setOrderNum(orderNum);
+                orderRefundTo.setTradeNo(payAsyncDto.getTrade_no());
+                orderRefundTo.setRefundAmount(payAsyncDto.getTotal_amount());
+                outboxService.send(mqProperties.getEventExchange(), mqProperties.getOrderRefundRoutingKey(), orderRefundTo);
+            } else if (!result.isSuccess()) {
+                // 订单不存在或多次重试仍冲突,返回失败由支付宝重新通知
+                log.error("OrderService - handlePayResult: 订单 {} 支付结果处理失败: {}", orderNum, result);
+                return "fail";
+            }
         }
         return "success";
     }
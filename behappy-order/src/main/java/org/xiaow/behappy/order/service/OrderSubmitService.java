@@ -5,41 +5,45 @@ import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.lang.Snowflake;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.StrUtil;
-import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.xiaow.behappy.order.config.MqProperties;
 import org.xiaow.behappy.order.entity.OrderAddrEntity;
 import org.xiaow.behappy.order.entity.OrderEntity;
 import org.xiaow.behappy.order.entity.OrderItemEntity;
+import org.xiaow.behappy.order.listener.OrderCloseDelayTaskHandler;
 import org.xiaowu.behappy.basket.feign.CartFeign;
 import org.xiaowu.behappy.common.core.exception.BeHappyException;
+import org.xiaowu.behappy.common.core.executor.BulkheadExecutors;
 import org.xiaowu.behappy.common.core.util.Response;
-import org.xiaowu.behappy.common.core.util.ResponseConvert;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskService;
+import org.xiaowu.behappy.common.rmq.outbox.OutboxService;
 import org.xiaowu.behappy.order.dto.SubmitOrderDto;
 import org.xiaowu.behappy.order.enums.OrderStatus;
 import org.xiaowu.behappy.order.vo.ConfirmOrderVo;
 import org.xiaowu.behappy.order.vo.OrderItemVo;
 import org.xiaowu.behappy.order.vo.UserAddrVo;
-import org.xiaowu.behappy.product.feign.ProdFeign;
-import org.xiaowu.behappy.product.feign.SkuFeign;
-import org.xiaowu.behappy.product.vo.ShopProdVo;
-import org.xiaowu.behappy.product.vo.ShopSkuVo;
+import org.xiaowu.behappy.product.loader.ProductBatchLoader;
 import org.xiaowu.behappy.ware.dto.WareSkuLockDto;
 import org.xiaowu.behappy.ware.dto.WareSkuLockItemDto;
 import org.xiaowu.behappy.ware.feign.WareSkuFeign;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
+import static org.xiaowu.behappy.common.core.executor.BulkheadExecutors.CART;
+import static org.xiaowu.behappy.common.core.executor.BulkheadExecutors.PRODUCT;
+import static org.xiaowu.behappy.common.core.executor.BulkheadExecutors.WARE;
 import static org.xiaowu.behappy.order.enums.BizCode.GOODS_CAN_NOT_IDENTIFY;
 import static org.xiaowu.behappy.thirdparty.enums.BizCode.INSUFFICIENT_INVENTORY;
 
@@ -55,13 +59,9 @@ public class OrderSubmitService {
 
     private final Snowflake snowflake;
 
-    private final ProdFeign prodFeign;
+    private final ProductBatchLoader productBatchLoader;
 
-    private final SkuFeign skuFeign;
-
-    private final ThreadPoolExecutor executor;
-
-    private final ResponseConvert responseConvert;
+    private final BulkheadExecutors bulkheadExecutors;
 
     private final CartFeign cartFeign;
 
@@ -71,13 +71,32 @@ public class OrderSubmitService {
 
     private final WareSkuFeign wareSkuFeign;
 
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxService outboxService;
 
     private final MqProperties mqProperties;
 
-    @SneakyThrows
+    private final DelayTaskService delayTaskService;
+
     @Transactional(rollbackFor = Exception.class)
     public Long submit(Long userId, ConfirmOrderVo confirmOrderVo, SubmitOrderDto submitOrderDto) {
+        return submit(snowflake.nextId(), userId, confirmOrderVo, submitOrderDto);
+    }
+
+    /**
+     * 使用预先分配的订单号下单
+     * 订单号已存在时直接返回,异步下单重复投递时不会重复下单
+     * @param orderNum
+     * @param userId
+     * @param confirmOrderVo
+     * @param submitOrderDto
+     * @return
+     */
+    @SneakyThrows
+    @Transactional(rollbackFor = Exception.class)
+    public Long submit(Long orderNum, Long userId, ConfirmOrderVo confirmOrderVo, SubmitOrderDto submitOrderDto) {
+        if (orderService.getOrderStatus(orderNum) != null) {
+            return orderNum;
+        }
         // 1. 保存订单地址
         UserAddrVo userAddrVo = confirmOrderVo.getUserAddrVo();
         OrderAddrEntity orderAddrEntity = BeanUtil.copyProperties(userAddrVo, OrderAddrEntity.class);
@@ -85,26 +104,19 @@ public class OrderSubmitService {
         orderAddrService.save(orderAddrEntity);
 
         // 2. 生成订单
-        List<Long> prodIds = confirmOrderVo.getOrderItemVos().stream().map(OrderItemVo::getProdId).collect(Collectors.toList());
-        List<Long> skuIds = confirmOrderVo.getOrderItemVos().stream().map(OrderItemVo::getSkuId).collect(Collectors.toList());
+        Set<Long> prodIds = confirmOrderVo.getOrderItemVos().stream().map(OrderItemVo::getProdId).collect(Collectors.toSet());
+        Set<Long> skuIds = confirmOrderVo.getOrderItemVos().stream().map(OrderItemVo::getSkuId).collect(Collectors.toSet());
         CompletableFuture<Void> prodCompletableFuture = CompletableFuture.runAsync(() -> {
-            Response<List<ShopProdVo>> prodResponse = prodFeign.shopProdVoList(prodIds);
-            int size = responseConvert.convert(prodResponse, new TypeReference<List<ShopProdVo>>() {
-            }).size();
-            if (prodIds.size() != size) {
+            if (prodIds.size() != productBatchLoader.prods(prodIds).size()) {
                 throw new BeHappyException(GOODS_CAN_NOT_IDENTIFY.getCode(), GOODS_CAN_NOT_IDENTIFY.getMsg());
             }
-        }, executor);
+        }, bulkheadExecutors.get(PRODUCT));
         CompletableFuture<Void> skuCompletableFuture = CompletableFuture.runAsync(() -> {
-            Response<List<ShopSkuVo>> skuResponse = skuFeign.shopSkuVoList(skuIds);
-            int size = responseConvert.convert(skuResponse, new TypeReference<List<ShopSkuVo>>() {
-            }).size();
-            if (skuIds.size() != size) {
+            if (skuIds.size() != productBatchLoader.skus(skuIds).size()) {
                 throw new BeHappyException(GOODS_CAN_NOT_IDENTIFY.getCode(), GOODS_CAN_NOT_IDENTIFY.getMsg());
             }
-        }, executor);
+        }, bulkheadExecutors.get(PRODUCT));
         CompletableFuture.allOf(skuCompletableFuture, prodCompletableFuture).get();
-        long orderNum = snowflake.nextId();
         // 订单商品名称
         StringBuilder orderProdName = new StringBuilder(100);
         LocalDateTime now = LocalDateTime.now();
@@ -155,26 +167,55 @@ public class OrderSubmitService {
         // 商品总数
         orderEntity.setProductNums(confirmOrderVo.getTotalCount());
 
-        // 删除用户购物车
-        if (CollUtil.isNotEmpty(basketIds)) {
-            cartFeign.deleteCartItem(basketIds, userId);
+        // 删除用户购物车,与插入订单、锁库存并行
+        CompletableFuture<Void> cartCompletableFuture = CollUtil.isEmpty(basketIds) ? CompletableFuture.completedFuture(null) :
+                CompletableFuture.runAsync(() -> cartFeign.deleteCartItem(basketIds, userId), bulkheadExecutors.get(CART));
+        Response response;
+        try {
+            // 插入订单
+            orderService.save(orderEntity);
+            orderItemService.saveBatch(orderItemEntities);
+            WareSkuLockDto wareSkuLockDto = new WareSkuLockDto();
+            wareSkuLockDto.setOrderSn(orderNum);
+            wareSkuLockDto.setLocks(wareSkuLockItemDtos);
+            // 远程锁库存
+            response = join(CompletableFuture.supplyAsync(() -> wareSkuFeign.orderLockStock(wareSkuLockDto), bulkheadExecutors.get(WARE)));
+        } catch (RuntimeException e) {
+            // 购物车删除不能在下单结束后继续执行
+            awaitQuietly(cartCompletableFuture);
+            throw e;
         }
-        // 插入订单
-        orderService.save(orderEntity);
-        orderItemService.saveBatch(orderItemEntities);
-        WareSkuLockDto wareSkuLockDto = new WareSkuLockDto();
-        wareSkuLockDto.setOrderSn(orderNum);
-        wareSkuLockDto.setLocks(wareSkuLockItemDtos);
-        // 远程锁库存
-        Response response = wareSkuFeign.orderLockStock(wareSkuLockDto);
+        // 购物车删除失败时回滚订单
+        join(cartCompletableFuture);
 
         if (response.getCode() != 0) {
             // 库存不足
             throw new BeHappyException(INSUFFICIENT_INVENTORY.getCode(), INSUFFICIENT_INVENTORY.getMsg());
         }
         // 库存足够 锁定成功 给MQ发送消息(等待支付成功,如果未支付,则需要close掉订单)
-        rabbitTemplate.convertAndSend(mqProperties.getEventExchange(), mqProperties.getCreateOrderRoutingKey(), orderNum);
+        if (delayTaskService.isEnabled()) {
+            delayTaskService.schedule(OrderCloseDelayTaskHandler.TOPIC, String.valueOf(orderNum), Duration.ofMillis(mqProperties.getTtl()));
+        } else {
+            outboxService.send(mqProperties.getEventExchange(), mqProperties.getCreateOrderRoutingKey(), orderNum);
+        }
         // 返回订单号
         return orderNum;
     }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // 保留业务异常,由全局异常处理返回错误码
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private static void awaitQuietly(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException | CancellationException ignored) {
+            // 下单已经失败,忽略并行任务的结果
+        }
+    }
 }
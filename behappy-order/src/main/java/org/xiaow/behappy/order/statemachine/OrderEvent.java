@@ -0,0 +1,56 @@
+package org.xiaow.behappy.order.statemachine;
+
+import org.xiaowu.behappy.order.enums.OrderStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 订单状态变更事件,声明合法的状态流转
+ * @author xiaowu
+ */
+public enum OrderEvent {
+
+    /**
+     * 支付成功: 待付款 -> 待发货
+     */
+    PAY(OrderStatus.PADYED, OrderStatus.UNPAY),
+
+    /**
+     * 超时/取消关闭: 待付款 -> 交易失败
+     */
+    CLOSE(OrderStatus.CLOSE, OrderStatus.UNPAY),
+
+    /**
+     * 发货: 待发货 -> 待收货
+     */
+    CONSIGN(OrderStatus.CONSIGNMENT, OrderStatus.PADYED),
+
+    /**
+     * 确认收货: 待收货 -> 待评价
+     */
+    CONFIRM(OrderStatus.CONFIRM, OrderStatus.CONSIGNMENT),
+
+    /**
+     * 评价: 待评价 -> 交易成功
+     */
+    FINISH(OrderStatus.SUCCESS, OrderStatus.CONFIRM);
+
+    private final OrderStatus target;
+
+    private final List<OrderStatus> sources;
+
+    OrderEvent(OrderStatus target, OrderStatus... sources) {
+        this.target = target;
+        this.sources = Collections.unmodifiableList(Arrays.asList(sources));
+    }
+
+    public OrderStatus target() {
+        return target;
+    }
+
+    public List<OrderStatus> sources() {
+        return sources;
+    }
+}
@@ -0,0 +1,140 @@
+package org.xiaow.behappy.order.statemachine;
+
+import cn.hutool.core.util.ObjectUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.xiaow.behappy.order.entity.OrderEntity;
+import org.xiaow.behappy.order.mapper.OrderMapper;
+import org.xiaowu.behappy.order.enums.OrderStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 订单状态机
+ * 每次状态变更是一条 status + version 的compare-and-set update,版本号来自调用方读取的订单,不加锁,
+ * 支付回调和超时关闭同时到达时只有一个能成功,失败方得到明确的结果而不是异常,
+ * 只有更新失败时才查询一次订单状态,用来区分重复通知、非法变更和版本冲突
+ * 指标 order.state.transition: 按事件和结果统计耗时与次数,冲突率 = CONFLICT / 总数
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderStateMachine {
+
+    private static final String METRIC_NAME = "order.state.transition";
+
+    private final OrderMapper orderMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    public TransitionResult fire(OrderEntity orderEntity, OrderEvent event) {
+        return fire(orderEntity, event, null);
+    }
+
+    /**
+     * 变更订单状态
+     * @param orderEntity 读取到的订单,至少包含订单号和版本号,读取后被其他请求修改时返回CONFLICT
+     * @param event
+     * @param extraSets 同一条update中需要一起更新的字段
+     * @return
+     */
+    public TransitionResult fire(OrderEntity orderEntity, OrderEvent event, Consumer<LambdaUpdateWrapper<OrderEntity>> extraSets) {
+        Long orderNum = orderEntity.getOrderNumber();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        LambdaUpdateWrapper<OrderEntity> updateWrapper = Wrappers.<OrderEntity>lambdaUpdate().
+                set(OrderEntity::getStatus, event.target().value()).
+                setSql("version = version + 1").
+                eq(OrderEntity::getOrderNumber, orderNum).
+                in(OrderEntity::getStatus, sourceValues(event)).
+                eq(OrderEntity::getVersion, orderEntity.getVersion());
+        if (extraSets != null) {
+            extraSets.accept(updateWrapper);
+        }
+        TransitionResult result = orderMapper.update(null, updateWrapper) == 1 ? TransitionResult.SUCCESS : resolveFailure(orderNum, event);
+        sample.stop(timer(event, result));
+        if (!result.isSuccess()) {
+            log.warn("OrderStateMachine - {} {}: {}", orderNum, event, result);
+        }
+        return result;
+    }
+
+    /**
+     * 批量变更订单状态
+     * 先用一致性读(不加锁)找出符合状态的订单及版本号,再逐个用 状态 + 版本号 做compare-and-set,
+     * 只返回本事务更新成功的订单,期间被其他请求变更的订单版本号不匹配,不依赖事务隔离级别
+     * 需要在事务中调用
+     * @param orderNums
+     * @param event
+     * @param extraSets
+     * @return 实际变更的订单
+     */
+    public List<Long> fireAll(List<Long> orderNums, OrderEvent event, Consumer<LambdaUpdateWrapper<OrderEntity>> extraSets) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        LambdaQueryWrapper<OrderEntity> queryWrapper = Wrappers.<OrderEntity>lambdaQuery().
+                select(OrderEntity::getOrderNumber, OrderEntity::getVersion).
+                in(OrderEntity::getOrderNumber, orderNums).
+                in(OrderEntity::getStatus, sourceValues(event));
+        List<Long> changedOrderNums = new ArrayList<>();
+        for (OrderEntity orderEntity : orderMapper.selectList(queryWrapper)) {
+            LambdaUpdateWrapper<OrderEntity> updateWrapper = Wrappers.<OrderEntity>lambdaUpdate().
+                    set(OrderEntity::getStatus, event.target().value()).
+                    setSql("version = version + 1").
+                    eq(OrderEntity::getOrderNumber, orderEntity.getOrderNumber()).
+                    in(OrderEntity::getStatus, sourceValues(event)).
+                    eq(OrderEntity::getVersion, orderEntity.getVersion());
+            if (extraSets != null) {
+                extraSets.accept(updateWrapper);
+            }
+            if (orderMapper.update(null, updateWrapper) == 1) {
+                changedOrderNums.add(orderEntity.getOrderNumber());
+            }
+        }
+        sample.stop(Timer.builder(METRIC_NAME).
+                tag("event", event.name()).
+                tag("result", "BATCH").
+                register(meterRegistry));
+        meterRegistry.counter(METRIC_NAME + ".batch.orders", "event", event.name(), "result", TransitionResult.SUCCESS.name()).
+                increment(changedOrderNums.size());
+        meterRegistry.counter(METRIC_NAME + ".batch.orders", "event", event.name(), "result", TransitionResult.ILLEGAL.name()).
+                increment(orderNums.size() - changedOrderNums.size());
+        return changedOrderNums;
+    }
+
+    private TransitionResult resolveFailure(Long orderNum, OrderEvent event) {
+        LambdaQueryWrapper<OrderEntity> queryWrapper = Wrappers.<OrderEntity>lambdaQuery().
+                select(OrderEntity::getStatus).
+                eq(OrderEntity::getOrderNumber, orderNum);
+        OrderEntity orderEntity = orderMapper.selectOne(queryWrapper);
+        if (ObjectUtil.isNull(orderEntity)) {
+            return TransitionResult.NOT_FOUND;
+        }
+        if (event.target().value().equals(orderEntity.getStatus())) {
+            return TransitionResult.ALREADY;
+        }
+        if (sourceValues(event).contains(orderEntity.getStatus())) {
+            return TransitionResult.CONFLICT;
+        }
+        return TransitionResult.ILLEGAL;
+    }
+
+    private Timer timer(OrderEvent event, TransitionResult result) {
+        return Timer.builder(METRIC_NAME).
+                tag("event", event.name()).
+                tag("result", result.name()).
+                register(meterRegistry);
+    }
+
+    private static List<Integer> sourceValues(OrderEvent event) {
+        return event.sources().stream().map(OrderStatus::value).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,37 @@
+package org.xiaow.behappy.order.statemachine;
+
+/**
+ * 订单状态变更结果
+ * @author xiaowu
+ */
+public enum TransitionResult {
+
+    /**
+     * 变更成功
+     */
+    SUCCESS,
+
+    /**
+     * 订单已经是目标状态(重复通知),无需处理
+     */
+    ALREADY,
+
+    /**
+     * 当前状态不允许该变更,比如已关闭的订单收到支付成功
+     */
+    ILLEGAL,
+
+    /**
+     * 版本号不匹配,订单在读取后被其他请求修改,可以重新读取后重试
+     */
+    CONFLICT,
+
+    /**
+     * 订单不存在
+     */
+    NOT_FOUND;
+
+    public boolean isSuccess() {
+        return this == SUCCESS || this == ALREADY;
+    }
+}
@@ -0,0 +1,28 @@
+package org.xiaow.behappy.order.to;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 退款命令,订单已关闭后才收到支付成功时发送
+ * @author xiaowu
+ */
+@Data
+public class OrderRefundTo implements Serializable {
+
+    private static final long serialVersionUID = 5180432716593082417L;
+
+    private Long orderNum;
+
+    /**
+     * 支付宝交易号
+     */
+    private String tradeNo;
+
+    /**
+     * 退款金额,即实际支付的金额
+     */
+    private String refundAmount;
+
+}
@@ -0,0 +1,29 @@
+package org.xiaow.behappy.order.to;
+
+import lombok.Data;
+import org.xiaowu.behappy.order.dto.SubmitOrderDto;
+import org.xiaowu.behappy.order.vo.ConfirmOrderVo;
+
+import java.io.Serializable;
+
+/**
+ * 异步下单命令
+ * @author xiaowu
+ */
+@Data
+public class OrderSubmitTo implements Serializable {
+
+    private static final long serialVersionUID = -1960365120482553087L;
+
+    /**
+     * 预先分配的订单号
+     */
+    private Long orderNum;
+
+    private Long userId;
+
+    private ConfirmOrderVo confirmOrderVo;
+
+    private SubmitOrderDto submitOrderDto;
+
+}
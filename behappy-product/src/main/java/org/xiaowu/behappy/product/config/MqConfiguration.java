@@ -0,0 +1,92 @@
+package org.xiaowu.behappy.product.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xiaowu.behappy.product.to.ProductChangedTo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author xiaowu
+ */
+@Configuration
+@RequiredArgsConstructor
+public class MqConfiguration {
+
+    private final ProdSearchProperties prodSearchProperties;
+
+    /**
+     * 商品变更广播交换机,订单、购物车等服务的每个实例绑定自己的临时队列
+     * @return
+     */
+    @Bean
+    public Exchange productChangedExchange() {
+        return new FanoutExchange(ProductChangedTo.EXCHANGE, true, false);
+    }
+
+    /**
+     * 搜索索引增量同步队列,开启商品搜索时才声明,避免无人消费时消息堆积
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "prod-search", name = "enabled", havingValue = "true")
+    public Queue prodIndexQueue() {
+        return new Queue(prodSearchProperties.getIndexQueue(), true, false, false);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "prod-search", name = "enabled", havingValue = "true")
+    public Binding prodIndexBinding() {
+        return new Binding(prodSearchProperties.getIndexQueue(), Binding.DestinationType.QUEUE,
+                ProductChangedTo.EXCHANGE, "", null);
+    }
+
+    /**
+     * 增量同步失败的消息放入重试队列,ttl到期后经默认交换机回到同步队列
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "prod-search", name = "enabled", havingValue = "true")
+    public Queue prodIndexRetryQueue() {
+        Map<String, Object> args = new HashMap<>();
+        args.put("x-dead-letter-exchange", "");
+        args.put("x-dead-letter-routing-key", prodSearchProperties.getIndexQueue());
+        args.put("x-message-ttl", prodSearchProperties.getIndexRetryDelayMillis());
+        return new Queue(prodSearchProperties.getIndexRetryQueue(), true, false, false, args);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "prod-search", name = "enabled", havingValue = "true")
+    public Queue prodIndexDeadQueue() {
+        return new Queue(prodSearchProperties.getIndexDeadQueue(), true, false, false);
+    }
+
+    /**
+     * 批量消费搜索索引同步队列的容器工厂
+     * 沿用spring.rabbitmq.listener.simple的配置(手动ack),预取数量不小于批大小
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "prod-search", name = "enabled", havingValue = "true")
+    public SimpleRabbitListenerContainerFactory prodIndexBatchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                               ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(prodSearchProperties.getSyncBatchSize());
+        factory.setPrefetchCount(prodSearchProperties.getSyncBatchSize());
+        factory.setReceiveTimeout(prodSearchProperties.getSyncReceiveTimeout());
+        return factory;
+    }
+}
@@ -0,0 +1,90 @@
+package org.xiaowu.behappy.product.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 商品搜索(elasticsearch)配置
+ * @author xiaowu
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "prod-search")
+public class ProdSearchProperties {
+
+    /**
+     * 是否使用elasticsearch搜索商品,关闭时使用数据库搜索
+     */
+    private boolean enabled = false;
+
+    /**
+     * 商品名、简介的分词器,安装了ik插件时可以使用ik_max_word
+     */
+    private String analyzer = "standard";
+
+    /**
+     * 搜索时使用的分词器,安装了ik插件时可以使用ik_smart
+     */
+    private String searchAnalyzer = "standard";
+
+    /**
+     * 搜索请求超时时间,超时后降级到数据库搜索,单位：毫秒
+     */
+    private int timeoutMillis = 500;
+
+    /**
+     * elasticsearch请求失败后,这段时间内直接使用数据库搜索,单位：毫秒
+     */
+    private long fallbackMillis = 30000;
+
+    /**
+     * from + size 的上限,与索引的max_result_window一致,超过时使用数据库搜索
+     */
+    private int maxResultWindow = 10000;
+
+    /**
+     * 全量重建时每批导入的商品数量
+     */
+    private int indexBatchSize = 500;
+
+    /**
+     * 增量同步队列,绑定到商品变更广播交换机
+     */
+    private String indexQueue = "product.search.index.queue";
+
+    /**
+     * 增量同步失败的消息延迟后重新投递的队列
+     */
+    private String indexRetryQueue = "product.search.index.retry.queue";
+
+    /**
+     * 超过最大重试次数的消息,需要人工处理或全量重建
+     */
+    private String indexDeadQueue = "product.search.index.dead.queue";
+
+    /**
+     * 增量同步失败后重新投递的延迟,单位：毫秒
+     */
+    private long indexRetryDelayMillis = 30000;
+
+    /**
+     * 增量同步最大重试次数
+     */
+    private int indexMaxRetries = 20;
+
+    /**
+     * 全量重建的最长时间,超过后其他实例不再双写新索引,单位：毫秒
+     */
+    private long reindexTimeoutMillis = 3600000;
+
+    /**
+     * 增量同步每批最大消息数
+     */
+    private int syncBatchSize = 200;
+
+    /**
+     * 增量同步凑批的最长等待时间,单位：毫秒
+     */
+    private long syncReceiveTimeout = 1000;
+}
@@ -0,0 +1,55 @@
+package org.xiaowu.behappy.product.es;
+
+import lombok.Data;
+import org.xiaowu.behappy.product.entity.ProductEntity;
+
+import java.math.BigDecimal;
+import java.time.ZoneId;
+
+/**
+ * 商品搜索索引文档,文档id为prodId
+ * @author xiaowu
+ */
+@Data
+public class ProdDoc {
+
+    private Long prodId;
+
+    private String prodName;
+
+    private String brief;
+
+    private String pic;
+
+    private Long categoryId;
+
+    private BigDecimal price;
+
+    private Integer soldNum;
+
+    /**
+     * 0 下架 1 上架,只搜索上架的商品
+     */
+    private Integer status;
+
+    /**
+     * 更新时间,毫秒时间戳
+     */
+    private Long updateTime;
+
+    public static ProdDoc of(ProductEntity productEntity) {
+        ProdDoc prodDoc = new ProdDoc();
+        prodDoc.setProdId(productEntity.getProdId());
+        prodDoc.setProdName(productEntity.getProdName());
+        prodDoc.setBrief(productEntity.getBrief());
+        prodDoc.setPic(productEntity.getPic());
+        prodDoc.setCategoryId(productEntity.getCategoryId());
+        prodDoc.setPrice(productEntity.getPrice());
+        prodDoc.setSoldNum(productEntity.getSoldNum());
+        prodDoc.setStatus(productEntity.getStatus());
+        if (productEntity.getUpdateTime() != null) {
+            prodDoc.setUpdateTime(productEntity.getUpdateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        return prodDoc;
+    }
+}
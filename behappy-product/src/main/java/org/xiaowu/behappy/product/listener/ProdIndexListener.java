@@ -0,0 +1,87 @@
+package org.xiaowu.behappy.product.listener;
+
+import cn.hutool.core.collection.CollUtil;
+import com.rabbitmq.client.Channel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.xiaowu.behappy.product.config.ProdSearchProperties;
+import org.xiaowu.behappy.product.service.ProdIndexService;
+import org.xiaowu.behappy.product.to.ProductChangedTo;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 商品变更后增量同步搜索索引
+ * 批量消费商品变更消息,一批内按prodId去重后一次bulk写入,整批一起ack
+ * 同步失败(elasticsearch不可用)时整批转入重试队列延迟后重新投递,不立即重回队列空转,
+ * 超过最大重试次数转入死信队列
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "prod-search", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ProdIndexListener {
+
+    private static final String RETRY_HEADER = "x-index-retries";
+
+    private final ProdIndexService prodIndexService;
+
+    private final MessageConverter messageConverter;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final ProdSearchProperties prodSearchProperties;
+
+    @RabbitListener(queues = "${prod-search.index-queue}", containerFactory = "prodIndexBatchContainerFactory")
+    public void listener(List<Message> messages, Channel channel) throws IOException {
+        long lastDeliveryTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+        try {
+            Set<Long> prodIds = new LinkedHashSet<>();
+            for (Message message : messages) {
+                Object payload = messageConverter.fromMessage(message);
+                if (payload instanceof ProductChangedTo) {
+                    List<Long> changedProdIds = ((ProductChangedTo) payload).getProdIds();
+                    if (CollUtil.isNotEmpty(changedProdIds)) {
+                        prodIds.addAll(changedProdIds);
+                    }
+                } else {
+                    log.warn("ProdIndexListener - 未知的消息: {}", payload);
+                }
+            }
+            prodIndexService.sync(prodIds);
+        } catch (Exception e) {
+            log.error("ProdIndexListener - listener: {}", e.getMessage());
+            try {
+                messages.forEach(this::retry);
+            } catch (Exception retryException) {
+                // 转入重试队列失败,重回队列
+                log.error("ProdIndexListener - retry: {}", retryException.getMessage());
+                channel.basicNack(lastDeliveryTag, true, true);
+                return;
+            }
+        }
+        channel.basicAck(lastDeliveryTag, true);
+    }
+
+    private void retry(Message message) {
+        Integer retries = message.getMessageProperties().getHeader(RETRY_HEADER);
+        int nextRetries = retries == null ? 1 : retries + 1;
+        message.getMessageProperties().setHeader(RETRY_HEADER, nextRetries);
+        if (nextRetries > prodSearchProperties.getIndexMaxRetries()) {
+            log.error("ProdIndexListener - 超过最大重试次数,转入死信队列: {}", new String(message.getBody()));
+            rabbitTemplate.send("", prodSearchProperties.getIndexDeadQueue(), message);
+        } else {
+            rabbitTemplate.send("", prodSearchProperties.getIndexRetryQueue(), message);
+        }
+    }
+}
@@ -30,7 +30,7 @@ import static org.xiaowu.behappy.common.redis.constant.CacheConstant.PRODUCT_CAT
 @Service
 public class CategoryService extends ServiceImpl<CategoryMapper, CategoryEntity> implements IService<CategoryEntity> {
 
-    @Cacheable(value = PRODUCT_CATEGORY_CACHE, key = "#parentId", unless = "#result == null")
+    @Cacheable(value = PRODUCT_CATEGORY_CACHE, key = "#parentId", sync = true)
     public List<CategoryVo> listCategoryByParentId(Long parentId) {
         LambdaQueryWrapper<CategoryEntity> queryWrapper = Wrappers.<CategoryEntity>lambdaQuery().
                 select(CategoryEntity::getCategoryId,
@@ -0,0 +1,354 @@
+package org.xiaowu.behappy.product.service;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.xiaowu.behappy.common.es.config.ESConfig;
+import org.xiaowu.behappy.common.es.config.util.EsUtils;
+import org.xiaowu.behappy.common.es.writer.EsBulkWriter;
+import org.xiaowu.behappy.product.config.ProdSearchProperties;
+import org.xiaowu.behappy.product.entity.ProductEntity;
+import org.xiaowu.behappy.product.es.ProdDoc;
+import org.xiaowu.behappy.product.mapper.ProductMapper;
+import org.xiaowu.behappy.product.vo.ReindexTaskVo;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 商品搜索索引
+ * 1. 搜索使用别名(elasticsearch.config.product-index),实际索引为 别名_时间戳
+ * 2. 商品变更消息由{@link org.xiaowu.behappy.product.listener.ProdIndexListener}合并后调用{@link #sync}增量同步
+ * 3. 全量重建: 建新索引 -> 按prodId顺序分批导入 -> 补同步导入期间变更的商品 -> 原子切换别名并删除旧索引,
+ *    重建中的新索引和导入期间增量同步过的商品记录在redis,所有实例的增量同步都同时写入新旧索引;
+ *    补同步时还会按更新时间找出导入开始后变更的商品,覆盖登记新索引之前就已开始的同步
+ * 4. 全量重建在后台线程执行,接口只返回任务id,通过任务id查询结果
+ * 开启商品搜索时,启动后别名不存在则全量重建,elasticsearch不可用不影响启动,搜索会降级到数据库
+ * @author xiaowu
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProdIndexService implements ApplicationRunner, DisposableBean {
+
+    private static final String MAPPING = "es/prod_index.json";
+
+    private static final String REINDEX_LOCK = "BEHAPPY-PRODUCT:SEARCH:REINDEX_LOCK";
+
+    /**
+     * 全量重建中的新索引
+     */
+    private static final String REINDEX_TARGET = "BEHAPPY-PRODUCT:SEARCH:REINDEX_TARGET";
+
+    /**
+     * 全量重建期间增量同步过的商品
+     */
+    private static final String REINDEX_DIRTY = "BEHAPPY-PRODUCT:SEARCH:REINDEX_DIRTY";
+
+    private static final String REINDEX_TASK = "BEHAPPY-PRODUCT:SEARCH:REINDEX_TASK:";
+
+    private static final Duration REINDEX_TASK_RETENTION = Duration.ofDays(1);
+
+    /**
+     * 按更新时间补同步时,兼容各实例之间的时钟偏差
+     */
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+
+    private final RestHighLevelClient restHighLevelClient;
+
+    private final ESConfig esConfig;
+
+    private final ProdSearchProperties prodSearchProperties;
+
+    private final ProductMapper productMapper;
+
+    private final EsBulkWriter esBulkWriter;
+
+    private final RedissonClient redissonClient;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final ExecutorService reindexExecutor = Executors.newSingleThreadExecutor(
+            ThreadFactoryBuilder.create().setNamePrefix("prod-reindex-").build());
+
+    /**
+     * @return 搜索使用的别名
+     */
+    public String indexName() {
+        return esConfig.getProductIndex();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!prodSearchProperties.isEnabled()) {
+            return;
+        }
+        try {
+            if (EsUtils.indexExists(indexName())) {
+                return;
+            }
+            log.info("ProdIndexService - 商品索引不存在,全量重建: {}", submitReindex());
+        } catch (Exception e) {
+            log.warn("ProdIndexService - 初始化商品索引失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        reindexExecutor.shutdownNow();
+    }
+
+    /**
+     * 提交全量重建任务,在后台线程执行
+     * @return 任务id
+     */
+    public String submitReindex() {
+        String taskId = IdUtil.fastSimpleUUID();
+        saveTask(taskId, ReindexTaskVo.RUNNING, null, null);
+        reindexExecutor.execute(() -> {
+            try {
+                long total = reindex();
+                saveTask(taskId, total < 0 ? ReindexTaskVo.SKIPPED : ReindexTaskVo.SUCCESS, total < 0 ? null : total, null);
+            } catch (Exception e) {
+                saveTask(taskId, ReindexTaskVo.FAILED, null, e.getMessage());
+            }
+        });
+        return taskId;
+    }
+
+    /**
+     * 查询全量重建任务
+     * @param taskId
+     * @return 任务不存在或已过期时返回null
+     */
+    public ReindexTaskVo getReindexTask(String taskId) {
+        Map<Object, Object> task = stringRedisTemplate.opsForHash().entries(REINDEX_TASK + taskId);
+        if (CollUtil.isEmpty(task)) {
+            return null;
+        }
+        ReindexTaskVo reindexTaskVo = new ReindexTaskVo();
+        reindexTaskVo.setTaskId(taskId);
+        reindexTaskVo.setStatus((String) task.get("status"));
+        Object total = task.get("total");
+        reindexTaskVo.setTotal(total == null ? null : Long.valueOf((String) total));
+        reindexTaskVo.setMessage((String) task.get("message"));
+        return reindexTaskVo;
+    }
+
+    private void saveTask(String taskId, String status, Long total, String message) {
+        Map<String, String> task = new HashMap<>(4);
+        task.put("status", status);
+        if (total != null) {
+            task.put("total", String.valueOf(total));
+        }
+        if (message != null) {
+            task.put("message", message);
+        }
+        String key = REINDEX_TASK + taskId;
+        stringRedisTemplate.opsForHash().putAll(key, task);
+        stringRedisTemplate.expire(key, REINDEX_TASK_RETENTION);
+    }
+
+    /**
+     * 全量重建索引,同一时刻只有一个实例在重建
+     * @return 导入的商品数量,已有实例在重建时返回-1
+     */
+    @SneakyThrows
+    public long reindex() {
+        RLock lock = redissonClient.getLock(REINDEX_LOCK);
+        if (!lock.tryLock()) {
+            return -1;
+        }
+        String newIndex = indexName() + "_" + System.currentTimeMillis();
+        LocalDateTime reindexStart = LocalDateTime.now();
+        try {
+            createIndex(newIndex);
+            stringRedisTemplate.delete(REINDEX_DIRTY);
+            stringRedisTemplate.opsForValue().set(REINDEX_TARGET, newIndex,
+                    Duration.ofMillis(prodSearchProperties.getReindexTimeoutMillis()));
+            long total = indexAll(newIndex);
+            // 导入时可能读到变更前的数据,重新同步
+            Set<Long> dirtyProdIds = reindexDirtyProdIds();
+            dirtyProdIds.addAll(changedProdIds(reindexStart.minus(CLOCK_SKEW)));
+            for (List<Long> prodIds : CollUtil.split(dirtyProdIds, prodSearchProperties.getIndexBatchSize())) {
+                syncTo(newIndex, prodIds);
+            }
+            swapAlias(newIndex);
+            log.info("ProdIndexService - 全量重建完成 {}, 导入商品: {}, 补同步: {}", newIndex, total, dirtyProdIds.size());
+            return total;
+        } catch (Exception e) {
+            log.error("ProdIndexService - 全量重建失败 {}: {}", newIndex, e.getMessage());
+            stringRedisTemplate.delete(REINDEX_TARGET);
+            deleteIndexQuietly(newIndex);
+            throw e;
+        } finally {
+            stringRedisTemplate.delete(Arrays.asList(REINDEX_TARGET, REINDEX_DIRTY));
+            lock.unlock();
+        }
+    }
+
+    private Set<Long> reindexDirtyProdIds() {
+        Set<String> members = stringRedisTemplate.opsForSet().members(REINDEX_DIRTY);
+        if (CollUtil.isEmpty(members)) {
+            return new LinkedHashSet<>();
+        }
+        return members.stream().map(Long::valueOf).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private List<Long> changedProdIds(LocalDateTime since) {
+        LambdaQueryWrapper<ProductEntity> queryWrapper = Wrappers.<ProductEntity>lambdaQuery().
+                select(ProductEntity::getProdId).
+                ge(ProductEntity::getUpdateTime, since);
+        return productMapper.selectList(queryWrapper).stream().
+                map(ProductEntity::getProdId).
+                collect(Collectors.toList());
+    }
+
+    /**
+     * 增量同步,数据库中存在的商品覆盖写入,不存在的删除
+     * 有实例在全量重建时同时写入新索引,并登记到redis供导入完成后补同步
+     * @param prodIds
+     */
+    public void sync(Collection<Long> prodIds) {
+        if (CollUtil.isEmpty(prodIds)) {
+            return;
+        }
+        String target = stringRedisTemplate.opsForValue().get(REINDEX_TARGET);
+        if (target != null) {
+            stringRedisTemplate.opsForSet().add(REINDEX_DIRTY, prodIds.stream().map(String::valueOf).toArray(String[]::new));
+        }
+        syncTo(indexName(), prodIds);
+        if (target != null) {
+            syncTo(target, prodIds);
+        }
+    }
+
+    private void syncTo(String indexName, Collection<Long> prodIds) {
+        if (CollUtil.isEmpty(prodIds)) {
+            return;
+        }
+        Map<Long, ProductEntity> productEntities = productMapper.selectBatchIds(prodIds).stream().
+                collect(Collectors.toMap(ProductEntity::getProdId, Function.identity()));
+        List<CompletableFuture<Void>> results = new ArrayList<>(prodIds.size());
+        for (Long prodId : prodIds) {
+            ProductEntity productEntity = productEntities.get(prodId);
+            if (productEntity == null) {
+                results.add(esBulkWriter.delete(indexName, String.valueOf(prodId)));
+            } else {
+                results.add(esBulkWriter.index(indexName, String.valueOf(prodId), ProdDoc.of(productEntity)));
+            }
+        }
+        esBulkWriter.flush();
+        await(results, "商品索引同步失败: " + indexName);
+    }
+
+    /**
+     * 等待{@link EsBulkWriter}写入完成,有失败时抛出异常
+     */
+    private void await(List<CompletableFuture<Void>> results, String message) {
+        try {
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException(message + ", " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @SneakyThrows
+    private void createIndex(String indexName) {
+        String source = IoUtil.read(new ClassPathResource(MAPPING).getInputStream(), StandardCharsets.UTF_8).
+                replace("${analyzer}", prodSearchProperties.getAnalyzer()).
+                replace("${searchAnalyzer}", prodSearchProperties.getSearchAnalyzer());
+        CreateIndexRequest createIndexRequest = new CreateIndexRequest(indexName).source(source, XContentType.JSON);
+        restHighLevelClient.indices().create(createIndexRequest, RequestOptions.DEFAULT);
+    }
+
+    private void deleteIndexQuietly(String indexName) {
+        try {
+            restHighLevelClient.indices().delete(new DeleteIndexRequest(indexName), RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            log.warn("ProdIndexService - 删除索引失败 {}: {}", indexName, e.getMessage());
+        }
+    }
+
+    /**
+     * 别名指向新索引,同一个请求中删除旧索引,切换是原子的
+     * 兼容之前直接以别名为名的索引
+     */
+    @SneakyThrows
+    private void swapAlias(String newIndex) {
+        Set<String> oldIndices = restHighLevelClient.indices().
+                getAlias(new GetAliasesRequest(indexName()), RequestOptions.DEFAULT).
+                getAliases().keySet();
+        IndicesAliasesRequest indicesAliasesRequest = new IndicesAliasesRequest();
+        indicesAliasesRequest.addAliasAction(AliasActions.add().index(newIndex).alias(indexName()));
+        if (oldIndices.isEmpty() && EsUtils.indexExists(indexName())) {
+            indicesAliasesRequest.addAliasAction(AliasActions.removeIndex().index(indexName()));
+        }
+        for (String oldIndex : oldIndices) {
+            indicesAliasesRequest.addAliasAction(AliasActions.removeIndex().index(oldIndex));
+        }
+        restHighLevelClient.indices().updateAliases(indicesAliasesRequest, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 按prodId顺序分批导入全部商品
+     * @param indexName
+     * @return 导入数量
+     */
+    private long indexAll(String indexName) {
+        long total = 0;
+        Long lastProdId = 0L;
+        // 每批一个结果,批之间不等待,由EsBulkWriter控制并发发送的bulk数
+        List<CompletableFuture<Void>> batchResults = new ArrayList<>();
+        while (true) {
+            LambdaQueryWrapper<ProductEntity> queryWrapper = Wrappers.<ProductEntity>lambdaQuery().
+                    gt(ProductEntity::getProdId, lastProdId).
+                    orderByAsc(ProductEntity::getProdId).
+                    last("LIMIT " + prodSearchProperties.getIndexBatchSize());
+            List<ProductEntity> productEntities = productMapper.selectList(queryWrapper);
+            if (CollUtil.isEmpty(productEntities)
+                    || batchResults.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                break;
+            }
+            CompletableFuture<?>[] results = productEntities.stream().
+                    map(productEntity -> esBulkWriter.index(indexName, String.valueOf(productEntity.getProdId()), ProdDoc.of(productEntity))).
+                    toArray(CompletableFuture[]::new);
+            batchResults.add(CompletableFuture.allOf(results));
+            total += productEntities.size();
+            lastProdId = productEntities.get(productEntities.size() - 1).getProdId();
+        }
+        esBulkWriter.flush();
+        await(batchResults, "商品导入索引失败: " + indexName);
+        return total;
+    }
+}
@@ -0,0 +1,127 @@
+package org.xiaowu.behappy.product.service;
+
+import cn.hutool.core.util.ObjectUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.stereotype.Service;
+import org.xiaowu.behappy.product.config.ProdSearchProperties;
+import org.xiaowu.behappy.product.vo.SearchProdVo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 商品搜索
+ * 优先使用elasticsearch(相关度、销量、价格排序),elasticsearch未开启、请求失败或翻页过深时使用数据库搜索,
+ * 请求失败后的fallbackMillis内不再访问elasticsearch,避免每次搜索都等待超时
+ * @author xiaowu
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProdSearchService {
+
+    private static final String[] INCLUDES = {"prodId", "pic", "prodName", "price", "brief"};
+
+    private final RestHighLevelClient restHighLevelClient;
+
+    private final ProdIndexService prodIndexService;
+
+    private final ProdService prodService;
+
+    private final ProdSearchProperties prodSearchProperties;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 降级到数据库的截止时间
+     */
+    private volatile long fallbackUntil = 0;
+
+    /**
+     * 分页排序搜索商品
+     * @param page
+     * @param prodName 商品名称
+     * @param sort     排序(0 默认排序,有关键字时按相关度 1销量排序 2价格排序)
+     * @param orderBy  排序(0升序 1降序)
+     * @return
+     */
+    public Page<SearchProdVo> searchProdPageByProdName(Page page, String prodName, Integer sort, Integer orderBy) {
+        long from = (page.getCurrent() - 1) * page.getSize();
+        if (!prodSearchProperties.isEnabled() || System.currentTimeMillis() < fallbackUntil
+                || from + page.getSize() > prodSearchProperties.getMaxResultWindow()) {
+            return prodService.searchProdPageByProdName(page, prodName, sort, orderBy);
+        }
+        try {
+            return search(page, (int) from, prodName, sort, orderBy);
+        } catch (Exception e) {
+            log.warn("ProdSearchService - elasticsearch搜索失败,{}ms内使用数据库搜索: {}", prodSearchProperties.getFallbackMillis(), e.getMessage());
+            fallbackUntil = System.currentTimeMillis() + prodSearchProperties.getFallbackMillis();
+            return prodService.searchProdPageByProdName(page, prodName, sort, orderBy);
+        }
+    }
+
+    private Page<SearchProdVo> search(Page page, int from, String prodName, Integer sort, Integer orderBy) throws Exception {
+        BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery().
+                filter(QueryBuilders.termQuery("status", 1));
+        boolean hasKeyword = StrUtil.isNotBlank(prodName);
+        if (hasKeyword) {
+            boolQueryBuilder.must(QueryBuilders.multiMatchQuery(prodName).
+                    field("prodName", 3).
+                    field("brief").
+                    operator(Operator.AND));
+        }
+        SortOrder sortOrder = ObjectUtil.equal(orderBy, 0) ? SortOrder.ASC : SortOrder.DESC;
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder().
+                query(boolQueryBuilder).
+                from(from).
+                size((int) page.getSize()).
+                trackTotalHits(true).
+                fetchSource(INCLUDES, null).
+                timeout(TimeValue.timeValueMillis(prodSearchProperties.getTimeoutMillis()));
+        if (ObjectUtil.equal(sort, 1)) {
+            sourceBuilder.sort("soldNum", sortOrder);
+        } else if (ObjectUtil.equal(sort, 2)) {
+            sourceBuilder.sort("price", sortOrder);
+        } else {
+            if (hasKeyword) {
+                sourceBuilder.sort(SortBuilders.scoreSort());
+            }
+            sourceBuilder.sort("updateTime", sortOrder);
+        }
+        // 保证翻页时顺序稳定
+        sourceBuilder.sort("prodId", SortOrder.ASC);
+
+        RequestConfig requestConfig = RequestConfig.custom().
+                setConnectTimeout(prodSearchProperties.getTimeoutMillis()).
+                setSocketTimeout(prodSearchProperties.getTimeoutMillis()).
+                build();
+        RequestOptions requestOptions = RequestOptions.DEFAULT.toBuilder().setRequestConfig(requestConfig).build();
+        SearchRequest searchRequest = new SearchRequest(prodIndexService.indexName()).source(sourceBuilder);
+        SearchResponse searchResponse = restHighLevelClient.search(searchRequest, requestOptions);
+
+        List<SearchProdVo> searchProdVos = new ArrayList<>(searchResponse.getHits().getHits().length);
+        for (SearchHit hit : searchResponse.getHits()) {
+            searchProdVos.add(objectMapper.readValue(hit.getSourceAsString(), SearchProdVo.class));
+        }
+        Page<SearchProdVo> voPage = new Page<>(page.getCurrent(), page.getSize(), searchResponse.getHits().getTotalHits().value);
+        voPage.setRecords(searchProdVos);
+        return voPage;
+    }
+}
@@ -4,6 +4,7 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.lang.Snowflake;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
@@ -14,11 +15,15 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.xiaowu.behappy.common.rmq.outbox.OutboxService;
 import org.xiaowu.behappy.product.dto.ProductUploadDto;
 import org.xiaowu.behappy.product.dto.SkuUploadDto;
 import org.xiaowu.behappy.product.entity.ProductEntity;
 import org.xiaowu.behappy.product.entity.SkuEntity;
 import org.xiaowu.behappy.product.mapper.ProductMapper;
+import org.xiaowu.behappy.product.to.ProductChangedTo;
 import org.xiaowu.behappy.product.vo.*;
 import org.xiaowu.common.mybatis.base.BaseEntity;
 
@@ -39,6 +44,10 @@ public class ProdService extends ServiceImpl<ProductMapper, ProductEntity> imple
 
     private final SkuService skuService;
 
+    private final OutboxService outboxService;
+
+    private final Snowflake snowflake;
+
     public Page<ProductVo> pageByCategoryId(Long categoryId, Page page) {
         // 查询正常状态下的商品
         LambdaQueryWrapper<ProductEntity> queryWrapper = Wrappers.<ProductEntity>lambdaQuery().
@@ -112,8 +121,10 @@ public class ProdService extends ServiceImpl<ProductMapper, ProductEntity> imple
     @Transactional(rollbackFor = Exception.class)
     public void deleteBatch(List<Long> prodIds) {
         // 删除商品
+        List<Long> skuIds = skuService.listSkuIdsByProdIds(prodIds);
         removeByIds(prodIds);
         skuService.removeSkuBySkuId(prodIds);
+        publishProductChanged(prodIds, skuIds);
         // todo 删除购物车
     }
 
@@ -130,6 +141,8 @@ public class ProdService extends ServiceImpl<ProductMapper, ProductEntity> imple
             if (CollUtil.isNotEmpty(productUploadDto.getSkuList())) {
                 skuService.insertBatch(productEntity.getProdId(), productUploadDto.getSkuList());
             }
+            // 新增的商品需要写入搜索索引
+            publishProductChanged(Collections.singletonList(productEntity.getProdId()), Collections.emptyList());
         } else {
             ProductEntity dbProduct = this.getById(productUploadDto.getProdId());
             // 更新
@@ -141,6 +154,8 @@ public class ProdService extends ServiceImpl<ProductMapper, ProductEntity> imple
             // 将所有该商品的sku标记为已删除状态
             List<Long> skuIds = skuEntities.stream().map(SkuEntity::getSkuId).collect(Collectors.toList());
             skuService.removeByIds(skuIds);
+            // 新增的sku不会在其他服务的缓存中,只需通知原有的sku
+            publishProductChanged(Collections.singletonList(productUploadDto.getProdId()), skuIds);
             List<SkuUploadDto> skuList = productUploadDto.getSkuList();
             if (CollectionUtil.isEmpty(skuList)) {
                 return;
@@ -162,4 +177,28 @@ public class ProdService extends ServiceImpl<ProductMapper, ProductEntity> imple
             }
         }
     }
+
+    /**
+     * 通知各服务失效商品缓存,同步商品搜索索引
+     * 开启发件箱时消息随事务落库,提交后才会发送;否则在事务提交后直接发送,
+     * 避免其他服务收到消息后重新加载到未提交的旧数据
+     * @param prodIds
+     * @param skuIds
+     */
+    private void publishProductChanged(List<Long> prodIds, List<Long> skuIds) {
+        ProductChangedTo productChangedTo = new ProductChangedTo();
+        productChangedTo.setProdIds(prodIds);
+        productChangedTo.setSkuIds(skuIds);
+        productChangedTo.setVersion(snowflake.nextId());
+        if (outboxService.isEnabled() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            outboxService.send(ProductChangedTo.EXCHANGE, "", productChangedTo);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxService.send(ProductChangedTo.EXCHANGE, "", productChangedTo);
+            }
+        });
+    }
 }
@@ -15,6 +15,7 @@ import org.xiaowu.behappy.product.vo.ShopSkuVo;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author xiaowu
@@ -55,6 +56,13 @@ public class SkuService extends ServiceImpl<SkuMapper, SkuEntity> implements ISe
         return shopSkuVos;
     }
 
+    public List<Long> listSkuIdsByProdIds(List<Long> prodIds) {
+        LambdaQueryWrapper<SkuEntity> queryWrapper = Wrappers.<SkuEntity>lambdaQuery().
+                select(SkuEntity::getSkuId).
+                in(SkuEntity::getProdId, prodIds);
+        return baseMapper.selectList(queryWrapper).stream().map(SkuEntity::getSkuId).collect(Collectors.toList());
+    }
+
     public void removeSkuBySkuId(List<Long> prodIds) {
         LambdaQueryWrapper<SkuEntity> queryWrapper = new LambdaQueryWrapper<>();
         queryWrapper.in(SkuEntity::getProdId, prodIds);
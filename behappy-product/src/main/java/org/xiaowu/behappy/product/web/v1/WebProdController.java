@@ -12,10 +12,12 @@ import org.xiaowu.behappy.product.dto.ProdPageDto;
 import org.xiaowu.behappy.product.dto.ProductUploadDto;
 import org.xiaowu.behappy.product.entity.ProductEntity;
 import org.xiaowu.behappy.product.entity.SkuEntity;
+import org.xiaowu.behappy.product.service.ProdIndexService;
 import org.xiaowu.behappy.product.service.ProdService;
 import org.xiaowu.behappy.product.service.SkuService;
 import org.xiaowu.behappy.product.vo.ProdInfoVo;
 import org.xiaowu.behappy.product.vo.ProductPageVo;
+import org.xiaowu.behappy.product.vo.ReindexTaskVo;
 import org.xiaowu.behappy.product.vo.SkuInfoVo;
 
 import javax.validation.Valid;
@@ -35,6 +37,8 @@ public class WebProdController {
 
     private final SkuService skuService;
 
+    private final ProdIndexService prodIndexService;
+
     /**
      * 分页获取商品信息
      */
@@ -93,4 +97,26 @@ public class WebProdController {
         return Response.ok(true);
     }
 
+    /**
+     * 全量重建商品搜索索引
+     * @apiNote 后台执行,重建完成后原子切换别名,重建期间搜索不受影响
+     * @author xiaowu
+     * @return org.xiaowu.behappy.common.core.util.Response<java.lang.String> 任务id
+     */
+    @PostMapping("/search/reindex")
+    public Response<String> reindex() {
+        return Response.ok(prodIndexService.submitReindex());
+    }
+
+    /**
+     * 查询全量重建任务
+     * @apiNote 任务保留1天, data为null表示任务不存在
+     * @author xiaowu
+     * @param taskId
+     * @return org.xiaowu.behappy.common.core.util.Response<org.xiaowu.behappy.product.vo.ReindexTaskVo>
+     */
+    @GetMapping("/search/reindex/{taskId}")
+    public Response<ReindexTaskVo> getReindexTask(@PathVariable("taskId") String taskId) {
+        return Response.ok(prodIndexService.getReindexTask(taskId));
+    }
 }
@@ -5,6 +5,9 @@ import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.Exchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -65,6 +68,23 @@ public class MqConfiguration {
                 mqProperties.getLetterRoutingKey() + ".#", null);
     }
 
+    /**
+     * 批量消费释放库存队列的容器工厂
+     * 沿用spring.rabbitmq.listener.simple的配置(手动ack),预取数量不小于批大小
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory stockReleaseBatchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                  ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(mqProperties.getReleaseBatchSize());
+        factory.setPrefetchCount(mqProperties.getReleaseBatchSize());
+        factory.setReceiveTimeout(mqProperties.getReleaseBatchReceiveTimeout());
+        return factory;
+    }
+
     /**
      * 释放库存
      * 当过了ttl时间,会发送到StockLockedReleaseQueue
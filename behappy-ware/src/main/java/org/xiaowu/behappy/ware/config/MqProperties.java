@@ -24,4 +24,26 @@ public class MqProperties {
     private String letterRoutingKey;
 
     private Long ttl;
+
+    /**
+     * 订单服务的交换机和关闭订单路由,redis预扣库存落库失败时通知订单服务关闭订单
+     */
+    private String orderEventExchange;
+
+    private String orderReleaseRoutingKey;
+
+    /**
+     * 是否批量消费释放库存队列
+     */
+    private boolean releaseBatchEnabled = false;
+
+    /**
+     * 批量消费时每批最大消息数
+     */
+    private int releaseBatchSize = 100;
+
+    /**
+     * 批量消费时凑批的最长等待时间,单位：毫秒
+     */
+    private long releaseBatchReceiveTimeout = 1000;
 }
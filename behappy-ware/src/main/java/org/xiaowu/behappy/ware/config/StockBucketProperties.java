@@ -0,0 +1,38 @@
+package org.xiaowu.behappy.ware.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 热点sku库存分桶配置
+ * 热点sku的库存拆分到多行(bucket 0..bucketCount-1),锁库存时随机选桶,分散行锁竞争
+ * @author xiaowu
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "stock-bucket")
+public class StockBucketProperties {
+
+    /**
+     * 是否开启库存分桶,默认关闭
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每个热点sku的分桶数量
+     */
+    private int bucketCount = 8;
+
+    /**
+     * 需要分桶的热点sku
+     */
+    private Set<Long> hotSkuIds = new LinkedHashSet<>();
+
+    public boolean isBucketed(Long skuId) {
+        return enabled && bucketCount > 1 && hotSkuIds.contains(skuId);
+    }
+}
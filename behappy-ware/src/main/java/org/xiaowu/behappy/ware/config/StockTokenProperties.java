@@ -0,0 +1,48 @@
+package org.xiaowu.behappy.ware.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * redis库存令牌(预扣库存)配置
+ * @author xiaowu
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "stock-token")
+public class StockTokenProperties {
+
+    /**
+     * 是否开启redis预扣库存,默认关闭
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每次落库的最大订单数
+     */
+    private int reconcileBatchSize = 200;
+
+    /**
+     * 落库间隔,单位：毫秒
+     */
+    private long reconcileInterval = 200;
+
+    /**
+     * redis与数据库库存漂移检查间隔,单位：毫秒
+     */
+    private long driftCheckInterval = 60000;
+
+    /**
+     * 数据库锁定/释放库存的在途计数过期时间,单位：毫秒,需大于事务的最长执行时间
+     */
+    private long inflightTtl = 60000;
+
+    /**
+     * 启动时需要预热到redis的热点sku
+     */
+    private List<Long> hotSkuIds = new ArrayList<>();
+}
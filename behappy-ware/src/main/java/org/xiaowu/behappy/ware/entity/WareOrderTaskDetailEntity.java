@@ -49,4 +49,9 @@ public class WareOrderTaskDetailEntity extends BaseEntity implements Serializabl
      */
     private Integer lockStatus;
 
+    /**
+     * 锁定的库存分桶,解锁时归还到同一个桶
+     */
+    private Integer bucket;
+
 }
@@ -45,4 +45,9 @@ public class WareSkuEntity extends BaseEntity implements Serializable {
      */
     private Integer stockLocked = 0;
 
+    /**
+     * 库存分桶,未分桶的sku只有0号桶
+     */
+    private Integer bucket = 0;
+
 }
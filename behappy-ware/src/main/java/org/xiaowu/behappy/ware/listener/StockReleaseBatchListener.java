@@ -0,0 +1,69 @@
+package org.xiaowu.behappy.ware.listener;
+
+import com.rabbitmq.client.Channel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.xiaowu.behappy.ware.entity.WareOrderTaskDetailEntity;
+import org.xiaowu.behappy.ware.service.WareOrderTaskDetailService;
+import org.xiaowu.behappy.ware.to.OrderCloseTo;
+import org.xiaowu.behappy.ware.to.WareOrderTaskDetailTo;
+import org.xiaowu.behappy.ware.to.WareOrderTaskTo;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 批量接收释放库存队列信息,rmq.release-batch-enabled=true时代替{@link StockReleaseListener}
+ * 一批消息只查询一次订单状态,按sku合并解锁,整批一起ack
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "rmq", name = "release-batch-enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class StockReleaseBatchListener {
+
+    private final WareOrderTaskDetailService wareOrderTaskDetailService;
+
+    private final MessageConverter messageConverter;
+
+    @RabbitListener(queues = "${rmq.stock-locked-release-queue}", containerFactory = "stockReleaseBatchContainerFactory")
+    public void handleStockRelease(List<Message> messages, Channel channel) throws IOException {
+        long lastDeliveryTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+        try {
+            // 需要查询订单状态的订单
+            Set<Long> orderSns = new HashSet<>();
+            // 订单服务已关闭的订单
+            Set<Long> closedOrderSns = new HashSet<>();
+            for (Message message : messages) {
+                Object payload = messageConverter.fromMessage(message);
+                if (payload instanceof WareOrderTaskTo) {
+                    orderSns.add(((WareOrderTaskTo) payload).getOrderSn());
+                } else if (payload instanceof WareOrderTaskDetailTo) {
+                    orderSns.add(((WareOrderTaskDetailTo) payload).getOrderSn());
+                } else if (payload instanceof WareOrderTaskDetailEntity) {
+                    orderSns.add(((WareOrderTaskDetailEntity) payload).getOrderSn());
+                } else if (payload instanceof OrderCloseTo) {
+                    closedOrderSns.addAll(((OrderCloseTo) payload).getOrderSns());
+                } else if (payload instanceof Number) {
+                    closedOrderSns.add(((Number) payload).longValue());
+                } else {
+                    log.warn("StockReleaseBatchListener - 未知的消息: {}", payload);
+                }
+            }
+            wareOrderTaskDetailService.unlockStocks(orderSns, closedOrderSns);
+            channel.basicAck(lastDeliveryTag, true);
+        } catch (Exception e) {
+            log.error("StockReleaseBatchListener - handleStockRelease: {}", e.getMessage());
+            // 整批重新放回队列
+            channel.basicNack(lastDeliveryTag, true, true);
+        }
+    }
+}
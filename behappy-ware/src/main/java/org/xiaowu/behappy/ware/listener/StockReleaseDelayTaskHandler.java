@@ -0,0 +1,38 @@
+package org.xiaowu.behappy.ware.listener;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskHandler;
+import org.xiaowu.behappy.ware.service.WareOrderTaskDetailService;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * redis延迟任务到期,按订单释放库存
+ * delay-task.enabled=true 时代替rabbitmq死信队列
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StockReleaseDelayTaskHandler implements DelayTaskHandler {
+
+    public static final String TOPIC = "STOCK:RELEASE";
+
+    private final WareOrderTaskDetailService wareOrderTaskDetailService;
+
+    @Override
+    public String topic() {
+        return TOPIC;
+    }
+
+    @Override
+    public void handle(List<String> payloads) {
+        Set<Long> orderSns = payloads.stream().map(Long::valueOf).collect(Collectors.toSet());
+        wareOrderTaskDetailService.unlockStocks(orderSns, Collections.emptySet());
+    }
+}
@@ -6,11 +6,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.xiaowu.behappy.ware.service.WareOrderTaskDetailService;
+import org.xiaowu.behappy.ware.to.OrderCloseTo;
 import org.xiaowu.behappy.ware.to.WareOrderTaskDetailTo;
+import org.xiaowu.behappy.ware.to.WareOrderTaskTo;
 
 import java.io.IOException;
+import java.util.Collections;
 
 /**
  * 这里接收释放库存队列信息
@@ -18,6 +22,7 @@ import java.io.IOException;
  */
 @Slf4j
 @Component
+@ConditionalOnProperty(prefix = "rmq", name = "release-batch-enabled", havingValue = "false", matchIfMissing = true)
 @RabbitListener(queues = "${rmq.stock-locked-release-queue}")
 @RequiredArgsConstructor
 public class StockReleaseListener {
@@ -43,6 +48,24 @@ public class StockReleaseListener {
         }
     }
 
+    /**
+     * 等待解锁库存(ttl时间内未下单), 一个订单一条消息
+     * @param wareOrderTaskTo
+     * @param message
+     * @param channel
+     * @throws IOException
+     */
+    @RabbitHandler
+    public void handleOrderStockLockedRelease(WareOrderTaskTo wareOrderTaskTo, Message message, Channel channel) throws IOException {
+        try {
+            wareOrderTaskDetailService.unlockStock(wareOrderTaskTo);
+            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+        } catch (Exception e) {
+            log.error("StockReleaseListener - handleOrderStockLockedRelease: {}", e.getMessage());
+            channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
+        }
+    }
+
     /**
      * 订单关闭后 发送的消息这里接收
      */
@@ -56,4 +79,18 @@ public class StockReleaseListener {
             channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
         }
     }
+
+    /**
+     * 订单服务批量关闭订单后 发送的消息这里接收
+     */
+    @RabbitHandler
+    public void handleOrderCloseRelease(OrderCloseTo orderCloseTo, Message message, Channel channel) throws IOException {
+        try {
+            wareOrderTaskDetailService.unlockStocks(Collections.emptySet(), orderCloseTo.getOrderSns());
+            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+        } catch (Exception e) {
+            log.error("StockReleaseListener - handleOrderCloseRelease: {}", e.getMessage());
+            channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
+        }
+    }
 }
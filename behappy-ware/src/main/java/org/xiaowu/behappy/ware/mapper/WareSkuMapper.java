@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 import org.xiaowu.behappy.ware.entity.WareSkuEntity;
 
+import java.util.Map;
+
 /**
  *
  * @author xiaowu
@@ -32,11 +34,28 @@ public interface WareSkuMapper extends BaseMapper<WareSkuEntity> {
      */
     Long lockSkuStock(@Param("skuId") Long skuId, @Param("num") Integer num);
 
+    /**
+     * 批量锁定库存,一条update锁定所有sku(0号桶)
+     * @param skuNums skuId -> 锁定数量, skuId不能重复
+     * @return 锁定成功的行数, 小于sku数量说明有sku库存不足
+     */
+    Long lockSkuStocks(@Param("skuNums") Map<Long, Integer> skuNums);
+
+    /**
+     * 锁定指定分桶的库存
+     * @param skuId
+     * @param bucket
+     * @param num
+     * @return
+     */
+    Long lockBucketStock(@Param("skuId") Long skuId, @Param("bucket") Integer bucket, @Param("num") Integer num);
+
     /**
      * 释放库存
      * @param skuId
+     * @param bucket
      * @param num
      */
-    void unlockStock(@Param("skuId") Long skuId, @Param("num") Integer num);
+    void unlockStock(@Param("skuId") Long skuId, @Param("bucket") Integer bucket, @Param("num") Integer num);
 
 }
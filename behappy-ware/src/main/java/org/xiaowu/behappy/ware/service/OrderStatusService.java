@@ -0,0 +1,79 @@
+package org.xiaowu.behappy.ware.service;
+
+import cn.hutool.core.collection.CollUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.common.core.util.ResponseConvert;
+import org.xiaowu.behappy.order.enums.OrderStatus;
+import org.xiaowu.behappy.order.feign.OrderFeign;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 查询订单状态
+ * 已关闭、已支付的订单状态不会再回到待支付,释放库存时只关心这两种状态,所以在本地缓存且不需要失效通知
+ * @author xiaowu
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderStatusService {
+
+    /**
+     * 终态订单状态缓存
+     */
+    private static final Cache<Long, Integer> TERMINAL_STATUS_CACHE = Caffeine.newBuilder().
+            maximumSize(100_000).
+            expireAfterWrite(Duration.ofMinutes(10)).
+            build();
+
+    private final OrderFeign orderFeign;
+
+    private final ResponseConvert responseConvert;
+
+    /**
+     * 批量查询订单状态,缓存未命中的订单一次feign调用查询
+     * @param orderSns
+     * @return orderSn -> 订单状态, 订单不存在时为null
+     */
+    public Map<Long, Integer> getOrderStatuses(Collection<Long> orderSns) {
+        Map<Long, Integer> orderStatuses = new HashMap<>(orderSns.size());
+        List<Long> missOrderSns = new ArrayList<>();
+        for (Long orderSn : orderSns) {
+            Integer orderStatus = TERMINAL_STATUS_CACHE.getIfPresent(orderSn);
+            if (orderStatus == null) {
+                missOrderSns.add(orderSn);
+            } else {
+                orderStatuses.put(orderSn, orderStatus);
+            }
+        }
+        if (CollUtil.isEmpty(missOrderSns)) {
+            return orderStatuses;
+        }
+        Response<Map<Long, Integer>> orderStatusesResponse = orderFeign.getOrderStatuses(missOrderSns);
+        Map<Long, Integer> remoteStatuses = responseConvert.convert(orderStatusesResponse, new TypeReference<Map<Long, Integer>>() {
+        });
+        for (Long orderSn : missOrderSns) {
+            Integer orderStatus = remoteStatuses.get(orderSn);
+            orderStatuses.put(orderSn, orderStatus);
+            if (isTerminal(orderStatus)) {
+                TERMINAL_STATUS_CACHE.put(orderSn, orderStatus);
+            }
+        }
+        return orderStatuses;
+    }
+
+    public Integer getOrderStatus(Long orderSn) {
+        return getOrderStatuses(Collections.singletonList(orderSn)).get(orderSn);
+    }
+
+    private boolean isTerminal(Integer orderStatus) {
+        return OrderStatus.CLOSE.value().equals(orderStatus) || OrderStatus.PADYED.value().equals(orderStatus);
+    }
+}
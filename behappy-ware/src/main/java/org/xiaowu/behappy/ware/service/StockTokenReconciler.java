@@ -0,0 +1,156 @@
+package org.xiaowu.behappy.ware.service;
+
+import cn.hutool.core.collection.CollUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.xiaowu.behappy.common.rmq.outbox.OutboxService;
+import org.xiaowu.behappy.ware.config.MqProperties;
+import org.xiaowu.behappy.ware.config.StockTokenProperties;
+import org.xiaowu.behappy.ware.dto.WareSkuLockDto;
+import org.xiaowu.behappy.ware.dto.WareSkuLockItemDto;
+import org.xiaowu.behappy.ware.entity.WareOrderTaskDetailEntity;
+import org.xiaowu.behappy.ware.mapper.WareSkuMapper;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * redis预扣库存异步落库
+ * 1. 定时从待落库队列领取一批订单,按sku合并后一条update锁定库存,库存工作单批量插入
+ * 2. 合并落库失败(redis与数据库漂移)时,逐个订单落库,失败的订单归还令牌、记录到失败队列并通知订单服务关闭订单
+ * 3. 定时检查redis与数据库的库存漂移,在没有未落库数据时以数据库为准修正
+ * 多实例部署时通过分布式锁保证同一时刻只有一个实例在落库
+ * @author xiaowu
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "stock-token", name = "enabled", havingValue = "true")
+public class StockTokenReconciler implements ApplicationRunner {
+
+    private static final String RECONCILE_LOCK = "BEHAPPY-WARE:STOCK_TOKEN:RECONCILE_LOCK";
+
+    private final StockTokenService stockTokenService;
+
+    private final StockTokenProperties stockTokenProperties;
+
+    private final WareSkuMapper wareSkuMapper;
+
+    private final WareOrderTaskDetailService wareOrderTaskDetailService;
+
+    private final WareSkuService wareSkuService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final RedissonClient redissonClient;
+
+    private final OutboxService outboxService;
+
+    private final MqProperties mqProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (CollUtil.isNotEmpty(stockTokenProperties.getHotSkuIds())) {
+            log.info("StockTokenReconciler - 预热热点sku: {}", stockTokenProperties.getHotSkuIds());
+            stockTokenService.warmUp(stockTokenProperties.getHotSkuIds());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stock-token.reconcile-interval:200}")
+    public void reconcile() {
+        RLock lock = redissonClient.getLock(RECONCILE_LOCK);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            List<WareSkuLockDto> claimed = stockTokenService.claim(stockTokenProperties.getReconcileBatchSize());
+            if (claimed.isEmpty()) {
+                return;
+            }
+            // 上次处理中宕机的批次可能已经落库,按订单号去重
+            List<WareSkuLockDto> wareSkuLockDtos = excludePersisted(claimed);
+            if (!persistBatch(wareSkuLockDtos)) {
+                log.warn("StockTokenReconciler - 合并落库失败,逐个订单落库: {}", wareSkuLockDtos.size());
+                for (WareSkuLockDto wareSkuLockDto : wareSkuLockDtos) {
+                    if (!persistBatch(Collections.singletonList(wareSkuLockDto))) {
+                        log.error("StockTokenReconciler - 订单锁库存落库失败,归还令牌并关闭订单: {}", wareSkuLockDto);
+                        stockTokenService.markFailed(wareSkuLockDto);
+                        // 订单服务关闭订单,已关闭的订单不会重复处理
+                        outboxService.send(mqProperties.getOrderEventExchange(),
+                                mqProperties.getOrderReleaseRoutingKey(), wareSkuLockDto.getOrderSn());
+                    }
+                }
+            }
+            stockTokenService.finishClaim();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stock-token.drift-check-interval:60000}")
+    public void checkDrift() {
+        for (Long skuId : stockTokenService.warmedSkuIds()) {
+            String token = stockTokenService.currentToken(skuId);
+            Long dbStock = wareSkuMapper.getSkuStock(skuId);
+            if (token == null || dbStock == null || Long.valueOf(token).equals(dbStock)) {
+                continue;
+            }
+            if (stockTokenService.correct(skuId, token, dbStock)) {
+                log.warn("StockTokenReconciler - sku {} 库存漂移已修正, redis: {}, db: {}", skuId, token, dbStock);
+            }
+        }
+    }
+
+    private List<WareSkuLockDto> excludePersisted(List<WareSkuLockDto> claimed) {
+        List<Long> orderSns = claimed.stream().map(WareSkuLockDto::getOrderSn).collect(Collectors.toList());
+        LambdaQueryWrapper<WareOrderTaskDetailEntity> queryWrapper = Wrappers.<WareOrderTaskDetailEntity>lambdaQuery().
+                select(WareOrderTaskDetailEntity::getOrderSn).
+                in(WareOrderTaskDetailEntity::getOrderSn, orderSns);
+        Set<Long> persisted = wareOrderTaskDetailService.list(queryWrapper).stream().
+                map(WareOrderTaskDetailEntity::getOrderSn).
+                collect(Collectors.toSet());
+        return claimed.stream().
+                filter(wareSkuLockDto -> !persisted.contains(wareSkuLockDto.getOrderSn())).
+                collect(Collectors.toList());
+    }
+
+    /**
+     * 一个事务内落库并发送解锁库存消息,任一sku库存不足则整体回滚
+     * @param wareSkuLockDtos
+     * @return 是否落库成功
+     */
+    private boolean persistBatch(List<WareSkuLockDto> wareSkuLockDtos) {
+        if (wareSkuLockDtos.isEmpty()) {
+            return true;
+        }
+        List<WareSkuLockItemDto> allLocks = wareSkuLockDtos.stream().
+                flatMap(wareSkuLockDto -> wareSkuLockDto.getLocks().stream()).
+                collect(Collectors.toList());
+        Map<Long, Integer> skuNums = stockTokenService.mergeSkuNums(allLocks);
+        Boolean success = transactionTemplate.execute(status -> {
+            Map<Long, Integer> skuBuckets = wareSkuService.lockSkuStocks(skuNums);
+            if (skuBuckets == null) {
+                status.setRollbackOnly();
+                return false;
+            }
+            List<WareOrderTaskDetailEntity> details = wareSkuLockDtos.stream().
+                    flatMap(wareSkuLockDto -> wareSkuService.buildTaskDetails(wareSkuLockDto, skuBuckets).stream()).
+                    collect(Collectors.toList());
+            wareOrderTaskDetailService.saveBatch(details);
+            // 解锁库存消息与库存工作单一起提交,落库后宕机时不会因为去重而漏发
+            wareSkuLockDtos.forEach(wareSkuLockDto -> wareSkuService.sendStockRelease(wareSkuLockDto.getOrderSn()));
+            return true;
+        });
+        return Boolean.TRUE.equals(success);
+    }
+}
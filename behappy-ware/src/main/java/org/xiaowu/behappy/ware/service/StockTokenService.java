@@ -0,0 +1,304 @@
+package org.xiaowu.behappy.ware.service;
+
+import cn.hutool.core.collection.CollUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.xiaowu.behappy.ware.config.MqProperties;
+import org.xiaowu.behappy.ware.config.StockTokenProperties;
+import org.xiaowu.behappy.ware.dto.WareSkuLockDto;
+import org.xiaowu.behappy.ware.dto.WareSkuLockItemDto;
+import org.xiaowu.behappy.ware.mapper.WareSkuMapper;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * redis库存令牌
+ * 热点sku的可用库存(stock - stock_locked)镜像到redis,下单时用lua原子预扣,
+ * 库存不足的请求直接在redis拒绝,扣减成功的进入待落库队列,由{@link StockTokenReconciler}批量写入数据库
+ * 所有key使用同一个hash tag,保证集群模式下lua脚本中的key在同一个slot
+ * @author xiaowu
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockTokenService {
+
+    private static final String KEY_PREFIX = "BEHAPPY-WARE:{STOCK_TOKEN}:";
+
+    /**
+     * sku库存令牌
+     */
+    private static final String TOKEN_KEY = KEY_PREFIX + "SKU:";
+
+    /**
+     * 已预热的sku集合
+     */
+    private static final String SKUS_KEY = KEY_PREFIX + "SKUS";
+
+    /**
+     * 待落库队列
+     */
+    private static final String PENDING_KEY = KEY_PREFIX + "PENDING";
+
+    /**
+     * 处理中队列
+     */
+    private static final String PROCESSING_KEY = KEY_PREFIX + "PROCESSING";
+
+    /**
+     * 订单预扣标记,同一订单重复锁库存时不重复扣减
+     */
+    private static final String ORDER_KEY = KEY_PREFIX + "ORDER:";
+
+    /**
+     * sku在途计数,数据库锁定/释放库存到同步redis之间不修正漂移
+     */
+    private static final String INFLIGHT_KEY = KEY_PREFIX + "INFLIGHT:";
+
+    /**
+     * 落库失败的订单,令牌已归还,订单已通知关闭
+     */
+    private static final String FAILED_KEY = KEY_PREFIX + "FAILED";
+
+    /**
+     * 落库失败的订单号,防止重复归还令牌
+     */
+    private static final String FAILED_SNS_KEY = KEY_PREFIX + "FAILED_SNS";
+
+    private static final DefaultRedisScript<Long> DEDUCT_SCRIPT = script("lua/stock_token_deduct.lua", Long.class);
+
+    private static final DefaultRedisScript<Long> ADJUST_SCRIPT = script("lua/stock_token_adjust.lua", Long.class);
+
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = script("lua/stock_token_claim.lua", List.class);
+
+    private static final DefaultRedisScript<Long> CORRECT_SCRIPT = script("lua/stock_token_correct.lua", Long.class);
+
+    private static final DefaultRedisScript<Long> BEGIN_SCRIPT = script("lua/stock_token_begin.lua", Long.class);
+
+    private static final DefaultRedisScript<Long> FAIL_SCRIPT = script("lua/stock_token_fail.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final WareSkuMapper wareSkuMapper;
+
+    private final StockTokenProperties stockTokenProperties;
+
+    private final MqProperties mqProperties;
+
+    private final ObjectMapper objectMapper;
+
+    private static <T> DefaultRedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        redisScript.setResultType(resultType);
+        return redisScript;
+    }
+
+    public boolean isEnabled() {
+        return stockTokenProperties.isEnabled();
+    }
+
+    /**
+     * 预扣库存
+     * 同一订单中相同的sku先合并数量,避免单个sku分别校验通过但合计超卖
+     * 同一订单重复调用(订单服务重试)时直接返回成功,预扣标记在解锁库存消息到期前过期
+     * @param wareSkuLockDto
+     * @return
+     */
+    @SneakyThrows
+    public DeductResult tryDeduct(WareSkuLockDto wareSkuLockDto) {
+        Map<Long, Integer> skuNums = mergeSkuNums(wareSkuLockDto.getLocks());
+        List<String> keys = new ArrayList<>(skuNums.size() + 2);
+        List<String> args = new ArrayList<>(skuNums.size() + 2);
+        skuNums.forEach((skuId, num) -> {
+            keys.add(TOKEN_KEY + skuId);
+            args.add(String.valueOf(num));
+        });
+        keys.add(PENDING_KEY);
+        args.add(objectMapper.writeValueAsString(wareSkuLockDto));
+        keys.add(ORDER_KEY + wareSkuLockDto.getOrderSn());
+        args.add(String.valueOf(mqProperties.getTtl()));
+        Long result = stringRedisTemplate.execute(DEDUCT_SCRIPT, keys, args.toArray());
+        if (result == null || result < 0) {
+            return DeductResult.NOT_WARMED;
+        }
+        return result == 1 ? DeductResult.DEDUCTED : DeductResult.INSUFFICIENT;
+    }
+
+    /**
+     * 数据库中锁定或释放库存后,同步redis中已预热的sku
+     * 调用时先增加在途计数,事务提交后再同步令牌,回滚时只减少在途计数,
+     * 在途期间{@link StockTokenReconciler#checkDrift()}不修正该sku,防止数据库已变更、令牌未同步时被重复修正
+     * 不在事务中调用时立即同步
+     * @param skuDeltas skuId -> 变化量,正数为归还,负数为扣减
+     */
+    public void adjustAfterCommit(Map<Long, Integer> skuDeltas) {
+        if (!isEnabled() || skuDeltas.isEmpty()) {
+            return;
+        }
+        List<String> inflightKeys = skuDeltas.keySet().stream().map(skuId -> INFLIGHT_KEY + skuId).collect(Collectors.toList());
+        stringRedisTemplate.execute(BEGIN_SCRIPT, inflightKeys, String.valueOf(stockTokenProperties.getInflightTtl()));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            finishAdjust(skuDeltas, true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                finishAdjust(skuDeltas, status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    private void finishAdjust(Map<Long, Integer> skuDeltas, boolean committed) {
+        List<String> keys = new ArrayList<>(skuDeltas.size() * 2);
+        List<String> args = new ArrayList<>(skuDeltas.size() + 1);
+        skuDeltas.forEach((skuId, delta) -> {
+            keys.add(TOKEN_KEY + skuId);
+            keys.add(INFLIGHT_KEY + skuId);
+            args.add(String.valueOf(delta));
+        });
+        args.add(committed ? "1" : "0");
+        stringRedisTemplate.execute(ADJUST_SCRIPT, keys, args.toArray());
+    }
+
+    /**
+     * 预热sku库存到redis,已存在的不覆盖
+     * 已存在的令牌可能包含还未落库的扣减,覆盖会导致超卖,需要重置时先evict
+     * @param skuIds
+     */
+    public void warmUp(Collection<Long> skuIds) {
+        for (Long skuId : skuIds) {
+            Long stock = wareSkuMapper.getSkuStock(skuId);
+            if (stock == null) {
+                log.warn("StockTokenService - warmUp: sku {} 没有库存记录", skuId);
+                continue;
+            }
+            stringRedisTemplate.opsForValue().setIfAbsent(TOKEN_KEY + skuId, String.valueOf(stock));
+            stringRedisTemplate.opsForSet().add(SKUS_KEY, String.valueOf(skuId));
+        }
+    }
+
+    /**
+     * 移除sku令牌,之后该sku的锁库存直接走数据库
+     * @param skuIds
+     */
+    public void evict(Collection<Long> skuIds) {
+        if (CollUtil.isEmpty(skuIds)) {
+            return;
+        }
+        List<String> keys = skuIds.stream().map(skuId -> TOKEN_KEY + skuId).collect(Collectors.toList());
+        stringRedisTemplate.delete(keys);
+        stringRedisTemplate.opsForSet().remove(SKUS_KEY, skuIds.stream().map(String::valueOf).toArray());
+    }
+
+    public Set<Long> warmedSkuIds() {
+        Set<String> members = stringRedisTemplate.opsForSet().members(SKUS_KEY);
+        if (CollUtil.isEmpty(members)) {
+            return Collections.emptySet();
+        }
+        return members.stream().map(Long::valueOf).collect(Collectors.toSet());
+    }
+
+    public String currentToken(Long skuId) {
+        return stringRedisTemplate.opsForValue().get(TOKEN_KEY + skuId);
+    }
+
+    /**
+     * 修正漂移,仅在没有未落库数据、没有在途的数据库变更且检查期间令牌未变化时生效
+     * @param skuId
+     * @param expected 检查时redis中的值
+     * @param dbStock 数据库可用库存
+     * @return 是否修正
+     */
+    public boolean correct(Long skuId, String expected, Long dbStock) {
+        Long result = stringRedisTemplate.execute(CORRECT_SCRIPT,
+                Arrays.asList(TOKEN_KEY + skuId, PENDING_KEY, PROCESSING_KEY, INFLIGHT_KEY + skuId),
+                expected, String.valueOf(dbStock));
+        return result != null && result == 1;
+    }
+
+    /**
+     * 领取待落库的数据,上次未处理完的优先返回
+     * @param batchSize
+     * @return
+     */
+    @SneakyThrows
+    public List<WareSkuLockDto> claim(int batchSize) {
+        List<String> items = stringRedisTemplate.opsForList().range(PROCESSING_KEY, 0, -1);
+        if (CollUtil.isEmpty(items)) {
+            items = stringRedisTemplate.execute(CLAIM_SCRIPT, Arrays.asList(PENDING_KEY, PROCESSING_KEY), String.valueOf(batchSize));
+        }
+        if (CollUtil.isEmpty(items)) {
+            return Collections.emptyList();
+        }
+        List<WareSkuLockDto> wareSkuLockDtos = new ArrayList<>(items.size());
+        for (String item : items) {
+            wareSkuLockDtos.add(objectMapper.readValue(item, WareSkuLockDto.class));
+        }
+        return wareSkuLockDtos;
+    }
+
+    /**
+     * 本批次已落库,清空处理中队列
+     */
+    public void finishClaim() {
+        stringRedisTemplate.delete(PROCESSING_KEY);
+    }
+
+    /**
+     * 落库失败,归还预扣的库存令牌并记录到失败队列
+     * 需要在{@link #finishClaim()}之前调用,处理中队列非空期间不会修正漂移,同一订单只归还一次
+     * @param wareSkuLockDto
+     * @return 是否本次归还,已处理过的订单返回false
+     */
+    @SneakyThrows
+    public boolean markFailed(WareSkuLockDto wareSkuLockDto) {
+        Map<Long, Integer> skuNums = mergeSkuNums(wareSkuLockDto.getLocks());
+        List<String> keys = new ArrayList<>(skuNums.size() + 2);
+        List<String> args = new ArrayList<>(skuNums.size() + 2);
+        keys.add(FAILED_SNS_KEY);
+        keys.add(FAILED_KEY);
+        args.add(String.valueOf(wareSkuLockDto.getOrderSn()));
+        args.add(objectMapper.writeValueAsString(wareSkuLockDto));
+        skuNums.forEach((skuId, num) -> {
+            keys.add(TOKEN_KEY + skuId);
+            args.add(String.valueOf(num));
+        });
+        Long result = stringRedisTemplate.execute(FAIL_SCRIPT, keys, args.toArray());
+        return result != null && result == 1;
+    }
+
+    public Map<Long, Integer> mergeSkuNums(List<WareSkuLockItemDto> locks) {
+        return locks.stream().collect(Collectors.toMap(WareSkuLockItemDto::getSkuId, WareSkuLockItemDto::getNum,
+                Integer::sum, LinkedHashMap::new));
+    }
+
+    public enum DeductResult {
+
+        /**
+         * 预扣成功,等待异步落库
+         */
+        DEDUCTED,
+
+        /**
+         * 库存不足
+         */
+        INSUFFICIENT,
+
+        /**
+         * 存在未预热的sku,走数据库锁库存
+         */
+        NOT_WARMED
+    }
+}
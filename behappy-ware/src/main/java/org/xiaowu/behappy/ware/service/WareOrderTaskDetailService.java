@@ -1,22 +1,22 @@
 package org.xiaowu.behappy.ware.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.xiaowu.behappy.common.core.util.Response;
-import org.xiaowu.behappy.common.core.util.ResponseConvert;
+import org.springframework.transaction.annotation.Transactional;
 import org.xiaowu.behappy.order.enums.OrderStatus;
-import org.xiaowu.behappy.order.feign.OrderFeign;
 import org.xiaowu.behappy.ware.entity.WareOrderTaskDetailEntity;
 import org.xiaowu.behappy.ware.mapper.WareOrderTaskDetailMapper;
 import org.xiaowu.behappy.ware.to.WareOrderTaskDetailTo;
+import org.xiaowu.behappy.ware.to.WareOrderTaskTo;
 
-import java.util.List;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -27,9 +27,7 @@ import java.util.List;
 @AllArgsConstructor
 public class WareOrderTaskDetailService extends ServiceImpl<WareOrderTaskDetailMapper, WareOrderTaskDetailEntity> implements IService<WareOrderTaskDetailEntity> {
 
-    private final OrderFeign orderFeign;
-
-    private final ResponseConvert responseConvert;
+    private final OrderStatusService orderStatusService;
 
     private final WareSkuService wareSkuService;
 
@@ -44,24 +42,39 @@ public class WareOrderTaskDetailService extends ServiceImpl<WareOrderTaskDetailM
          *    已取消,解锁库存
          *    没取消 - 不能解锁
          */
-        Response<Integer> orderStatusResponse = orderFeign.getOrderStatus(wareOrderTaskDetailTo.getOrderSn());
-        Integer orderStatus = responseConvert.convert(orderStatusResponse, new TypeReference<Integer>() {
-        });
+        Integer orderStatus = orderStatusService.getOrderStatus(wareOrderTaskDetailTo.getOrderSn());
         // 如果订单不存在或者已取消(未支付),则释放库存
         if (orderStatus == null || orderStatus.equals(OrderStatus.CLOSE.value())) {
             // 订单已取消且库存工作单状态1 才可以解锁
             if (wareOrderTaskDetailTo.getLockStatus() == 1) {
-                unLock(wareOrderTaskDetailTo.getSkuId(), wareOrderTaskDetailTo.getSkuNum(), wareOrderTaskDetailTo.getId());
+                unLock(wareOrderTaskDetailTo.getSkuId(), wareOrderTaskDetailTo.getBucket(), wareOrderTaskDetailTo.getSkuNum(), wareOrderTaskDetailTo.getId());
             }
         }
     }
 
+    /**
+     * 由库存服务进来(按订单锁库存), 判断是否需要释放该订单锁定的所有库存
+     * @param wareOrderTaskTo
+     */
+    public void unlockStock(WareOrderTaskTo wareOrderTaskTo) {
+        log.info("按订单解锁库存: {}", wareOrderTaskTo.toString());
+        Integer orderStatus = orderStatusService.getOrderStatus(wareOrderTaskTo.getOrderSn());
+        // 如果订单不存在或者已取消(未支付),则释放库存
+        if (orderStatus == null || orderStatus.equals(OrderStatus.CLOSE.value())) {
+            unlockLocked(wareOrderTaskTo.getOrderSn());
+        }
+    }
+
     /**
      * 由订单服务进来(关闭订单)
      * 防止订单服务卡顿 导致订单状态一直改不了 库存消息有限到期 最后导致卡顿的订单 永远无法解锁库存
      */
     public void unlockStock(Long orderNum) {
         log.info("订单服务超时自动关闭: {}", orderNum);
+        unlockLocked(orderNum);
+    }
+
+    private void unlockLocked(Long orderNum) {
         // 查询所有属于当前订单,且状态是1的
         LambdaQueryWrapper<WareOrderTaskDetailEntity> queryWrapper = Wrappers.<WareOrderTaskDetailEntity>lambdaQuery().
                 eq(WareOrderTaskDetailEntity::getLockStatus, 1).
@@ -69,13 +82,53 @@ public class WareOrderTaskDetailService extends ServiceImpl<WareOrderTaskDetailM
         List<WareOrderTaskDetailEntity> wareOrderTaskDetailEntities = baseMapper.selectList(queryWrapper);
         // 更新库存,更新库存工作单的状态
         wareOrderTaskDetailEntities.forEach(wareOrderTaskDetailEntity -> {
-            unLock(wareOrderTaskDetailEntity.getSkuId(), wareOrderTaskDetailEntity.getSkuNum(), wareOrderTaskDetailEntity.getId());
+            unLock(wareOrderTaskDetailEntity.getSkuId(), wareOrderTaskDetailEntity.getBucket(), wareOrderTaskDetailEntity.getSkuNum(), wareOrderTaskDetailEntity.getId());
         });
     }
 
-    private void unLock(Long skuId, Integer num, Long taskDeailId) {
+    /**
+     * 批量释放库存
+     * 库存工作单的锁定状态是按订单判断的,单个工作单的消息也按订单处理,已解锁的工作单不会重复解锁
+     * @param orderSns 需要查询订单状态的订单,不存在或已取消才释放
+     * @param closedOrderSns 订单服务已关闭的订单,直接释放
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void unlockStocks(Collection<Long> orderSns, Collection<Long> closedOrderSns) {
+        Set<Long> releaseOrderSns = new HashSet<>(closedOrderSns);
+        orderStatusService.getOrderStatuses(orderSns).forEach((orderSn, orderStatus) -> {
+            if (orderStatus == null || orderStatus.equals(OrderStatus.CLOSE.value())) {
+                releaseOrderSns.add(orderSn);
+            }
+        });
+        if (releaseOrderSns.isEmpty()) {
+            return;
+        }
+        // 锁定工作单,防止并发消费重复解锁
+        LambdaQueryWrapper<WareOrderTaskDetailEntity> queryWrapper = Wrappers.<WareOrderTaskDetailEntity>lambdaQuery().
+                eq(WareOrderTaskDetailEntity::getLockStatus, 1).
+                in(WareOrderTaskDetailEntity::getOrderSn, releaseOrderSns).
+                last("FOR UPDATE");
+        List<WareOrderTaskDetailEntity> wareOrderTaskDetailEntities = baseMapper.selectList(queryWrapper);
+        if (wareOrderTaskDetailEntities.isEmpty()) {
+            return;
+        }
+        log.info("批量解锁库存, 订单数: {}, 工作单数: {}", releaseOrderSns.size(), wareOrderTaskDetailEntities.size());
+        // 同一个sku同一个桶合并成一次更新
+        Map<List<Object>, Integer> skuBucketNums = wareOrderTaskDetailEntities.stream().
+                collect(Collectors.groupingBy(entity -> Arrays.asList(entity.getSkuId(), entity.getBucket()),
+                        Collectors.summingInt(WareOrderTaskDetailEntity::getSkuNum)));
+        skuBucketNums.forEach((skuBucket, num) -> wareSkuService.unlockStock((Long) skuBucket.get(0), (Integer) skuBucket.get(1), num));
+        // 一条update更新工作单状态
+        List<Long> ids = wareOrderTaskDetailEntities.stream().map(WareOrderTaskDetailEntity::getId).collect(Collectors.toList());
+        LambdaUpdateWrapper<WareOrderTaskDetailEntity> updateWrapper = Wrappers.<WareOrderTaskDetailEntity>lambdaUpdate().
+                set(WareOrderTaskDetailEntity::getLockStatus, 2).
+                in(WareOrderTaskDetailEntity::getId, ids);
+        baseMapper.update(null, updateWrapper);
+    }
+
+    private void unLock(Long skuId, Integer bucket, Integer num, Long taskDeailId) {
         // 更新库存
-        wareSkuService.unlockStock(skuId, num);
+        wareSkuService.unlockStock(skuId, bucket, num);
         // 更新库存工作单的状态
         WareOrderTaskDetailEntity detailEntity = new WareOrderTaskDetailEntity();
         detailEntity.setId(taskDeailId);
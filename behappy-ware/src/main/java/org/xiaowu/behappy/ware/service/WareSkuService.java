@@ -1,20 +1,31 @@
 package org.xiaowu.behappy.ware.service;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.xiaowu.behappy.common.core.exception.BeHappyException;
+import org.xiaowu.behappy.common.redis.delay.DelayTaskService;
+import org.xiaowu.behappy.common.rmq.outbox.OutboxService;
 import org.xiaowu.behappy.ware.config.MqProperties;
+import org.xiaowu.behappy.ware.config.StockBucketProperties;
 import org.xiaowu.behappy.ware.dto.WareSkuLockDto;
 import org.xiaowu.behappy.ware.dto.WareSkuLockItemDto;
 import org.xiaowu.behappy.ware.entity.WareOrderTaskDetailEntity;
 import org.xiaowu.behappy.ware.entity.WareSkuEntity;
+import org.xiaowu.behappy.ware.listener.StockReleaseDelayTaskHandler;
 import org.xiaowu.behappy.ware.mapper.WareSkuMapper;
+import org.xiaowu.behappy.ware.to.WareOrderTaskTo;
 
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.xiaowu.behappy.thirdparty.enums.BizCode.INSUFFICIENT_INVENTORY;
 
@@ -31,36 +42,189 @@ public class WareSkuService extends ServiceImpl<WareSkuMapper, WareSkuEntity> im
 
     private final MqProperties mqProperties;
 
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxService outboxService;
 
-    public void unlockStock(Long skuId, Integer num) {
-        baseMapper.unlockStock(skuId, num);
+    private final StockTokenService stockTokenService;
+
+    private final StockBucketProperties stockBucketProperties;
+
+    private final DelayTaskService delayTaskService;
+
+    public void unlockStock(Long skuId, Integer bucket, Integer num) {
+        // 归还redis库存令牌,事务提交后生效
+        stockTokenService.adjustAfterCommit(Collections.singletonMap(skuId, num));
+        baseMapper.unlockStock(skuId, bucket == null ? 0 : bucket, num);
     }
 
+    /**
+     * 按订单锁库存
+     * 以订单号幂等,订单服务下单事务回滚后重试时,该订单已锁定的库存直接复用,不重复锁定
+     * @param wareSkuLockDto
+     */
+    @Transactional(rollbackFor = Exception.class)
     public void orderLockStock(WareSkuLockDto wareSkuLockDto) {
-        List<WareSkuLockItemDto> locks = wareSkuLockDto.getLocks();
-        for (WareSkuLockItemDto lock : locks) {
-            Long skuId = lock.getSkuId();
-            //成功就返回 1 失败返回0
-            Integer num = lock.getNum();
-            Long update = baseMapper.lockSkuStock(skuId, num);
-            if (update.equals(1)) {
-                // 保存库存单
-                WareOrderTaskDetailEntity wareOrderTaskDetailEntity = new WareOrderTaskDetailEntity();
-                wareOrderTaskDetailEntity.setOrderSn(wareSkuLockDto.getOrderSn());
-                wareOrderTaskDetailEntity.setSkuId(skuId);
-                wareOrderTaskDetailEntity.setSkuName(lock.getSkuName());
-                wareOrderTaskDetailEntity.setSkuNum(num);
-                // 1-已锁定  2-已解锁  3-扣减
-                wareOrderTaskDetailEntity.setLockStatus(1);
-                wareOrderTaskDetailService.save(wareOrderTaskDetailEntity);
-                // 发送mq消息,解锁库存
-                rabbitTemplate.convertAndSend(mqProperties.getEventExchange(),
-                        mqProperties.getStockReleaseRoutingKey(), wareOrderTaskDetailEntity);
-            } else {
-                // 当前商品已经没库存了
+        if (isOrderLocked(wareSkuLockDto.getOrderSn())) {
+            log.info("WareSkuService - orderLockStock: 订单 {} 已锁定库存", wareSkuLockDto.getOrderSn());
+            return;
+        }
+        if (stockTokenService.isEnabled()) {
+            StockTokenService.DeductResult deductResult = stockTokenService.tryDeduct(wareSkuLockDto);
+            if (deductResult == StockTokenService.DeductResult.DEDUCTED) {
+                // 已在redis预扣,由StockTokenReconciler异步落库
+                return;
+            }
+            if (deductResult == StockTokenService.DeductResult.INSUFFICIENT) {
                 throw new BeHappyException(INSUFFICIENT_INVENTORY.getCode(), INSUFFICIENT_INVENTORY.getMsg());
             }
         }
+        Map<Long, Integer> skuNums = stockTokenService.mergeSkuNums(wareSkuLockDto.getLocks());
+        Map<Long, Integer> skuBuckets = lockSkuStocks(skuNums);
+        if (skuBuckets == null) {
+            // 有商品已经没库存了,回滚已锁定的sku
+            throw new BeHappyException(INSUFFICIENT_INVENTORY.getCode(), INSUFFICIENT_INVENTORY.getMsg());
+        }
+        // 批量保存库存单
+        wareOrderTaskDetailService.saveBatch(buildTaskDetails(wareSkuLockDto, skuBuckets));
+        // 同步已预热sku的redis库存令牌,事务提交后生效
+        Map<Long, Integer> skuDeltas = new LinkedHashMap<>(skuNums.size());
+        skuNums.forEach((skuId, num) -> skuDeltas.put(skuId, -num));
+        stockTokenService.adjustAfterCommit(skuDeltas);
+        // 发送mq消息,解锁库存
+        sendStockRelease(wareSkuLockDto.getOrderSn());
+    }
+
+    private boolean isOrderLocked(Long orderSn) {
+        LambdaQueryWrapper<WareOrderTaskDetailEntity> queryWrapper = Wrappers.<WareOrderTaskDetailEntity>lambdaQuery().
+                eq(WareOrderTaskDetailEntity::getOrderSn, orderSn).
+                eq(WareOrderTaskDetailEntity::getLockStatus, 1);
+        return wareOrderTaskDetailService.count(queryWrapper) > 0;
+    }
+
+    /**
+     * 锁定库存,需要在事务中调用,返回null时由调用方回滚
+     * 未分桶的sku一条update全部锁定,分桶的热点sku随机选桶,桶内不足时依次尝试下一个桶
+     * @param skuNums skuId -> 锁定数量
+     * @return skuId -> 锁定的库存分桶, 任一sku库存不足返回null
+     */
+    public Map<Long, Integer> lockSkuStocks(Map<Long, Integer> skuNums) {
+        Map<Long, Integer> skuBuckets = new HashMap<>(skuNums.size());
+        Map<Long, Integer> plainSkuNums = new LinkedHashMap<>();
+        skuNums.forEach((skuId, num) -> {
+            if (!stockBucketProperties.isBucketed(skuId)) {
+                plainSkuNums.put(skuId, num);
+            }
+        });
+        if (!plainSkuNums.isEmpty()) {
+            // 一条update锁定所有sku,成功的行数等于sku数量才算全部锁定
+            Long update = baseMapper.lockSkuStocks(plainSkuNums);
+            if (update == null || update != plainSkuNums.size()) {
+                return null;
+            }
+            plainSkuNums.keySet().forEach(skuId -> skuBuckets.put(skuId, 0));
+        }
+        for (Map.Entry<Long, Integer> entry : skuNums.entrySet()) {
+            if (plainSkuNums.containsKey(entry.getKey())) {
+                continue;
+            }
+            Integer bucket = lockBucketStock(entry.getKey(), entry.getValue());
+            if (bucket == null) {
+                return null;
+            }
+            skuBuckets.put(entry.getKey(), bucket);
+        }
+        return skuBuckets;
+    }
+
+    private Integer lockBucketStock(Long skuId, Integer num) {
+        int bucketCount = stockBucketProperties.getBucketCount();
+        int start = ThreadLocalRandom.current().nextInt(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            int bucket = (start + i) % bucketCount;
+            Long update = baseMapper.lockBucketStock(skuId, bucket, num);
+            if (update != null && update == 1L) {
+                return bucket;
+            }
+        }
+        // 每个桶都不够,总量可能足够但过于分散,需要rebalance
+        log.warn("WareSkuService - lockBucketStock: sku {} 所有分桶库存不足, num: {}", skuId, num);
+        return null;
+    }
+
+    /**
+     * 重新分配热点sku的库存分桶
+     * 已锁定的库存保留在原来的桶(解锁时按桶归还),可用库存平均分配到0..bucketCount-1号桶,
+     * 超出bucketCount且没有锁定库存的桶删除,关闭分桶后执行可以把库存合并回0号桶
+     * @param skuId
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void rebalanceBuckets(Long skuId) {
+        int bucketCount = stockBucketProperties.isBucketed(skuId) ? stockBucketProperties.getBucketCount() : 1;
+        LambdaQueryWrapper<WareSkuEntity> queryWrapper = Wrappers.<WareSkuEntity>lambdaQuery().
+                eq(WareSkuEntity::getSkuId, skuId).
+                orderByAsc(WareSkuEntity::getBucket).
+                last("FOR UPDATE");
+        List<WareSkuEntity> wareSkuEntities = baseMapper.selectList(queryWrapper);
+        if (wareSkuEntities.isEmpty()) {
+            throw new BeHappyException(INSUFFICIENT_INVENTORY.getCode(), INSUFFICIENT_INVENTORY.getMsg());
+        }
+        Map<Integer, WareSkuEntity> buckets = wareSkuEntities.stream().
+                collect(Collectors.toMap(WareSkuEntity::getBucket, Function.identity()));
+        int available = wareSkuEntities.stream().mapToInt(entity -> entity.getStock() - entity.getStockLocked()).sum();
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            int share = available / bucketCount + (bucket < available % bucketCount ? 1 : 0);
+            WareSkuEntity wareSkuEntity = buckets.remove(bucket);
+            if (wareSkuEntity == null) {
+                wareSkuEntity = new WareSkuEntity();
+                wareSkuEntity.setSkuId(skuId);
+                wareSkuEntity.setSkuName(wareSkuEntities.get(0).getSkuName());
+                wareSkuEntity.setBucket(bucket);
+                wareSkuEntity.setStock(share);
+                baseMapper.insert(wareSkuEntity);
+            } else {
+                wareSkuEntity.setStock(wareSkuEntity.getStockLocked() + share);
+                baseMapper.updateById(wareSkuEntity);
+            }
+        }
+        // 多余的桶只保留锁定的库存
+        for (WareSkuEntity wareSkuEntity : buckets.values()) {
+            if (wareSkuEntity.getStockLocked() == 0) {
+                baseMapper.deleteById(wareSkuEntity.getId());
+            } else {
+                wareSkuEntity.setStock(wareSkuEntity.getStockLocked());
+                baseMapper.updateById(wareSkuEntity);
+            }
+        }
+        log.info("WareSkuService - rebalanceBuckets: sku {} 可用库存 {} 分配到 {} 个桶", skuId, available, bucketCount);
+    }
+
+    public List<WareOrderTaskDetailEntity> buildTaskDetails(WareSkuLockDto wareSkuLockDto, Map<Long, Integer> skuBuckets) {
+        List<WareOrderTaskDetailEntity> details = new ArrayList<>(wareSkuLockDto.getLocks().size());
+        for (WareSkuLockItemDto lock : wareSkuLockDto.getLocks()) {
+            WareOrderTaskDetailEntity wareOrderTaskDetailEntity = new WareOrderTaskDetailEntity();
+            wareOrderTaskDetailEntity.setOrderSn(wareSkuLockDto.getOrderSn());
+            wareOrderTaskDetailEntity.setSkuId(lock.getSkuId());
+            wareOrderTaskDetailEntity.setSkuName(lock.getSkuName());
+            wareOrderTaskDetailEntity.setSkuNum(lock.getNum());
+            // 1-已锁定  2-已解锁  3-扣减
+            wareOrderTaskDetailEntity.setLockStatus(1);
+            wareOrderTaskDetailEntity.setBucket(skuBuckets.get(lock.getSkuId()));
+            details.add(wareOrderTaskDetailEntity);
+        }
+        return details;
+    }
+
+    /**
+     * 一个订单只发送一条解锁库存消息
+     * @param orderSn
+     */
+    public void sendStockRelease(Long orderSn) {
+        if (delayTaskService.isEnabled()) {
+            delayTaskService.schedule(StockReleaseDelayTaskHandler.TOPIC, String.valueOf(orderSn), Duration.ofMillis(mqProperties.getTtl()));
+            return;
+        }
+        WareOrderTaskTo wareOrderTaskTo = new WareOrderTaskTo();
+        wareOrderTaskTo.setOrderSn(orderSn);
+        outboxService.send(mqProperties.getEventExchange(),
+                mqProperties.getStockReleaseRoutingKey(), wareOrderTaskTo);
     }
 }
@@ -0,0 +1,31 @@
+package org.xiaowu.behappy.ware.web.v1;
+
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+import org.xiaowu.behappy.common.core.util.Response;
+import org.xiaowu.behappy.ware.service.WareSkuService;
+
+/**
+ * 商品库存管理
+ * @author xiaowu
+ */
+@RestController
+@RequestMapping("/web/v1/ware-sku")
+@AllArgsConstructor
+public class WebWareSkuController {
+
+    private final WareSkuService wareSkuService;
+
+    /**
+     * 重新分配热点sku的库存分桶
+     * @apiNote 按stock-bucket配置拆分或合并库存分桶,已锁定的库存不移动
+     * @author xiaowu
+     * @param skuId
+     * @return org.xiaowu.behappy.common.core.util.Response
+     */
+    @PutMapping("/bucket/rebalance/{skuId}")
+    public Response rebalanceBuckets(@PathVariable("skuId") Long skuId) {
+        wareSkuService.rebalanceBuckets(skuId);
+        return Response.ok();
+    }
+}
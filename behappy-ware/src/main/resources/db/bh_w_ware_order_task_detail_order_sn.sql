@@ -0,0 +1,3 @@
+-- 按订单号查询库存工作单(锁库存幂等、按订单解锁),ware库中执行,已有order_sn索引时跳过
+ALTER TABLE `bh_w_ware_order_task_detail`
+    ADD KEY `idx_order_sn_lock_status` (`order_sn`, `lock_status`);
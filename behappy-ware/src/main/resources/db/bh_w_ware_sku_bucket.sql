@@ -0,0 +1,11 @@
+-- 热点sku库存分桶(stock-bucket),ware库中执行
+-- 普通sku只有0号桶,分桶的sku由 /web/v1/ware-sku/bucket/rebalance/{skuId} 拆分到多行
+-- 执行前确认同一个sku_id只有一行库存记录,否则唯一索引创建失败:
+-- SELECT sku_id, COUNT(*) FROM `bh_w_ware_sku` GROUP BY sku_id HAVING COUNT(*) > 1;
+ALTER TABLE `bh_w_ware_sku`
+    ADD COLUMN `bucket` int NOT NULL DEFAULT 0 COMMENT '库存分桶,0-默认桶',
+    ADD UNIQUE KEY `uk_sku_id_bucket` (`sku_id`, `bucket`);
+
+-- 记录锁定的分桶,解锁时按桶归还,为空时按0号桶处理
+ALTER TABLE `bh_w_ware_order_task_detail`
+    ADD COLUMN `bucket` int DEFAULT NULL COMMENT '锁定的库存分桶';
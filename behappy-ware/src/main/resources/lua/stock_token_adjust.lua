@@ -0,0 +1,14 @@
+-- 数据库锁定/释放库存的事务结束后同步redis,只处理已预热的sku,并减少在途计数
+-- KEYS[2i-1]: sku库存令牌, KEYS[2i]: sku在途计数
+-- ARGV[i]: 变化量,正数为归还,负数为扣减, ARGV[n+1]: 1 事务已提交, 0 事务已回滚只减少在途计数
+local n = #KEYS / 2
+local committed = ARGV[n + 1] == '1'
+for i = 1, n do
+    if committed and redis.call('EXISTS', KEYS[2 * i - 1]) == 1 then
+        redis.call('INCRBY', KEYS[2 * i - 1], ARGV[i])
+    end
+    if redis.call('DECR', KEYS[2 * i]) <= 0 then
+        redis.call('DEL', KEYS[2 * i])
+    end
+end
+return 1
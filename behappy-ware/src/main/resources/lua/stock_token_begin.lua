@@ -0,0 +1,8 @@
+-- 数据库锁定/释放库存前增加在途计数,在途期间不修正漂移
+-- KEYS[1..n]: sku在途计数
+-- ARGV[1]: 过期时间,单位：毫秒,防止事务结束前宕机导致计数无法归零
+for i = 1, #KEYS do
+    redis.call('INCR', KEYS[i])
+    redis.call('PEXPIRE', KEYS[i], ARGV[1])
+end
+return 1
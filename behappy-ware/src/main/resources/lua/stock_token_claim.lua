@@ -0,0 +1,9 @@
+-- 从待落库队列中批量领取,移动到处理中队列
+-- KEYS[1]: 待落库队列, KEYS[2]: 处理中队列
+-- ARGV[1]: 最大领取数量
+local items = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1)
+if #items > 0 then
+    redis.call('LTRIM', KEYS[1], #items, -1)
+    redis.call('RPUSH', KEYS[2], unpack(items))
+end
+return items
@@ -0,0 +1,19 @@
+-- 修正redis与数据库之间的库存漂移
+-- KEYS[1]: sku库存令牌, KEYS[2]: 待落库队列, KEYS[3]: 处理中队列, KEYS[4]: sku在途计数
+-- ARGV[1]: 检查时redis中的值, ARGV[2]: 数据库可用库存
+-- 返回: 1 已修正, 0 期间redis被修改, -1 仍有未落库数据、数据库变更未同步或未预热
+if redis.call('LLEN', KEYS[2]) > 0 or redis.call('LLEN', KEYS[3]) > 0 then
+    return -1
+end
+if tonumber(redis.call('GET', KEYS[4]) or '0') > 0 then
+    return -1
+end
+local stock = redis.call('GET', KEYS[1])
+if not stock then
+    return -1
+end
+if stock ~= ARGV[1] then
+    return 0
+end
+redis.call('SET', KEYS[1], ARGV[2])
+return 1
@@ -0,0 +1,23 @@
+-- 多sku原子预扣库存
+-- KEYS[1..n]: sku库存令牌, KEYS[n+1]: 待落库队列, KEYS[n+2]: 订单预扣标记
+-- ARGV[1..n]: 扣减数量, ARGV[n+1]: 待落库的锁库存信息, ARGV[n+2]: 订单预扣标记过期时间,单位：毫秒
+-- 返回: 1 扣减成功(或该订单已预扣), 0 库存不足, -1 存在未预热的sku
+local n = #KEYS - 2
+if redis.call('EXISTS', KEYS[n + 2]) == 1 then
+    return 1
+end
+for i = 1, n do
+    local stock = redis.call('GET', KEYS[i])
+    if not stock then
+        return -1
+    end
+    if tonumber(stock) < tonumber(ARGV[i]) then
+        return 0
+    end
+end
+for i = 1, n do
+    redis.call('DECRBY', KEYS[i], ARGV[i])
+end
+redis.call('RPUSH', KEYS[n + 1], ARGV[n + 1])
+redis.call('SET', KEYS[n + 2], '1', 'PX', ARGV[n + 2])
+return 1
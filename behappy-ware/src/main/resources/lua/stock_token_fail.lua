@@ -0,0 +1,14 @@
+-- 落库失败的订单归还预扣的库存令牌并记录到失败队列,同一订单只处理一次
+-- KEYS[1]: 失败订单号集合, KEYS[2]: 失败队列, KEYS[3..n]: sku库存令牌
+-- ARGV[1]: 订单号, ARGV[2]: 锁库存信息, ARGV[3..n]: 归还数量
+-- 返回: 1 已归还, 0 已处理过
+if redis.call('SADD', KEYS[1], ARGV[1]) == 0 then
+    return 0
+end
+for i = 3, #KEYS do
+    if redis.call('EXISTS', KEYS[i]) == 1 then
+        redis.call('INCRBY', KEYS[i], ARGV[i])
+    end
+end
+redis.call('RPUSH', KEYS[2], ARGV[2])
+return 1